@@ -0,0 +1,89 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.baked.BakedElasticity;
+import com.eebbk.studyos.elasticity.baked.BakedTrack;
+import com.eebbk.studyos.elasticity.baked.ElasticityBaker;
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+
+/**
+ * Frame cost of the same damped spring animation played by many elasticities, integrated by each
+ * Spring or played back from one baked track. One operation is one frame.
+ */
+final class BakedBenchmarks {
+
+  static final int[] COUNTS = {100, 1000, 10000};
+
+  private BakedBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (int count : COUNTS) {
+      cases.add(new EntranceLoop(count, false));
+      cases.add(new EntranceLoop(count, true));
+    }
+    return cases;
+  }
+
+  /**
+   * Every elasticity runs the same entrance, restarted every RETARGET_FRAMES frames.
+   */
+  static class EntranceLoop extends BenchmarkCase {
+
+    private final int mCount;
+    private final boolean mBaked;
+    private BaseElasticitySystem mSystem;
+    private Spring[] mSprings;
+    private BakedElasticity[] mBakedElasticities;
+    private int mFrame;
+
+    EntranceLoop(int count, boolean baked) {
+      super("baked.entrance", "n=" + count + " baked=" + baked);
+      mCount = count;
+      mBaked = baked;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      if (mBaked) {
+        Spring spring = new Spring(ElasticityBaker.createSystem())
+            .setSpringConfig(SpringSystemBenchmarks.DAMPED)
+            .setEndValue(100);
+        BakedTrack track = new ElasticityBaker().bake(spring);
+        mBakedElasticities = new BakedElasticity[mCount];
+        for (int i = 0; i < mCount; i++) {
+          mBakedElasticities[i] = new BakedElasticity(mSystem, track);
+          mSystem.createElasticity(mBakedElasticities[i]);
+        }
+      } else {
+        mSprings = new Spring[mCount];
+        for (int i = 0; i < mCount; i++) {
+          mSprings[i] = new Spring(mSystem).setSpringConfig(SpringSystemBenchmarks.DAMPED);
+        }
+      }
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      if (mFrame++ % SpringSystemBenchmarks.RETARGET_FRAMES == 0) {
+        if (mBaked) {
+          for (BakedElasticity bakedElasticity : mBakedElasticities) {
+            bakedElasticity.start();
+          }
+        } else {
+          for (Spring spring : mSprings) {
+            spring.setCurrentValue(0).setEndValue(100);
+          }
+        }
+      }
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return mFrame;
+    }
+  }
+}
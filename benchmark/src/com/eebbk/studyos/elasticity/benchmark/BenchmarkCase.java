@@ -0,0 +1,55 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+/**
+ * One benchmark with a fixed set of parameters. The runner calls {@link #setUp()} once, then
+ * {@link #run()} repeatedly and measures how often it completes per second.
+ */
+public abstract class BenchmarkCase {
+
+  private final String mName;
+  private final String mParams;
+
+  /**
+   * @param name name of the benchmark
+   * @param params human readable parameters of this case
+   */
+  protected BenchmarkCase(String name, String params) {
+    mName = name;
+    mParams = params;
+  }
+
+  public String getName() {
+    return mName;
+  }
+
+  public String getParams() {
+    return mParams;
+  }
+
+  /**
+   * Build the state measured by {@link #run()}. Not part of the measurement.
+   */
+  public void setUp() {
+  }
+
+  /**
+   * Release the state built in {@link #setUp()}. Not part of the measurement.
+   */
+  public void tearDown() {
+  }
+
+  /**
+   * Run one operation.
+   * @return a value depending on the work done, consumed by the runner so the JIT can't drop it
+   */
+  public abstract double run();
+
+  /**
+   * Measure what the case reports besides its cost, such as the accuracy of the result. Called
+   * once after the measured iterations, not part of the measurement.
+   * @return a line printed below the result of the case, or null
+   */
+  public String report() {
+    return null;
+  }
+}
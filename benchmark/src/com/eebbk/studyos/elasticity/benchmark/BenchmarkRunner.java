@@ -0,0 +1,150 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the elasticity benchmarks on a plain JVM and prints throughput and allocation per operation.
+ *
+ * Each case is warmed up, then measured for a number of fixed length iterations. Allocation is
+ * read from the per thread allocation counter of HotSpot, garbage collections from the collector
+ * MX beans. Settings are read from system properties:
+ * <ul>
+ *   <li>bench.filter: only run cases whose name contains this string</li>
+ *   <li>bench.warmup: warmup iterations, default 3</li>
+ *   <li>bench.iterations: measured iterations, default 5</li>
+ *   <li>bench.time: length of an iteration in milliseconds, default 1000</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+  // keeps the results of run() alive
+  private static volatile double sSink;
+
+  private final int mWarmupIterations;
+  private final int mIterations;
+  private final long mIterationNanos;
+  private final com.sun.management.ThreadMXBean mAllocationBean;
+
+  public BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis) {
+    mWarmupIterations = warmupIterations;
+    mIterations = iterations;
+    mIterationNanos = iterationMillis * 1000000L;
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      mAllocationBean = (com.sun.management.ThreadMXBean) threadBean;
+    } else {
+      mAllocationBean = null;
+    }
+  }
+
+  public static void main(String[] args) {
+    String filter = System.getProperty("bench.filter");
+    BenchmarkRunner runner = new BenchmarkRunner(
+        Integer.getInteger("bench.warmup", 3),
+        Integer.getInteger("bench.iterations", 5),
+        Long.getLong("bench.time", 1000L));
+
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    cases.addAll(SpringSystemBenchmarks.cases());
+    cases.addAll(OverShootBenchmarks.cases());
+    cases.addAll(SpringConfigBenchmarks.cases());
+    cases.addAll(ParallelBenchmarks.cases());
+    cases.addAll(BakedBenchmarks.cases());
+    cases.addAll(ExpressionBenchmarks.cases());
+    cases.addAll(PoolBenchmarks.cases());
+    cases.addAll(VectorSpringBenchmarks.cases());
+    cases.addAll(GraphBenchmarks.cases());
+    cases.addAll(VsyncBenchmarks.cases());
+
+    System.out.println(String.format(Locale.US, "%-36s %-40s %14s %10s %12s %8s",
+        "benchmark", "params", "ops/s", "error %", "B/op", "gc"));
+    for (BenchmarkCase benchmarkCase : cases) {
+      if (filter != null && !benchmarkCase.getName().contains(filter)) {
+        continue;
+      }
+      runner.run(benchmarkCase);
+    }
+  }
+
+  /**
+   * Measure one case and print its result line.
+   * @param benchmarkCase the case to measure
+   */
+  public void run(BenchmarkCase benchmarkCase) {
+    benchmarkCase.setUp();
+    try {
+      for (int i = 0; i < mWarmupIterations; i++) {
+        iteration(benchmarkCase);
+      }
+      double[] throughput = new double[mIterations];
+      long operations = 0;
+      long allocatedBytes = 0;
+      long collections = collectionCount();
+      for (int i = 0; i < mIterations; i++) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long count = iteration(benchmarkCase);
+        long elapsed = System.nanoTime() - start;
+        allocatedBytes += allocatedBytes() - allocatedBefore;
+        operations += count;
+        throughput[i] = count * 1e9 / elapsed;
+      }
+      collections = collectionCount() - collections;
+
+      double mean = 0;
+      for (double value : throughput) {
+        mean += value;
+      }
+      mean /= throughput.length;
+      double variance = 0;
+      for (double value : throughput) {
+        variance += (value - mean) * (value - mean);
+      }
+      double error = throughput.length > 1 ?
+          Math.sqrt(variance / (throughput.length - 1)) / mean * 100 : 0;
+      double bytesPerOperation = mAllocationBean != null ? (double) allocatedBytes / operations : -1;
+
+      System.out.println(String.format(Locale.US, "%-36s %-40s %14.1f %10.2f %12.1f %8d",
+          benchmarkCase.getName(), benchmarkCase.getParams(), mean, error, bytesPerOperation,
+          collections));
+      String report = benchmarkCase.report();
+      if (report != null) {
+        System.out.println(String.format(Locale.US, "%-36s %s", "", report));
+      }
+    } finally {
+      benchmarkCase.tearDown();
+    }
+  }
+
+  private long iteration(BenchmarkCase benchmarkCase) {
+    double sink = 0;
+    long count = 0;
+    long deadline = System.nanoTime() + mIterationNanos;
+    do {
+      sink += benchmarkCase.run();
+      count++;
+    } while (System.nanoTime() < deadline);
+    sSink = sink;
+    return count;
+  }
+
+  private long allocatedBytes() {
+    if (mAllocationBean == null) {
+      return 0;
+    }
+    return mAllocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long collectionCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, bean.getCollectionCount());
+    }
+    return count;
+  }
+}
@@ -0,0 +1,82 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.eebbk.studyos.elasticity.expression.CompiledExpression;
+import com.eebbk.studyos.elasticity.expression.ExpressionElasticity;
+import com.eebbk.studyos.elasticity.overshoot.OverShoot;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+
+/**
+ * Frame cost of the After Effects bounce compiled as an expression, to compare with the hand
+ * written OverShoot of "overshoot.curve" (n=1000, 16ms). One operation is one frame.
+ */
+final class ExpressionBenchmarks {
+
+  // the bounce of the README
+  static final String BOUNCE =
+      "amp = .1; freq = 2.0; decay = 2.0;\n"
+      + "value + velocity * amp * Math.sin(freq * time * 2 * Math.PI) / Math.exp(decay * time);";
+
+  static final double VELOCITY = 1000;
+  // the settle time OverShoot computes for the same curve and velocity
+  static final double DURATION = Math.log(VELOCITY * 0.1 / OverShoot.DEFAULT_REST_THRESHOLD) / 2.0;
+
+  private ExpressionBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    cases.add(new ExpressionLoop(1000));
+    return cases;
+  }
+
+  /**
+   * Every expression elasticity is triggered again every RETRIGGER_FRAMES frames, as the
+   * overshoots of OverShootBenchmarks.
+   */
+  static class ExpressionLoop extends BenchmarkCase {
+
+    private final int mCount;
+    private BaseElasticitySystem mSystem;
+    private ExpressionElasticity[] mElasticities;
+    private int mFrame;
+
+    ExpressionLoop(int count) {
+      super("expression.overshoot", "n=" + count + " frame=16ms");
+      mCount = count;
+    }
+
+    @Override
+    public void setUp() {
+      // the config overrides the defaults written in the expression
+      Map<String, Double> parameters = new HashMap<String, Double>();
+      parameters.put("amp", 0.1);
+      parameters.put("freq", 2.0);
+      parameters.put("decay", 2.0);
+      CompiledExpression expression = ExpressionElasticity.compile(BOUNCE, parameters);
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      mElasticities = new ExpressionElasticity[mCount];
+      for (int i = 0; i < mCount; i++) {
+        mElasticities[i] = new ExpressionElasticity(mSystem, expression).setDuration(DURATION);
+        mSystem.createElasticity(mElasticities[i]);
+      }
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      if (mFrame++ % OverShootBenchmarks.RETRIGGER_FRAMES == 0) {
+        for (ExpressionElasticity elasticity : mElasticities) {
+          elasticity.reset();
+          elasticity.setVelocity(VELOCITY);
+        }
+      }
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return mFrame;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.spring.FollowCoupling;
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.SimpleElasticityListener;
+
+/**
+ * Frame cost of follow the leader chains of springs, each spring following the previous one
+ * through a listener calling setEndValue or through a coupling of the system's dependency graph.
+ * One operation is one frame.
+ */
+final class GraphBenchmarks {
+
+  static final int[] CHAIN_LENGTHS = {100, 1000};
+  // frames between two moves of the leader
+  static final int LEADER_PERIOD = 30;
+
+  private GraphBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (int length : CHAIN_LENGTHS) {
+      cases.add(new ChainLoop(length, false));
+      cases.add(new ChainLoop(length, true));
+    }
+    return cases;
+  }
+
+  static class ChainLoop extends BenchmarkCase {
+
+    private final int mLength;
+    private final boolean mCoupled;
+    private BaseElasticitySystem mSystem;
+    private Spring[] mChain;
+    private int mFrame;
+
+    ChainLoop(int length, boolean coupled) {
+      super("graph.chain", "n=" + length + " coupled=" + coupled);
+      mLength = length;
+      mCoupled = coupled;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      mChain = new Spring[mLength];
+      for (int i = 0; i < mLength; i++) {
+        Spring spring = new Spring(mSystem);
+        spring.setSpringConfig(SpringSystemBenchmarks.DAMPED);
+        mSystem.createElasticity(spring);
+        mChain[i] = spring;
+      }
+      for (int i = 1; i < mLength; i++) {
+        if (mCoupled) {
+          mSystem.couple(mChain[i - 1], mChain[i], FollowCoupling.FOLLOW);
+        } else {
+          final Spring follower = mChain[i];
+          mChain[i - 1].addListener(new SimpleElasticityListener() {
+            @Override
+            public void onSpringUpdate(Elasticity elasticity) {
+              follower.setEndValue(elasticity.getValue());
+            }
+          });
+        }
+      }
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      if (mFrame % LEADER_PERIOD == 0) {
+        mChain[0].setEndValue((mFrame / LEADER_PERIOD) % 2 == 0 ? 100 : 0);
+      }
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return ++mFrame + mChain[mLength - 1].getCurrentValue();
+    }
+  }
+}
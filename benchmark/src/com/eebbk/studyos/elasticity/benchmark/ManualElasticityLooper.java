@@ -0,0 +1,22 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import com.eebbk.studyos.elasticity.system.ElasticityLooper;
+
+/**
+ * Looper that never schedules frames on its own. The benchmarks call
+ * {@link com.eebbk.studyos.elasticity.system.BaseElasticitySystem#loop} themselves.
+ */
+class ManualElasticityLooper extends ElasticityLooper {
+
+  static final long NANOS_PER_MILLI = 1000000L;
+  // frame delta used by the benchmarks that don't vary it
+  static final long FRAME_NANOS = 16 * NANOS_PER_MILLI;
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+  }
+}
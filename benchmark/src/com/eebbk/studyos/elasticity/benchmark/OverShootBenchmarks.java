@@ -0,0 +1,94 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.overshoot.OverShoot;
+import com.eebbk.studyos.elasticity.overshoot.OverShootConfig;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+
+/**
+ * Frame cost of {@link BaseElasticitySystem#loop} with overshoots. One operation is one frame.
+ */
+final class OverShootBenchmarks {
+
+  // every overshoot is triggered again after this many frames
+  static final int RETRIGGER_FRAMES = 120;
+
+  private OverShootBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (int count : SpringSystemBenchmarks.COUNTS) {
+      for (int frameMillis : SpringSystemBenchmarks.FRAME_MILLIS) {
+        cases.add(new OverShootLoop("overshoot.loop", count, frameMillis, 1.0));
+      }
+    }
+    for (int count : SpringSystemBenchmarks.COUNTS) {
+      cases.add(new OverShootLoop("overshoot.loop.mixed", count, 16, 0.5));
+    }
+    // exact sin and exp against the shared curve table
+    cases.add(new OverShootLoop("overshoot.curve", 1000, 16, 1.0, false));
+    cases.add(new OverShootLoop("overshoot.curve", 1000, 16, 1.0, true));
+    return cases;
+  }
+
+  /**
+   * A system of overshoots of which a fraction is triggered every RETRIGGER_FRAMES frames, the
+   * others stay at rest.
+   */
+  static class OverShootLoop extends BenchmarkCase {
+
+    private final int mCount;
+    private final int mFrameMillis;
+    private final double mActiveFraction;
+    private final boolean mCurveTable;
+    private BaseElasticitySystem mSystem;
+    private OverShoot[] mActive;
+    private int mFrame;
+
+    OverShootLoop(String name, int count, int frameMillis, double activeFraction) {
+      this(name, count, frameMillis, activeFraction, true);
+    }
+
+    OverShootLoop(String name, int count, int frameMillis, double activeFraction,
+        boolean curveTable) {
+      super(name, "n=" + count + " frame=" + frameMillis + "ms active=" + activeFraction +
+          " table=" + curveTable);
+      mCount = count;
+      mFrameMillis = frameMillis;
+      mActiveFraction = activeFraction;
+      mCurveTable = curveTable;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      int activeCount = (int) Math.ceil(mCount * mActiveFraction);
+      mActive = new OverShoot[activeCount];
+      for (int i = 0; i < mCount; i++) {
+        OverShoot overShoot = new OverShoot(mSystem);
+        overShoot.setOverShootConfig(new OverShootConfig(0, 0.1, 2.0, 2.0));
+        overShoot.setCurveTableEnabled(mCurveTable);
+        mSystem.createElasticity(overShoot);
+        if (i < activeCount) {
+          mActive[i] = overShoot;
+        }
+      }
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      if (mFrame++ % RETRIGGER_FRAMES == 0) {
+        for (OverShoot overShoot : mActive) {
+          overShoot.reset();
+          overShoot.setVelocity(1000);
+        }
+      }
+      mSystem.loop(mFrameMillis * ManualElasticityLooper.NANOS_PER_MILLI);
+      return mFrame;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.overshoot.OverShoot;
+import com.eebbk.studyos.elasticity.overshoot.OverShootConfig;
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.ElasticityWorkers;
+
+/**
+ * Frame cost of {@link BaseElasticitySystem#loop} with every elasticity active, advanced serially
+ * and on {@link ElasticityWorkers}. Comparing both rows of a count shows where parallel integration
+ * starts to pay off. The threshold is set to 1 so the parallel rows always split the frame.
+ */
+final class ParallelBenchmarks {
+
+  static final int[] COUNTS = {100, 250, 500, 1000, 2500, 5000, 10000};
+
+  private ParallelBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (int count : COUNTS) {
+      cases.add(new ParallelSpringLoop(count, 0));
+      cases.add(new ParallelSpringLoop(count, threads));
+    }
+    for (int count : COUNTS) {
+      cases.add(new ParallelOverShootLoop(count, 0));
+      cases.add(new ParallelOverShootLoop(count, threads));
+    }
+    return cases;
+  }
+
+  /**
+   * Base of the parallel cases, sets up a system with or without workers.
+   */
+  abstract static class ParallelLoop extends BenchmarkCase {
+
+    final int mCount;
+    private final int mThreads;
+    private ElasticityWorkers mWorkers;
+    BaseElasticitySystem mSystem;
+
+    ParallelLoop(String name, int count, int threads) {
+      super(name, "n=" + count + " threads=" + (threads + 1));
+      mCount = count;
+      mThreads = threads;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      if (mThreads > 0) {
+        mWorkers = new ElasticityWorkers(mThreads);
+        mSystem.setParallelWorkers(mWorkers);
+        mSystem.setParallelThreshold(1);
+      }
+    }
+
+    @Override
+    public void tearDown() {
+      if (mWorkers != null) {
+        mWorkers.shutdown();
+        mWorkers = null;
+      }
+    }
+  }
+
+  /**
+   * undamped springs held by one SpringBatch, split across the workers by the batch.
+   */
+  static class ParallelSpringLoop extends ParallelLoop {
+
+    private int mFrame;
+
+    ParallelSpringLoop(int count, int threads) {
+      super("parallel.spring", count, threads);
+    }
+
+    @Override
+    public void setUp() {
+      super.setUp();
+      for (int i = 0; i < mCount; i++) {
+        new Spring(mSystem).setSpringConfig(SpringSystemBenchmarks.UNDAMPED).setEndValue(100 + i % 7);
+      }
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return ++mFrame;
+    }
+  }
+
+  /**
+   * overshoots registered individually, split across the workers by the system.
+   */
+  static class ParallelOverShootLoop extends ParallelLoop {
+
+    private OverShoot[] mOverShoots;
+    private int mFrame;
+
+    ParallelOverShootLoop(int count, int threads) {
+      super("parallel.overshoot", count, threads);
+    }
+
+    @Override
+    public void setUp() {
+      super.setUp();
+      mOverShoots = new OverShoot[mCount];
+      for (int i = 0; i < mCount; i++) {
+        OverShoot overShoot = new OverShoot(mSystem);
+        overShoot.setOverShootConfig(new OverShootConfig(0, 0.1, 2.0, 2.0));
+        mSystem.createElasticity(overShoot);
+        mOverShoots[i] = overShoot;
+      }
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      if (mFrame++ % OverShootBenchmarks.RETRIGGER_FRAMES == 0) {
+        for (OverShoot overShoot : mOverShoots) {
+          overShoot.reset();
+          overShoot.setVelocity(1000);
+        }
+      }
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return mFrame;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.ElasticityPool;
+import com.eebbk.studyos.elasticity.system.SimpleElasticityListener;
+
+/**
+ * Frame cost of a fast scrolled list binding a spring to every item, with a new Spring per bind or
+ * with springs taken from an {@link ElasticityPool}. One operation is one frame.
+ */
+final class PoolBenchmarks {
+
+  // visible items, and items bound again on every frame
+  static final int VISIBLE_ITEMS = 40;
+  static final int REBOUND_PER_FRAME = 4;
+
+  private PoolBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    cases.add(new ScrollLoop(false));
+    cases.add(new ScrollLoop(true));
+    return cases;
+  }
+
+  /**
+   * Every frame unbinds the oldest items and binds new ones, which start moving to their end value.
+   */
+  static class ScrollLoop extends BenchmarkCase {
+
+    private final boolean mPooled;
+    private final SimpleElasticityListener mListener = new SimpleElasticityListener();
+    private BaseElasticitySystem mSystem;
+    private ElasticityPool<Spring> mPool;
+    private Spring[] mItems;
+    private int mNext;
+    private int mFrame;
+
+    ScrollLoop(boolean pooled) {
+      super("pool.scroll", "items=" + VISIBLE_ITEMS + " rebound=" + REBOUND_PER_FRAME +
+          " pooled=" + pooled);
+      mPooled = pooled;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      mPool = mSystem.createPool(Spring.POOL_FACTORY);
+      mItems = new Spring[VISIBLE_ITEMS];
+      for (int i = 0; i < VISIBLE_ITEMS; i++) {
+        mItems[i] = bind();
+      }
+      mNext = 0;
+      mFrame = 0;
+    }
+
+    private Spring bind() {
+      Spring spring;
+      if (mPooled) {
+        spring = mPool.acquire();
+      } else {
+        spring = new Spring(mSystem);
+        mSystem.createElasticity(spring);
+      }
+      spring.setSpringConfig(SpringSystemBenchmarks.DAMPED);
+      spring.addListener(mListener);
+      spring.setCurrentValue(0).setEndValue(100);
+      return spring;
+    }
+
+    @Override
+    public double run() {
+      for (int i = 0; i < REBOUND_PER_FRAME; i++) {
+        Spring spring = mItems[mNext];
+        if (mPooled) {
+          mPool.release(spring);
+        } else {
+          spring.destroy();
+        }
+        mItems[mNext] = bind();
+        mNext = (mNext + 1) % VISIBLE_ITEMS;
+      }
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return ++mFrame;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.spring.BouncyConversion;
+import com.eebbk.studyos.elasticity.spring.SpringConfig;
+
+/**
+ * Cost of building spring configs from designer values. One operation is one conversion.
+ */
+final class SpringConfigBenchmarks {
+
+  private SpringConfigBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    cases.add(new BenchmarkCase("bouncyconversion", "speed=0..20 bounciness=0..20") {
+      private int mStep;
+
+      @Override
+      public double run() {
+        mStep++;
+        BouncyConversion conversion = new BouncyConversion(mStep % 20, (mStep >> 3) % 20);
+        return conversion.getBouncyTension() + conversion.getBouncyFriction();
+      }
+    });
+    cases.add(new BenchmarkCase("springconfig.fromBouncinessAndSpeed", "speed=0..20 bounciness=0..20") {
+      private int mStep;
+
+      @Override
+      public double run() {
+        mStep++;
+        SpringConfig config = SpringConfig.fromBouncinessAndSpeed((mStep >> 3) % 20, mStep % 20);
+        return config.tension + config.friction;
+      }
+    });
+    return cases;
+  }
+}
@@ -0,0 +1,113 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.spring.SpringConfig;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.SimpleElasticityListener;
+
+/**
+ * Frame cost of {@link BaseElasticitySystem#loop} with springs. One operation is one frame.
+ */
+final class SpringSystemBenchmarks {
+
+  static final int[] COUNTS = {1, 100, 1000, 10000};
+  static final int[] FRAME_MILLIS = {8, 16, 33, 64};
+  static final int[] FAN_OUT = {1, 4, 16};
+
+  // undamped springs never come to rest, so every spring is advanced on every frame
+  static final SpringConfig UNDAMPED = new SpringConfig(230, 0);
+  // damped springs come to rest well within RETARGET_FRAMES at 16ms frames
+  static final SpringConfig DAMPED = SpringConfig.fromOrigamiTensionAndFriction(40, 7);
+  static final int RETARGET_FRAMES = 120;
+
+  private SpringSystemBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (int count : COUNTS) {
+      for (int frameMillis : FRAME_MILLIS) {
+        cases.add(new SpringLoop("spring.loop", count, frameMillis, 1.0, 0));
+      }
+    }
+    for (int count : COUNTS) {
+      cases.add(new SpringLoop("spring.loop.mixed", count, 16, 0.5, 0));
+    }
+    for (int fanOut : FAN_OUT) {
+      cases.add(new SpringLoop("spring.loop.fanout", 1000, 16, 1.0, fanOut));
+    }
+    return cases;
+  }
+
+  /**
+   * A system of springs of which a fraction is undamped and always active. The others are damped,
+   * retargeted every RETARGET_FRAMES frames and spend part of the time at rest.
+   */
+  static class SpringLoop extends BenchmarkCase {
+
+    private final int mCount;
+    private final int mFrameMillis;
+    private final double mActiveFraction;
+    private final int mFanOut;
+    private BaseElasticitySystem mSystem;
+    private Spring[] mDamped;
+    private int mFrame;
+    private double mTarget;
+
+    SpringLoop(String name, int count, int frameMillis, double activeFraction, int fanOut) {
+      super(name, "n=" + count + " frame=" + frameMillis + "ms active=" + activeFraction +
+          " listeners=" + fanOut);
+      mCount = count;
+      mFrameMillis = frameMillis;
+      mActiveFraction = activeFraction;
+      mFanOut = fanOut;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      int activeCount = (int) Math.ceil(mCount * mActiveFraction);
+      mDamped = new Spring[mCount - activeCount];
+      for (int i = 0; i < mCount; i++) {
+        Spring spring = new Spring(mSystem);
+        for (int j = 0; j < mFanOut; j++) {
+          spring.addListener(new CountingListener());
+        }
+        if (i < activeCount) {
+          spring.setSpringConfig(UNDAMPED).setEndValue(100 + i % 7);
+        } else {
+          spring.setSpringConfig(DAMPED);
+          mDamped[i - activeCount] = spring;
+        }
+      }
+      mFrame = 0;
+      mTarget = 0;
+    }
+
+    @Override
+    public double run() {
+      if (mFrame++ % RETARGET_FRAMES == 0) {
+        mTarget = mTarget == 0 ? 100 : 0;
+        for (Spring spring : mDamped) {
+          spring.setEndValue(mTarget);
+        }
+      }
+      mSystem.loop(mFrameMillis * ManualElasticityLooper.NANOS_PER_MILLI);
+      return mFrame;
+    }
+  }
+
+  static class CountingListener extends SimpleElasticityListener {
+
+    int mUpdates;
+
+    @Override
+    public void onSpringUpdate(Elasticity elasticity) {
+      mUpdates++;
+    }
+  }
+}
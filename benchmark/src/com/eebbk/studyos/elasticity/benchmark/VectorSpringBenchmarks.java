@@ -0,0 +1,108 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.spring.VectorSpring;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.SimpleElasticityListener;
+
+/**
+ * Frame cost of views animating x, y, scale and alpha, with one Spring per property or one
+ * {@link VectorSpring} per view. One operation is one frame.
+ */
+final class VectorSpringBenchmarks {
+
+  static final int[] VIEW_COUNTS = {100, 1000};
+  // animated properties of a view
+  static final int COMPONENTS = 4;
+  // views given new end values on every frame, so most of them keep moving
+  static final int RETARGET_DIVISOR = 16;
+
+  private VectorSpringBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (int count : VIEW_COUNTS) {
+      cases.add(new ViewLoop(count, false));
+      cases.add(new ViewLoop(count, true));
+    }
+    return cases;
+  }
+
+  static class ViewLoop extends BenchmarkCase {
+
+    private final int mCount;
+    private final boolean mVector;
+    private final SimpleElasticityListener mListener = new SimpleElasticityListener();
+    private final double[] mEndValues = new double[COMPONENTS];
+    private BaseElasticitySystem mSystem;
+    private Spring[] mSprings;
+    private VectorSpring[] mVectors;
+    private int mNext;
+    private int mFrame;
+
+    ViewLoop(int count, boolean vector) {
+      super("vector.view", "n=" + count + " components=" + COMPONENTS + " vector=" + vector);
+      mCount = count;
+      mVector = vector;
+    }
+
+    @Override
+    public void setUp() {
+      mSystem = new BaseElasticitySystem(new ManualElasticityLooper());
+      if (mVector) {
+        mVectors = new VectorSpring[mCount];
+        for (int i = 0; i < mCount; i++) {
+          VectorSpring vector = new VectorSpring(mSystem, COMPONENTS);
+          vector.setSpringConfig(SpringSystemBenchmarks.DAMPED);
+          vector.addListener(mListener);
+          mSystem.createElasticity(vector);
+          mVectors[i] = vector;
+        }
+      } else {
+        mSprings = new Spring[mCount * COMPONENTS];
+        for (int i = 0; i < mSprings.length; i++) {
+          Spring spring = new Spring(mSystem);
+          spring.setSpringConfig(SpringSystemBenchmarks.DAMPED);
+          spring.addListener(mListener);
+          mSystem.createElasticity(spring);
+          mSprings[i] = spring;
+        }
+      }
+      mNext = 0;
+      mFrame = 0;
+      for (int i = 0; i < mCount; i++) {
+        retarget();
+      }
+    }
+
+    private void retarget() {
+      int view = mNext;
+      mNext = (mNext + 1) % mCount;
+      double target = (mFrame + view) % 2 == 0 ? 100 : 0;
+      for (int c = 0; c < COMPONENTS; c++) {
+        mEndValues[c] = target + c;
+      }
+      if (mVector) {
+        mVectors[view].setEndValues(mEndValues);
+      } else {
+        for (int c = 0; c < COMPONENTS; c++) {
+          mSprings[view * COMPONENTS + c].setEndValue(mEndValues[c]);
+        }
+      }
+    }
+
+    @Override
+    public double run() {
+      int retargeted = Math.max(1, mCount / RETARGET_DIVISOR);
+      for (int i = 0; i < retargeted; i++) {
+        retarget();
+      }
+      mSystem.loop(ManualElasticityLooper.FRAME_NANOS);
+      return ++mFrame;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.eebbk.studyos.elasticity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.spring.SpringSolver;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.SimulatedVsyncLooper;
+
+/**
+ * Frame cost of springs looped by a {@link SimulatedVsyncLooper}, on a smooth 60Hz timeline and on
+ * a janky one with jitter, dropped frames and stalls. The seed is fixed, so every run sees the same
+ * frame pacing. One operation is one simulated vsync.
+ *
+ * Each case also reports its visual error: the same run is replayed outside of the measurement
+ * next to reference springs advanced with the closed form solution to the exact time of every
+ * vsync, and the max and RMS distance between the values on screen and the reference are printed.
+ */
+final class VsyncBenchmarks {
+
+  static final int COUNT = 100;
+  static final long SEED = 42;
+  // frames between two moves of the targets
+  static final int TARGET_PERIOD = 30;
+  // vsyncs replayed to measure the visual error
+  static final int ERROR_FRAMES = 600;
+  // largest step of the reference springs, under the clamp applied to frame deltas
+  static final long REFERENCE_STEP_NANOS = 16 * ManualElasticityLooper.NANOS_PER_MILLI;
+
+  private VsyncBenchmarks() {
+  }
+
+  static List<BenchmarkCase> cases() {
+    List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+    for (SpringSolver solver : new SpringSolver[] {SpringSolver.RK4, SpringSolver.ANALYTIC}) {
+      cases.add(new JankLoop(solver, false));
+      cases.add(new JankLoop(solver, true));
+    }
+    return cases;
+  }
+
+  static class JankLoop extends BenchmarkCase {
+
+    private final SpringSolver mSolver;
+    private final boolean mJanky;
+    private SimulatedVsyncLooper mLooper;
+    private Spring[] mSprings;
+    private int mFrame;
+
+    JankLoop(SpringSolver solver, boolean janky) {
+      super("vsync.jank", "solver=" + solver + " janky=" + janky);
+      mSolver = solver;
+      mJanky = janky;
+    }
+
+    @Override
+    public void setUp() {
+      mLooper = createLooper();
+      mSprings = createSprings(new BaseElasticitySystem(mLooper), mSolver);
+      mFrame = 0;
+    }
+
+    @Override
+    public double run() {
+      moveTargets(mSprings, mFrame);
+      mLooper.runFrame();
+      return ++mFrame + mSprings[COUNT - 1].getCurrentValue();
+    }
+
+    /**
+     * Replay the seeded run from the start and compare it to the reference at every vsync.
+     */
+    @Override
+    public String report() {
+      SimulatedVsyncLooper looper = createLooper();
+      Spring[] springs = createSprings(new BaseElasticitySystem(looper), mSolver);
+      Spring[] reference = createSprings(
+          new BaseElasticitySystem(new ManualElasticityLooper()), SpringSolver.ANALYTIC);
+      double maxError = 0;
+      double squaredError = 0;
+      long referenceTime = 0;
+      for (int frame = 0; frame < ERROR_FRAMES; frame++) {
+        moveTargets(springs, frame);
+        moveTargets(reference, frame);
+        looper.runFrame();
+        long vsyncTime = looper.getTimeNanos();
+        while (referenceTime < vsyncTime) {
+          long step = Math.min(REFERENCE_STEP_NANOS, vsyncTime - referenceTime);
+          for (int i = 0; i < COUNT; i++) {
+            reference[i].advance(step / 1e9);
+          }
+          referenceTime += step;
+        }
+        for (int i = 0; i < COUNT; i++) {
+          double error = Math.abs(springs[i].getCurrentValue() - reference[i].getCurrentValue());
+          maxError = Math.max(maxError, error);
+          squaredError += error * error;
+        }
+      }
+      return String.format(Locale.US, "visual error max=%.3f rms=%.3f dropped=%d",
+          maxError, Math.sqrt(squaredError / (ERROR_FRAMES * COUNT)),
+          looper.getDroppedFrameCount());
+    }
+
+    private SimulatedVsyncLooper createLooper() {
+      SimulatedVsyncLooper looper = SimulatedVsyncLooper.forRefreshRate(60, SEED);
+      if (mJanky) {
+        looper.setJitterNanos(2 * ManualElasticityLooper.NANOS_PER_MILLI)
+            .setDropProbability(0.05)
+            .setStalls(0.01, 100 * ManualElasticityLooper.NANOS_PER_MILLI);
+      }
+      return looper;
+    }
+  }
+
+  static Spring[] createSprings(BaseElasticitySystem system, SpringSolver solver) {
+    Spring[] springs = new Spring[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      Spring spring = new Spring(system);
+      spring.setSpringConfig(SpringSystemBenchmarks.DAMPED);
+      spring.setSolver(solver);
+      system.createElasticity(spring);
+      springs[i] = spring;
+    }
+    return springs;
+  }
+
+  static void moveTargets(Spring[] springs, int frame) {
+    if (frame % TARGET_PERIOD == 0) {
+      double end = (frame / TARGET_PERIOD) % 2 == 0 ? 100 : 0;
+      for (int i = 0; i < springs.length; i++) {
+        springs[i].setEndValue(end + i);
+      }
+    }
+  }
+}
@@ -8,14 +8,16 @@
  *
  */
 
-package com.eebbk.studyos.elasticity.system;
+package com.eebbk.studyos.elasticity.android;
 
 import android.annotation.TargetApi;
 import android.os.Build;
 import android.os.Handler;
-import android.os.SystemClock;
 import android.view.Choreographer;
 
+import com.eebbk.studyos.elasticity.system.ElasticityLooper;
+import com.eebbk.studyos.elasticity.system.SharedFrameSource;
+
 /**
  * Android version of the spring looper that uses the most appropriate frame callback mechanism
  * available. It uses Android's {@link Choreographer} when available, otherwise it uses a
@@ -23,6 +25,8 @@ import android.view.Choreographer;
  */
 abstract class AndroidElasticityLooperFactory {
 
+  private static SharedFrameSource sSharedFrameSource;
+
   /**
    * Create an Android {@link com.facebook.rebound.SpringLooper} for the detected Android platform.
    * @return a SpringLooper
@@ -35,6 +39,22 @@ abstract class AndroidElasticityLooperFactory {
     }
   }
 
+  /**
+   * Get the frame source shared by every system of the process, created on the first call. Call
+   * it from the main thread.
+   * @return the shared frame source
+   */
+  public static synchronized SharedFrameSource getSharedFrameSource() {
+    if (sSharedFrameSource == null) {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+        sSharedFrameSource = new ChoreographerFrameSource(Choreographer.getInstance());
+      } else {
+        sSharedFrameSource = new LegacyFrameSource(new Handler());
+      }
+    }
+    return sSharedFrameSource;
+  }
+
   /**
    * The base implementation of the Android spring looper, using a {@link Handler} for the
    * frame callbacks.
@@ -44,7 +64,6 @@ abstract class AndroidElasticityLooperFactory {
     private final Handler mHandler;
     private final Runnable mLooperRunnable;
     private boolean mStarted;
-    private long mLastTime;
 
     /**
      * @return an Android spring looper using a new {@link Handler} instance
@@ -61,9 +80,8 @@ abstract class AndroidElasticityLooperFactory {
           if (!mStarted || mElasticitySystem == null) {
             return;
           }
-          long currentTime = SystemClock.uptimeMillis();
-          mElasticitySystem.loop(currentTime - mLastTime);
-          mLastTime = currentTime;
+          // a Handler has no vsync timestamp, the clock smooths the post latency instead
+          mElasticitySystem.loop(mFrameClock.tick(System.nanoTime()));
           mHandler.post(mLooperRunnable);
         }
       };
@@ -75,7 +93,7 @@ abstract class AndroidElasticityLooperFactory {
         return;
       }
       mStarted = true;
-      mLastTime = SystemClock.uptimeMillis();
+      mFrameClock.resume();
       mHandler.removeCallbacks(mLooperRunnable);
       mHandler.post(mLooperRunnable);
     }
@@ -97,7 +115,6 @@ abstract class AndroidElasticityLooperFactory {
     private final Choreographer mChoreographer;
     private final Choreographer.FrameCallback mFrameCallback;
     private boolean mStarted;
-    private long mLastTime;
 
     /**
      * @return an Android spring choreographer using the system {@link Choreographer}
@@ -114,9 +131,8 @@ abstract class AndroidElasticityLooperFactory {
           if (!mStarted || mElasticitySystem == null) {
             return;
           }
-          long currentTime = SystemClock.uptimeMillis();
-          mElasticitySystem.loop(currentTime - mLastTime);
-          mLastTime = currentTime;
+          // frameTimeNanos is the vsync time of the frame, on the System.nanoTime clock
+          mElasticitySystem.loop(mFrameClock.tick(frameTimeNanos));
           mChoreographer.postFrameCallback(mFrameCallback);
         }
       };
@@ -128,7 +144,7 @@ abstract class AndroidElasticityLooperFactory {
         return;
       }
       mStarted = true;
-      mLastTime = SystemClock.uptimeMillis();
+      mFrameClock.resume();
       mChoreographer.removeFrameCallback(mFrameCallback);
       mChoreographer.postFrameCallback(mFrameCallback);
     }
@@ -139,4 +155,71 @@ abstract class AndroidElasticityLooperFactory {
       mChoreographer.removeFrameCallback(mFrameCallback);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Shared frame source posting a {@link Handler} message per frame.
+   */
+  private static class LegacyFrameSource extends SharedFrameSource {
+
+    private final Handler mHandler;
+    private final Runnable mFrameRunnable;
+
+    public LegacyFrameSource(Handler handler) {
+      mHandler = handler;
+      mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+          doFrame(System.nanoTime());
+          if (isStarted()) {
+            mHandler.post(mFrameRunnable);
+          }
+        }
+      };
+    }
+
+    @Override
+    protected void onStart() {
+      mHandler.removeCallbacks(mFrameRunnable);
+      mHandler.post(mFrameRunnable);
+    }
+
+    @Override
+    protected void onStop() {
+      mHandler.removeCallbacks(mFrameRunnable);
+    }
+  }
+
+  /**
+   * Shared frame source registering one {@link Choreographer} callback per frame.
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private static class ChoreographerFrameSource extends SharedFrameSource {
+
+    private final Choreographer mChoreographer;
+    private final Choreographer.FrameCallback mFrameCallback;
+
+    public ChoreographerFrameSource(Choreographer choreographer) {
+      mChoreographer = choreographer;
+      mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+          ChoreographerFrameSource.this.doFrame(frameTimeNanos);
+          if (isStarted()) {
+            mChoreographer.postFrameCallback(mFrameCallback);
+          }
+        }
+      };
+    }
+
+    @Override
+    protected void onStart() {
+      mChoreographer.removeFrameCallback(mFrameCallback);
+      mChoreographer.postFrameCallback(mFrameCallback);
+    }
+
+    @Override
+    protected void onStop() {
+      mChoreographer.removeFrameCallback(mFrameCallback);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.eebbk.studyos.elasticity.android;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+import com.eebbk.studyos.elasticity.baked.BakedCurveCache;
+
+/**
+ * Trims a {@link BakedCurveCache} when the system reports memory pressure: down to half of the
+ * budget while the app is running low or sits in the background, everything when memory is critical
+ * or the app is likely to be killed.
+ *
+ * The trim levels need Ice Cream Sandwich, they are received by a nested class only loaded there.
+ * Older versions only report low memory, which clears the cache.
+ */
+public class BakedCurveCacheTrimmer implements ComponentCallbacks {
+
+  private final BakedCurveCache mCache;
+
+  /**
+   * Register a trimmer of the shared cache with the application. Component callbacks can't be
+   * registered before Ice Cream Sandwich, forward the onLowMemory of the Application to the
+   * returned trimmer there.
+   * @param context any context of the application
+   * @return the trimmer
+   */
+  public static BakedCurveCacheTrimmer install(Context context) {
+    BakedCurveCacheTrimmer trimmer = new BakedCurveCacheTrimmer(BakedCurveCache.getInstance());
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+      context.getApplicationContext().registerComponentCallbacks(new TrimMemoryCallbacks(trimmer));
+    }
+    return trimmer;
+  }
+
+  public BakedCurveCacheTrimmer(BakedCurveCache cache) {
+    if (cache == null) {
+      throw new IllegalArgumentException("cache is required");
+    }
+    mCache = cache;
+  }
+
+  @Override
+  public void onLowMemory() {
+    mCache.clear();
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+  }
+
+  /**
+   * Receives the trim levels, only referenced on Ice Cream Sandwich and later.
+   */
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  private static final class TrimMemoryCallbacks implements ComponentCallbacks2 {
+
+    private final BakedCurveCacheTrimmer mTrimmer;
+
+    TrimMemoryCallbacks(BakedCurveCacheTrimmer trimmer) {
+      mTrimmer = trimmer;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+      BakedCurveCache cache = mTrimmer.mCache;
+      if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+        cache.clear();
+      } else if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+        cache.trimToSize(cache.getMaxBytes() / 2);
+      }
+    }
+
+    @Override
+    public void onLowMemory() {
+      mTrimmer.onLowMemory();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) 2013, Facebook, Inc.
+ *  All rights reserved.
+ *
+ *  This source code is licensed under the BSD-style license found in the
+ *  LICENSE file in the root directory of this source tree. An additional grant
+ *  of patent rights can be found in the PATENTS file in the same directory.
+ *
+ */
+
+package com.eebbk.studyos.elasticity.android;
+
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.ElasticityLooper;
+import com.eebbk.studyos.elasticity.system.ElasticitySnapshot;
+import com.eebbk.studyos.elasticity.system.HeadlessElasticityLooper;
+import com.eebbk.studyos.elasticity.system.SharedFrameSource;
+
+/**
+ * This is a wrapper for BaseSpringSystem that provides the convenience of automatically providing
+ * the AndroidSpringLooper dependency in {@link ElasticitySystem#create}.
+ */
+public class ElasticitySystem extends BaseElasticitySystem {
+
+  /**
+   * Create a new SpringSystem providing the appropriate constructor parameters to work properly
+   * in an Android environment. Every system created this way is looped by the process wide
+   * {@link SharedFrameSource}, so they share one frame callback and one timestamp per frame.
+   * Call it from the main thread.
+   * @return the SpringSystem
+   */
+  public static ElasticitySystem create() {
+    SharedFrameSource frameSource = AndroidElasticityLooperFactory.getSharedFrameSource();
+    return new ElasticitySystem(frameSource.createLooper());
+  }
+
+  /**
+   * Create a SpringSystem with its own frame callback instead of the shared frame source.
+   * @return the SpringSystem
+   */
+  public static ElasticitySystem createWithOwnLooper() {
+    return new ElasticitySystem(AndroidElasticityLooperFactory.createSpringLooper());
+  }
+
+  /**
+   * Create a SpringSystem looped on a dedicated physics thread instead of the main thread. Changes
+   * to its springs are sent with {@link #post(Runnable)}, and the UI thread reads the values
+   * through an {@link ElasticitySnapshot} added as a listener.
+   * @return the SpringSystem
+   */
+  public static ElasticitySystem createOnPhysicsThread() {
+    return new ElasticitySystem(HeadlessElasticityLooper.create());
+  }
+
+  private ElasticitySystem(ElasticityLooper springLooper) {
+    super(springLooper);
+  }
+
+}
\ No newline at end of file
@@ -0,0 +1,284 @@
+package com.eebbk.studyos.elasticity.baked;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.eebbk.studyos.elasticity.overshoot.OverShoot;
+import com.eebbk.studyos.elasticity.overshoot.OverShootConfig;
+import com.eebbk.studyos.elasticity.spring.Spring;
+import com.eebbk.studyos.elasticity.spring.SpringConfig;
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+
+/**
+ * Process wide cache of normalized baked curves, keyed by config, displacement class and frame
+ * rate, evicting the least recently used curves once their size exceeds a byte budget.
+ *
+ * Curves are baked for the middle of a power of two displacement class and normalized, so one
+ * curve serves every animation of the same config whose displacement falls in that class. Play them
+ * with {@link BakedElasticity#setTransform(double, double)}: a spring track goes from 0 to 1 and is
+ * scaled by end - start and offset by start, an overshoot track is for a velocity of 1 and is
+ * scaled by the velocity. Spring curves use the default rest thresholds without overshoot clamping.
+ */
+public class BakedCurveCache {
+
+  /** default budget of the shared cache */
+  public static final long DEFAULT_MAX_BYTES = 512 * 1024;
+  // rough size of a cache entry besides the samples: key, track, map entry and array header
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+  private static final int KIND_SPRING = 0;
+  private static final int KIND_OVERSHOOT = 1;
+
+  private static BakedCurveCache sInstance;
+
+  private final LinkedHashMap<Key, BakedTrack> mTracks =
+      new LinkedHashMap<Key, BakedTrack>(16, 0.75f, true);
+  private long mMaxBytes;
+  private long mBytes;
+  private long mHitCount;
+  private long mMissCount;
+  private long mEvictionCount;
+
+  /**
+   * @return the cache shared by the process
+   */
+  public static synchronized BakedCurveCache getInstance() {
+    if (sInstance == null) {
+      sInstance = new BakedCurveCache(DEFAULT_MAX_BYTES);
+    }
+    return sInstance;
+  }
+
+  /**
+   * @param maxBytes budget of the cached curves in bytes
+   */
+  public BakedCurveCache(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    mMaxBytes = maxBytes;
+  }
+
+  /**
+   * get the normalized curve of a spring moving from startValue to endValue
+   * @param config the spring config
+   * @param startValue value the animation starts from
+   * @param endValue value the animation ends at
+   * @param frameRate frames per second of the curve
+   * @return a track going from 0 to 1
+   */
+  public BakedTrack getSpringTrack(SpringConfig config, double startValue, double endValue,
+      double frameRate) {
+    if (config == null) {
+      throw new IllegalArgumentException("config is required");
+    }
+    int displacementClass = displacementClass(endValue - startValue);
+    Key key = new Key(KIND_SPRING, config.tension, config.friction, 0, displacementClass, frameRate);
+    BakedTrack track = get(key);
+    if (track == null) {
+      double displacement = representative(displacementClass);
+      BaseElasticitySystem system = ElasticityBaker.createSystem();
+      Spring spring = new Spring(system).setSpringConfig(config).setEndValue(displacement);
+      track = normalize(new ElasticityBaker(frameRate, ElasticityBaker.DEFAULT_MAX_FRAMES)
+          .bake(spring), displacement);
+      put(key, track);
+    }
+    return track;
+  }
+
+  /**
+   * get the curve of an overshoot for a velocity of 1, baked for the velocity class of velocity
+   * @param config the overshoot config, its velocity is ignored
+   * @param velocity the velocity the overshoot will be started with
+   * @param frameRate frames per second of the curve
+   * @return a track for a velocity of 1
+   */
+  public BakedTrack getOverShootTrack(OverShootConfig config, double velocity, double frameRate) {
+    if (config == null) {
+      throw new IllegalArgumentException("config is required");
+    }
+    int velocityClass = displacementClass(velocity);
+    Key key = new Key(KIND_OVERSHOOT, config.amp, config.freq, config.decay, velocityClass,
+        frameRate);
+    BakedTrack track = get(key);
+    if (track == null) {
+      double representativeVelocity = representative(velocityClass);
+      BaseElasticitySystem system = ElasticityBaker.createSystem();
+      OverShoot overShoot = new OverShoot(system);
+      overShoot.setOverShootConfig(new OverShootConfig(0, config.amp, config.freq, config.decay));
+      system.createElasticity(overShoot);
+      overShoot.setVelocity(representativeVelocity);
+      track = normalize(new ElasticityBaker(frameRate, ElasticityBaker.DEFAULT_MAX_FRAMES)
+          .bake(overShoot), representativeVelocity);
+      put(key, track);
+    }
+    return track;
+  }
+
+  private synchronized BakedTrack get(Key key) {
+    BakedTrack track = mTracks.get(key);
+    if (track != null) {
+      mHitCount++;
+    } else {
+      mMissCount++;
+    }
+    return track;
+  }
+
+  private synchronized void put(Key key, BakedTrack track) {
+    BakedTrack previous = mTracks.put(key, track);
+    if (previous != null) {
+      mBytes -= sizeOf(previous);
+    }
+    mBytes += sizeOf(track);
+    trimToSize(mMaxBytes);
+  }
+
+  /**
+   * evict the least recently used curves until the cache holds at most maxBytes
+   * @param maxBytes the size to trim to, 0 to empty the cache
+   */
+  public synchronized void trimToSize(long maxBytes) {
+    Iterator<Map.Entry<Key, BakedTrack>> iterator = mTracks.entrySet().iterator();
+    while (mBytes > maxBytes && iterator.hasNext()) {
+      mBytes -= sizeOf(iterator.next().getValue());
+      iterator.remove();
+      mEvictionCount++;
+    }
+  }
+
+  /**
+   * evict every curve
+   */
+  public void clear() {
+    trimToSize(0);
+  }
+
+  /**
+   * change the budget, evicting curves if the cache is over the new one
+   * @param maxBytes budget of the cached curves in bytes
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    mMaxBytes = maxBytes;
+    trimToSize(maxBytes);
+  }
+
+  public synchronized long getMaxBytes() {
+    return mMaxBytes;
+  }
+
+  /**
+   * @return estimated size of the cached curves in bytes
+   */
+  public synchronized long getBytes() {
+    return mBytes;
+  }
+
+  public synchronized int getCurveCount() {
+    return mTracks.size();
+  }
+
+  public synchronized long getHitCount() {
+    return mHitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return mMissCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return mEvictionCount;
+  }
+
+  /**
+   * reset the hit, miss and eviction counters
+   */
+  public synchronized void resetStats() {
+    mHitCount = 0;
+    mMissCount = 0;
+    mEvictionCount = 0;
+  }
+
+  private static long sizeOf(BakedTrack track) {
+    return ENTRY_OVERHEAD_BYTES + 4L * track.getFrameCount();
+  }
+
+  /**
+   * Both curves are linear in the displacement or velocity, so the sign is left to the transform
+   * and only the magnitude decides when the motion comes to rest.
+   * @return the power of two class of the magnitude of a displacement, Integer.MIN_VALUE for 0
+   */
+  private static int displacementClass(double displacement) {
+    double magnitude = Math.abs(displacement);
+    if (magnitude == 0 || Double.isNaN(magnitude) || Double.isInfinite(magnitude)) {
+      return Integer.MIN_VALUE;
+    }
+    return Math.getExponent(magnitude);
+  }
+
+  /**
+   * @return the displacement in the geometric middle of a class
+   */
+  private static double representative(int displacementClass) {
+    if (displacementClass == Integer.MIN_VALUE) {
+      return 0;
+    }
+    return Math.scalb(Math.sqrt(2), displacementClass);
+  }
+
+  private static BakedTrack normalize(BakedTrack track, double scale) {
+    float[] values = track.getValues();
+    float[] normalized = new float[values.length];
+    for (int i = 0; i < values.length; i++) {
+      // nothing moves without a displacement, the transform scales the values by 0 anyway
+      normalized[i] = scale == 0 ? values[i] : (float) (values[i] / scale);
+    }
+    return new BakedTrack(normalized, track.getFrameInterval());
+  }
+
+  private static final class Key {
+    private final int mKind;
+    private final double mA;
+    private final double mB;
+    private final double mC;
+    private final int mDisplacementClass;
+    private final double mFrameRate;
+
+    Key(int kind, double a, double b, double c, int displacementClass, double frameRate) {
+      mKind = kind;
+      mA = a;
+      mB = b;
+      mC = c;
+      mDisplacementClass = displacementClass;
+      mFrameRate = frameRate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return mKind == other.mKind
+          && mDisplacementClass == other.mDisplacementClass
+          && Double.compare(mA, other.mA) == 0
+          && Double.compare(mB, other.mB) == 0
+          && Double.compare(mC, other.mC) == 0
+          && Double.compare(mFrameRate, other.mFrameRate) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      long bits = mKind * 31 + mDisplacementClass;
+      bits = 31 * bits + Double.doubleToLongBits(mA);
+      bits = 31 * bits + Double.doubleToLongBits(mB);
+      bits = 31 * bits + Double.doubleToLongBits(mC);
+      bits = 31 * bits + Double.doubleToLongBits(mFrameRate);
+      return (int) (bits ^ (bits >>> 32));
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package com.eebbk.studyos.elasticity.baked;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.ElasticityFrame;
+import com.eebbk.studyos.elasticity.system.ElasticityFrameStats;
+import com.eebbk.studyos.elasticity.system.ElasticityListener;
+import com.eebbk.studyos.elasticity.system.ElasticityListeners;
+import com.eebbk.studyos.elasticity.system.ParallelElasticity;
+
+/**
+ * Plays a {@link BakedTrack} back as an elasticity. Each frame costs one interpolated array read,
+ * so many instances of the same animation can share one track instead of each integrating it.
+ */
+public class BakedElasticity implements ParallelElasticity {
+
+  // unique incrementer id for baked elasticities
+  private static final AtomicInteger ID = new AtomicInteger();
+
+  // maximum amount of time to play per frame in seconds, as for springs
+  private static final double MAX_DELTA_TIME_SEC = 0.064;
+
+  private final BaseElasticitySystem mSystem;
+  private final String mId;
+  private int mHandle = BaseElasticitySystem.NO_HANDLE;
+  private final ElasticityListeners mListeners = new ElasticityListeners();
+  private BakedTrack mTrack;
+  private double mTime;
+  private double mValue;
+  // applied to the values of the track
+  private double mScale = 1;
+  private double mOffset;
+  private boolean mPlaying;
+  private boolean mWasAtRest = true;
+  // transitions computed by integrate and reported by dispatch
+  private boolean mNotifyActivate;
+  private boolean mNotifyAtRest;
+
+  /**
+   * create a baked elasticity resting on the first value of its track
+   * @param system the system playing it
+   * @param track the track to play
+   */
+  public BakedElasticity(BaseElasticitySystem system, BakedTrack track) {
+    if (system == null) {
+      throw new IllegalArgumentException("BakedElasticity cannot be created outside of a BaseSpringSystem");
+    }
+    mSystem = system;
+    mId = "baked:" + ID.getAndIncrement();
+    setTrack(track);
+  }
+
+  /**
+   * Deregister from the system and clear the listeners.
+   */
+  public void destroy() {
+    mListeners.clear();
+    mSystem.deregisterElasticity(this);
+  }
+
+  /**
+   * replace the track, stopping playback on the first value of the new one
+   * @param track the track to play
+   * @return this object
+   */
+  public BakedElasticity setTrack(BakedTrack track) {
+    if (track == null) {
+      throw new IllegalArgumentException("track is required");
+    }
+    mTrack = track;
+    mTime = 0;
+    mValue = track.sample(0);
+    mPlaying = false;
+    mWasAtRest = true;
+    return this;
+  }
+
+  public BakedTrack getTrack() {
+    return mTrack;
+  }
+
+  /**
+   * map the values of the track, for example to play a normalized curve of
+   * {@link BakedCurveCache} between a start and an end value
+   * @param scale factor applied to the track values
+   * @param offset added to the scaled values
+   * @return this object
+   */
+  public BakedElasticity setTransform(double scale, double offset) {
+    mScale = scale;
+    mOffset = offset;
+    return this;
+  }
+
+  /**
+   * play the track from its start. The elasticity must be registered with its system.
+   * @return this object
+   */
+  public BakedElasticity start() {
+    mTime = 0;
+    mValue = mTrack.sample(0);
+    mPlaying = true;
+    mSystem.activateElasticity(mHandle);
+    return this;
+  }
+
+  /**
+   * @return time played since {@link #start()} in seconds
+   */
+  public double getTime() {
+    return mTime;
+  }
+
+  public boolean isAtRest() {
+    return !mPlaying;
+  }
+
+  @Override
+  public double getValue() {
+    return mOffset + mScale * mValue;
+  }
+
+  @Override
+  public String getId() {
+    return mId;
+  }
+
+  @Override
+  public int getHandle() {
+    return mHandle;
+  }
+
+  @Override
+  public void setHandle(int handle) {
+    mHandle = handle;
+  }
+
+  @Override
+  public boolean systemShouldAdvance() {
+    return mPlaying;
+  }
+
+  @Override
+  public void advance(double realDeltaTime) {
+    integrate(realDeltaTime);
+    dispatch();
+  }
+
+  @Override
+  public void integrate(double realDeltaTime) {
+    double adjustedDeltaTime = realDeltaTime;
+    if (realDeltaTime > MAX_DELTA_TIME_SEC) {
+      adjustedDeltaTime = MAX_DELTA_TIME_SEC;
+    }
+    mTime += adjustedDeltaTime;
+    mNotifyActivate = mWasAtRest;
+    mWasAtRest = false;
+    mValue = mTrack.sample(mTime);
+    mNotifyAtRest = mTime >= mTrack.getDuration();
+    if (mNotifyAtRest) {
+      mPlaying = false;
+      mWasAtRest = true;
+    }
+  }
+
+  @Override
+  public void dispatch() {
+    boolean notifyActivate = mNotifyActivate;
+    boolean notifyAtRest = mNotifyAtRest;
+    int callbacks = 0;
+    if (mSystem.shouldNotify(mHandle, notifyActivate || notifyAtRest)) {
+      callbacks = mListeners.notifyFrame(this, notifyActivate, notifyAtRest);
+    }
+    ElasticityFrame frame = mSystem.getFrame();
+    if (frame != null) {
+      frame.record(mHandle, notifyActivate, notifyAtRest);
+    }
+    ElasticityFrameStats stats = mSystem.getFrameStats();
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, callbacks);
+    }
+  }
+
+  @Override
+  public Elasticity addListener(ElasticityListener newListener) {
+    if (newListener == null) {
+      throw new IllegalArgumentException("newListener is required");
+    }
+    mListeners.add(newListener);
+    return this;
+  }
+
+  @Override
+  public Elasticity removeListener(ElasticityListener listenerToRemove) {
+    if (listenerToRemove == null) {
+      throw new IllegalArgumentException("listenerToRemove is required");
+    }
+    mListeners.remove(listenerToRemove);
+    return this;
+  }
+}
@@ -0,0 +1,76 @@
+package com.eebbk.studyos.elasticity.baked;
+
+/**
+ * Values of an elasticity sampled at a fixed frame rate by {@link ElasticityBaker}. A track is
+ * immutable and can be played back by any number of {@link BakedElasticity} at once.
+ */
+public final class BakedTrack {
+
+  private final float[] mValues;
+  private final double mFrameInterval;
+  private final double mInverseFrameInterval;
+
+  /**
+   * @param values the sampled values, the first one at time 0
+   * @param frameInterval time between two values in seconds
+   */
+  public BakedTrack(float[] values, double frameInterval) {
+    if (values == null || values.length == 0) {
+      throw new IllegalArgumentException("values are required");
+    }
+    if (!(frameInterval > 0)) {
+      throw new IllegalArgumentException("frameInterval must be positive");
+    }
+    mValues = values;
+    mFrameInterval = frameInterval;
+    mInverseFrameInterval = 1 / frameInterval;
+  }
+
+  /**
+   * get the value at a time by linear interpolation between the two closest frames
+   * @param time time since the start of the track in seconds
+   * @return the value, the first or last one outside of the track
+   */
+  public double sample(double time) {
+    double position = time * mInverseFrameInterval;
+    if (!(position > 0)) {
+      return mValues[0];
+    }
+    int index = (int) position;
+    if (index >= mValues.length - 1) {
+      return mValues[mValues.length - 1];
+    }
+    double a = mValues[index];
+    return a + (mValues[index + 1] - a) * (position - index);
+  }
+
+  /**
+   * @return the time of the last frame in seconds
+   */
+  public double getDuration() {
+    return (mValues.length - 1) * mFrameInterval;
+  }
+
+  public double getFrameInterval() {
+    return mFrameInterval;
+  }
+
+  public int getFrameCount() {
+    return mValues.length;
+  }
+
+  /**
+   * @return the last value of the track
+   */
+  public double getEndValue() {
+    return mValues[mValues.length - 1];
+  }
+
+  /**
+   * get the sampled values, shared with the track and not to be modified
+   * @return the values
+   */
+  public float[] getValues() {
+    return mValues;
+  }
+}
@@ -0,0 +1,94 @@
+package com.eebbk.studyos.elasticity.baked;
+
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.ElasticityLooper;
+
+/**
+ * Runs an elasticity headlessly at a fixed frame rate and records its values into a
+ * {@link BakedTrack}. The elasticity is advanced directly, frame after frame, until the system would
+ * stop advancing it. Create it in a system returned by {@link #createSystem()} so it isn't also
+ * advanced by a running looper.
+ */
+public class ElasticityBaker {
+
+  public static final double DEFAULT_FRAME_RATE = 60;
+  // one minute at the default frame rate
+  public static final int DEFAULT_MAX_FRAMES = 3600;
+
+  private final double mFrameInterval;
+  private final int mMaxFrames;
+
+  /**
+   * create a system that is never looped, to hold the elasticities being baked
+   * @return the system
+   */
+  public static BaseElasticitySystem createSystem() {
+    return new BaseElasticitySystem(new ElasticityLooper() {
+      @Override
+      public void start() {
+      }
+
+      @Override
+      public void stop() {
+      }
+    });
+  }
+
+  public ElasticityBaker() {
+    this(DEFAULT_FRAME_RATE, DEFAULT_MAX_FRAMES);
+  }
+
+  /**
+   * @param frameRate frames per second of the baked tracks
+   * @param maxFrames maximum number of frames of a track, for elasticities that never rest
+   */
+  public ElasticityBaker(double frameRate, int maxFrames) {
+    if (!(frameRate > 0)) {
+      throw new IllegalArgumentException("frameRate must be positive");
+    }
+    if (maxFrames < 1) {
+      throw new IllegalArgumentException("maxFrames must be positive");
+    }
+    mFrameInterval = 1 / frameRate;
+    mMaxFrames = maxFrames;
+  }
+
+  /**
+   * Record an elasticity from its current state until it comes to rest. The elasticity is left in
+   * the state of the last frame.
+   * @param elasticity a started elasticity, for example a Spring after setEndValue
+   * @return the baked track
+   */
+  public BakedTrack bake(Elasticity elasticity) {
+    if (elasticity == null) {
+      throw new IllegalArgumentException("elasticity is required");
+    }
+    float[] values = new float[Math.min(mMaxFrames, 64)];
+    int count = 0;
+    values[count++] = (float) elasticity.getValue();
+    while (count < mMaxFrames && elasticity.systemShouldAdvance()) {
+      elasticity.advance(mFrameInterval);
+      if (count == values.length) {
+        float[] grown = new float[Math.min(mMaxFrames, values.length * 2)];
+        System.arraycopy(values, 0, grown, 0, count);
+        values = grown;
+      }
+      values[count++] = (float) elasticity.getValue();
+    }
+    if (count < values.length) {
+      float[] trimmed = new float[count];
+      System.arraycopy(values, 0, trimmed, 0, count);
+      values = trimmed;
+    }
+    return new BakedTrack(values, mFrameInterval);
+  }
+
+  public double getFrameInterval() {
+    return mFrameInterval;
+  }
+
+  public int getMaxFrames() {
+    return mMaxFrames;
+  }
+}
@@ -0,0 +1,130 @@
+package com.eebbk.studyos.elasticity.expression;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An After Effects style expression parsed once into a tree of closures. Config parameters given
+ * at compile time, and locals assigned constant values, are folded into the tree, so evaluating it
+ * only computes what depends on the inputs. Evaluation works on a frame of doubles holding the
+ * inputs and variables and allocates nothing; the tree itself is immutable and can be shared by
+ * any number of frames and threads.
+ *
+ * <pre>
+ * CompiledExpression bounce = CompiledExpression.compile(
+ *     "value + velocity * amp * Math.sin(freq * time * 2 * Math.PI) / Math.exp(decay * time)",
+ *     new String[] {"time", "velocity", "value"}, parameters);
+ * double[] frame = bounce.newFrame();
+ * frame[bounce.getSlot("time")] = 0.1;
+ * double value = bounce.evaluate(frame);
+ * </pre>
+ */
+public final class CompiledExpression {
+
+  private final String mSource;
+  private final Node mRoot;
+  private final Map<String, Integer> mSlots;
+  private final Map<String, Double> mConstants;
+  private final int mInputCount;
+  private final int mResultSlot;
+  private final int mFrameSize;
+
+  /**
+   * Parse and compile an expression. Statements are separated by ; and the value of the
+   * expression is the value of the last expression statement evaluated, as in After Effects.
+   * Assignments to a name given in constants are ignored, so defaults such as amp = .1 can stay
+   * in the source and be overridden by the config.
+   * @param source the expression
+   * @param inputs names of the values set on the frame before each evaluation
+   * @param constants config parameters folded into the expression, may be null
+   * @return the compiled expression
+   * @throws IllegalArgumentException if the expression can't be parsed
+   */
+  public static CompiledExpression compile(String source, String[] inputs,
+      Map<String, Double> constants) {
+    if (source == null) {
+      throw new IllegalArgumentException("source is required");
+    }
+    if (inputs == null) {
+      inputs = new String[0];
+    }
+    if (constants == null) {
+      constants = Collections.emptyMap();
+    }
+    ExpressionParser parser = new ExpressionParser(source, inputs, constants);
+    Node root = parser.parse();
+    return new CompiledExpression(source, root, parser.getSlots(),
+        new HashMap<String, Double>(constants), inputs.length, parser.getResultSlot(),
+        parser.getSlotCount());
+  }
+
+  private CompiledExpression(String source, Node root, Map<String, Integer> slots,
+      Map<String, Double> constants, int inputCount, int resultSlot, int frameSize) {
+    mSource = source;
+    mRoot = root;
+    mSlots = Collections.unmodifiableMap(slots);
+    mConstants = Collections.unmodifiableMap(constants);
+    mInputCount = inputCount;
+    mResultSlot = resultSlot;
+    mFrameSize = frameSize;
+  }
+
+  /**
+   * @return a frame for {@link #evaluate(double[])}, all inputs and variables being 0
+   */
+  public double[] newFrame() {
+    return new double[mFrameSize];
+  }
+
+  public int getFrameSize() {
+    return mFrameSize;
+  }
+
+  /**
+   * @param name the name of an input or of a variable assigned by the expression
+   * @return its index in the frame, or -1 if the expression has no such input or variable
+   */
+  public int getSlot(String name) {
+    Integer slot = mSlots.get(name);
+    return slot != null ? slot : -1;
+  }
+
+  /**
+   * @param name the name of a config parameter
+   * @return the value it was folded into the expression with, or NaN if it wasn't given
+   */
+  public double getConstant(String name) {
+    Double constant = mConstants.get(name);
+    return constant != null ? constant : Double.NaN;
+  }
+
+  /**
+   * @param slot an index returned by {@link #getSlot(String)}
+   * @return true if the slot holds an input
+   */
+  public boolean isInput(int slot) {
+    return slot >= 0 && slot < mInputCount;
+  }
+
+  /**
+   * Evaluate the expression. Variables are left in the frame, so a variable such as duration can
+   * be read back with {@link #getSlot(String)} afterwards.
+   * @param frame a frame of this expression holding the inputs
+   * @return the value of the last expression statement evaluated, 0 if there was none
+   */
+  public double evaluate(double[] frame) {
+    frame[mResultSlot] = 0;
+    mRoot.eval(frame);
+    return frame[mResultSlot];
+  }
+
+  public String getSource() {
+    return mSource;
+  }
+
+  @Override
+  public String toString() {
+    return mSource;
+  }
+}
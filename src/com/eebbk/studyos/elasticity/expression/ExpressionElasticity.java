@@ -0,0 +1,330 @@
+package com.eebbk.studyos.elasticity.expression;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.ElasticityFrame;
+import com.eebbk.studyos.elasticity.system.ElasticityFrameStats;
+import com.eebbk.studyos.elasticity.system.ElasticityListener;
+import com.eebbk.studyos.elasticity.system.ElasticityListeners;
+import com.eebbk.studyos.elasticity.system.ParallelElasticity;
+
+/**
+ * Elasticity whose value is given by a {@link CompiledExpression}, so a curve designed in After
+ * Effects can be used without writing a new algorithm class. The expression sees the inputs time
+ * (seconds since the motion started), velocity and value (the resting value), for example
+ *
+ * <pre>
+ * value + velocity * amp * Math.sin(freq * time * 2 * Math.PI) / Math.exp(decay * time)
+ * </pre>
+ *
+ * The motion lasts {@link #setDuration(double)} seconds, or the duration config parameter, or the
+ * value of a duration variable assigned by the expression, and then rests on the value of the
+ * expression at that time. The duration is taken once when the motion starts, a duration variable
+ * costs one more evaluation of the expression at time 0 then, so prefer setDuration when the
+ * duration is known. Expressions are shared, each elasticity only owns its frame.
+ */
+public class ExpressionElasticity implements ParallelElasticity {
+
+  /** inputs set by the elasticity on every evaluation */
+  public static final String TIME = "time";
+  public static final String VELOCITY = "velocity";
+  public static final String VALUE = "value";
+  /** variable an expression can assign to give its own duration */
+  public static final String DURATION = "duration";
+  /** duration of expressions that don't give one, in seconds */
+  public static final double DEFAULT_DURATION = 10;
+
+  private static final String[] INPUTS = {TIME, VELOCITY, VALUE};
+
+  // unique incrementer id for expression elasticities
+  private static final AtomicInteger ID = new AtomicInteger();
+
+  // maximum amount of time to play per frame in seconds, as for springs
+  private static final double MAX_DELTA_TIME_SEC = 0.064;
+
+  private final BaseElasticitySystem mSystem;
+  private final String mId;
+  private int mHandle = BaseElasticitySystem.NO_HANDLE;
+  private final ElasticityListeners mListeners = new ElasticityListeners();
+  private CompiledExpression mExpression;
+  private double[] mFrame;
+  private int mTimeSlot;
+  private int mVelocitySlot;
+  private int mValueSlot;
+  private int mDurationSlot;
+  // duration given as a config parameter, NaN if there is none
+  private double mConstantDuration;
+  // NaN to use the duration of the expression
+  private double mDuration = Double.NaN;
+  private double mMotionDuration;
+  private double mTime;
+  private double mVelocity;
+  private double mRestValue;
+  private double mValue;
+  private boolean mMoving;
+  private boolean mWasAtRest = true;
+  // transitions computed by integrate and reported by dispatch
+  private boolean mNotifyActivate;
+  private boolean mNotifyAtRest;
+
+  /**
+   * compile an expression with the inputs of an expression elasticity
+   * @param source the expression
+   * @param parameters config parameters folded into the expression, may be null
+   * @return the compiled expression
+   * @throws IllegalArgumentException if the expression can't be parsed
+   */
+  public static CompiledExpression compile(String source, Map<String, Double> parameters) {
+    return CompiledExpression.compile(source, INPUTS, parameters);
+  }
+
+  /**
+   * create an expression elasticity resting on 0
+   * @param system the system advancing it
+   * @param expression an expression compiled by {@link #compile(String, Map)}
+   */
+  public ExpressionElasticity(BaseElasticitySystem system, CompiledExpression expression) {
+    if (system == null) {
+      throw new IllegalArgumentException("ExpressionElasticity cannot be created outside of a BaseSpringSystem");
+    }
+    mSystem = system;
+    mId = "expression:" + ID.getAndIncrement();
+    setExpression(expression);
+  }
+
+  /**
+   * Deregister from the system and clear the listeners.
+   */
+  public void destroy() {
+    mListeners.clear();
+    mSystem.deregisterElasticity(this);
+  }
+
+  /**
+   * replace the expression, stopping the motion on the resting value
+   * @param expression an expression compiled by {@link #compile(String, Map)}
+   * @return this object
+   */
+  public ExpressionElasticity setExpression(CompiledExpression expression) {
+    if (expression == null) {
+      throw new IllegalArgumentException("expression is required");
+    }
+    mExpression = expression;
+    mFrame = expression.newFrame();
+    mTimeSlot = expression.getSlot(TIME);
+    mVelocitySlot = expression.getSlot(VELOCITY);
+    mValueSlot = expression.getSlot(VALUE);
+    int durationSlot = expression.getSlot(DURATION);
+    mDurationSlot = expression.isInput(durationSlot) ? -1 : durationSlot;
+    mConstantDuration = expression.getConstant(DURATION);
+    reset();
+    return this;
+  }
+
+  public CompiledExpression getExpression() {
+    return mExpression;
+  }
+
+  /**
+   * set the duration of the motions, overriding the duration variable of the expression
+   * @param duration the duration in seconds, NaN to use the one of the expression
+   * @return this object
+   */
+  public ExpressionElasticity setDuration(double duration) {
+    if (duration < 0) {
+      throw new IllegalArgumentException("duration must not be negative");
+    }
+    mDuration = duration;
+    return this;
+  }
+
+  /**
+   * @return the duration of the current or next motion in seconds
+   */
+  public double getDuration() {
+    return mMoving ? mMotionDuration : computeDuration();
+  }
+
+  /**
+   * set the value the expression rests on, without starting a motion
+   * @param value the value input of the expression
+   * @return this object
+   */
+  public ExpressionElasticity setRestValue(double value) {
+    mRestValue = value;
+    if (!mMoving) {
+      mValue = value;
+    }
+    return this;
+  }
+
+  public double getRestValue() {
+    return mRestValue;
+  }
+
+  /**
+   * Start a motion with a velocity. A moving elasticity keeps its time and continues with the new
+   * velocity, as {@link com.eebbk.studyos.elasticity.overshoot.OverShoot} does.
+   * @param velocity the velocity input of the expression
+   * @return this object
+   */
+  public ExpressionElasticity setVelocity(double velocity) {
+    mVelocity = velocity;
+    if (!mMoving) {
+      mTime = 0;
+      mMoving = true;
+      mMotionDuration = computeDuration();
+    }
+    mSystem.activateElasticity(mHandle);
+    mListeners.notifyUpdate(this);
+    return this;
+  }
+
+  public double getVelocity() {
+    return mVelocity;
+  }
+
+  /**
+   * stop the motion and put the elasticity back at rest without notifying the listeners
+   */
+  public void reset() {
+    mTime = 0;
+    mValue = mRestValue;
+    mMoving = false;
+    mWasAtRest = true;
+  }
+
+  /**
+   * @return time since the motion started in seconds
+   */
+  public double getTime() {
+    return mTime;
+  }
+
+  public boolean isAtRest() {
+    return !mMoving;
+  }
+
+  @Override
+  public double getValue() {
+    return mValue;
+  }
+
+  @Override
+  public String getId() {
+    return mId;
+  }
+
+  @Override
+  public int getHandle() {
+    return mHandle;
+  }
+
+  @Override
+  public void setHandle(int handle) {
+    mHandle = handle;
+  }
+
+  @Override
+  public boolean systemShouldAdvance() {
+    return mMoving;
+  }
+
+  @Override
+  public void advance(double realDeltaTime) {
+    integrate(realDeltaTime);
+    dispatch();
+  }
+
+  @Override
+  public void integrate(double realDeltaTime) {
+    double adjustedDeltaTime = realDeltaTime;
+    if (realDeltaTime > MAX_DELTA_TIME_SEC) {
+      adjustedDeltaTime = MAX_DELTA_TIME_SEC;
+    }
+    mTime += adjustedDeltaTime;
+    mNotifyActivate = mWasAtRest;
+    mWasAtRest = false;
+    boolean isAtRest = mTime >= mMotionDuration;
+    mValue = evaluate(isAtRest ? mMotionDuration : mTime);
+    mNotifyAtRest = isAtRest;
+    if (isAtRest) {
+      mMoving = false;
+      mWasAtRest = true;
+    }
+  }
+
+  @Override
+  public void dispatch() {
+    boolean notifyActivate = mNotifyActivate;
+    boolean notifyAtRest = mNotifyAtRest;
+    int callbacks = 0;
+    if (mSystem.shouldNotify(mHandle, notifyActivate || notifyAtRest)) {
+      callbacks = mListeners.notifyFrame(this, notifyActivate, notifyAtRest);
+    }
+    ElasticityFrame frame = mSystem.getFrame();
+    if (frame != null) {
+      frame.record(mHandle, notifyActivate, notifyAtRest);
+    }
+    ElasticityFrameStats stats = mSystem.getFrameStats();
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.SOLVER_ITERATIONS, 1);
+      stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, callbacks);
+    }
+  }
+
+  @Override
+  public Elasticity addListener(ElasticityListener newListener) {
+    if (newListener == null) {
+      throw new IllegalArgumentException("newListener is required");
+    }
+    mListeners.add(newListener);
+    return this;
+  }
+
+  @Override
+  public Elasticity removeListener(ElasticityListener listenerToRemove) {
+    if (listenerToRemove == null) {
+      throw new IllegalArgumentException("listenerToRemove is required");
+    }
+    mListeners.remove(listenerToRemove);
+    return this;
+  }
+
+  private double evaluate(double time) {
+    double[] frame = mFrame;
+    if (mTimeSlot >= 0) {
+      frame[mTimeSlot] = time;
+    }
+    if (mVelocitySlot >= 0) {
+      frame[mVelocitySlot] = mVelocity;
+    }
+    if (mValueSlot >= 0) {
+      frame[mValueSlot] = mRestValue;
+    }
+    return mExpression.evaluate(frame);
+  }
+
+  /**
+   * the explicit duration, else the duration parameter, else the duration variable of the
+   * expression at time 0
+   */
+  private double computeDuration() {
+    if (!Double.isNaN(mDuration)) {
+      return mDuration;
+    }
+    // a config parameter overrides the duration assigned in the source, which is then folded away
+    if (!Double.isNaN(mConstantDuration)) {
+      return mConstantDuration >= 0 ? mConstantDuration : 0;
+    }
+    if (mDurationSlot < 0) {
+      return DEFAULT_DURATION;
+    }
+    evaluate(0);
+    double duration = mFrame[mDurationSlot];
+    return duration >= 0 ? duration : 0;
+  }
+}
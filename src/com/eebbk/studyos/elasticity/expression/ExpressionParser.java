@@ -0,0 +1,523 @@
+package com.eebbk.studyos.elasticity.expression;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive descent parser of the expression subset, building the {@link Node} tree directly.
+ *
+ * Statements are assignments, optionally declared with var, let or const, expression statements,
+ * blocks and if / else. As in After Effects the result is the value of the last expression
+ * statement evaluated. Expressions support numbers, true and false, + - * / %, comparisons, ! &&
+ * || and ?:, the Math functions and constants, and clamp(value, min, max).
+ */
+final class ExpressionParser {
+
+  private static final int NUMBER = 0;
+  private static final int IDENTIFIER = 1;
+  private static final int OPERATOR = 2;
+  private static final int END = 3;
+
+  private final String mSource;
+  private final Map<String, Double> mConstants;
+  private final Map<String, Integer> mSlots = new HashMap<String, Integer>();
+  // locals holding a known constant value at this point of the program
+  private final Map<String, Double> mKnownValues = new HashMap<String, Double>();
+  private final int mResultSlot;
+  private int mSlotCount;
+  // nesting depth of conditional statements, assignments below 0 are not tracked as constants
+  private int mConditionalDepth;
+
+  private int mPosition;
+  private int mTokenStart;
+  private int mTokenType;
+  private String mToken;
+  private double mNumber;
+
+  ExpressionParser(String source, String[] inputs, Map<String, Double> constants) {
+    mSource = source;
+    mConstants = constants;
+    for (String input : inputs) {
+      if (mSlots.containsKey(input)) {
+        throw new IllegalArgumentException("duplicate input " + input);
+      }
+      mSlots.put(input, mSlotCount++);
+    }
+    mResultSlot = mSlotCount++;
+  }
+
+  Node parse() {
+    next();
+    List<Node> statements = new ArrayList<Node>();
+    while (mTokenType != END) {
+      Node statement = parseStatement();
+      if (statement != null) {
+        statements.add(statement);
+      }
+    }
+    if (statements.isEmpty()) {
+      throw error("empty expression");
+    }
+    return Node.sequence(statements.toArray(new Node[statements.size()]));
+  }
+
+  Map<String, Integer> getSlots() {
+    return mSlots;
+  }
+
+  int getSlotCount() {
+    return mSlotCount;
+  }
+
+  int getResultSlot() {
+    return mResultSlot;
+  }
+
+  private Node parseStatement() {
+    if (accept(";")) {
+      return null;
+    }
+    if (accept("{")) {
+      List<Node> statements = new ArrayList<Node>();
+      while (!accept("}")) {
+        if (mTokenType == END) {
+          throw error("missing }");
+        }
+        Node statement = parseStatement();
+        if (statement != null) {
+          statements.add(statement);
+        }
+      }
+      return statements.isEmpty() ? null
+          : Node.sequence(statements.toArray(new Node[statements.size()]));
+    }
+    if (mTokenType == IDENTIFIER && mToken.equals("if")) {
+      return parseIf();
+    }
+    if (mTokenType == IDENTIFIER
+        && (mToken.equals("var") || mToken.equals("let") || mToken.equals("const"))) {
+      next();
+      if (mTokenType != IDENTIFIER) {
+        throw error("variable name expected");
+      }
+      return parseAssignment();
+    }
+    if (mTokenType == IDENTIFIER && peekAssignment()) {
+      return parseAssignment();
+    }
+    Node value = parseExpression();
+    endStatement();
+    return Node.assign(mResultSlot, value);
+  }
+
+  private Node parseIf() {
+    next();
+    expect("(");
+    Node condition = parseExpression();
+    expect(")");
+    mConditionalDepth++;
+    Node then = parseStatement();
+    Node otherwise = null;
+    if (mTokenType == IDENTIFIER && mToken.equals("else")) {
+      next();
+      otherwise = parseStatement();
+    }
+    mConditionalDepth--;
+    if (then == null) {
+      then = Node.constant(0);
+    }
+    if (otherwise == null) {
+      otherwise = Node.constant(0);
+    }
+    return Node.ifElse(condition, then, otherwise);
+  }
+
+  private Node parseAssignment() {
+    String name = mToken;
+    if (mConstants.containsKey(name)) {
+      // the value given at compile time wins over the default written in the expression
+      next();
+      expect("=");
+      parseExpression();
+      endStatement();
+      return null;
+    }
+    Integer slot = mSlots.get(name);
+    if (slot == null) {
+      if (isReserved(name)) {
+        throw error(name + " can't be assigned");
+      }
+      slot = mSlotCount++;
+      mSlots.put(name, slot);
+    } else if (slot < mResultSlot) {
+      throw error("input " + name + " can't be assigned");
+    }
+    next();
+    expect("=");
+    Node value = parseExpression();
+    endStatement();
+    if (mConditionalDepth == 0 && value.isConstant()) {
+      mKnownValues.put(name, value.eval(null));
+    } else {
+      mKnownValues.remove(name);
+    }
+    return Node.assign(slot, value);
+  }
+
+  private void endStatement() {
+    if (!accept(";") && mTokenType != END && !mToken.equals("}")) {
+      throw error("; expected");
+    }
+  }
+
+  private Node parseExpression() {
+    Node condition = parseOr();
+    if (accept("?")) {
+      Node then = parseExpression();
+      expect(":");
+      Node otherwise = parseExpression();
+      return Node.ifElse(condition, then, otherwise);
+    }
+    return condition;
+  }
+
+  private Node parseOr() {
+    Node node = parseAnd();
+    while (accept("||")) {
+      node = Node.or(node, parseAnd());
+    }
+    return node;
+  }
+
+  private Node parseAnd() {
+    Node node = parseEquality();
+    while (accept("&&")) {
+      node = Node.and(node, parseEquality());
+    }
+    return node;
+  }
+
+  private Node parseEquality() {
+    Node node = parseRelational();
+    while (true) {
+      if (accept("==") || accept("===")) {
+        node = Node.compare(Node.EQUAL, node, parseRelational());
+      } else if (accept("!=") || accept("!==")) {
+        node = Node.compare(Node.NOT_EQUAL, node, parseRelational());
+      } else {
+        return node;
+      }
+    }
+  }
+
+  private Node parseRelational() {
+    Node node = parseAdditive();
+    while (true) {
+      if (accept("<")) {
+        node = Node.compare(Node.LESS, node, parseAdditive());
+      } else if (accept("<=")) {
+        node = Node.compare(Node.LESS_EQUAL, node, parseAdditive());
+      } else if (accept(">")) {
+        node = Node.compare(Node.GREATER, node, parseAdditive());
+      } else if (accept(">=")) {
+        node = Node.compare(Node.GREATER_EQUAL, node, parseAdditive());
+      } else {
+        return node;
+      }
+    }
+  }
+
+  private Node parseAdditive() {
+    Node node = parseMultiplicative();
+    while (true) {
+      if (accept("+")) {
+        node = Node.add(node, parseMultiplicative());
+      } else if (accept("-")) {
+        node = Node.subtract(node, parseMultiplicative());
+      } else {
+        return node;
+      }
+    }
+  }
+
+  private Node parseMultiplicative() {
+    Node node = parseUnary();
+    while (true) {
+      if (accept("*")) {
+        node = Node.multiply(node, parseUnary());
+      } else if (accept("/")) {
+        node = Node.divide(node, parseUnary());
+      } else if (accept("%")) {
+        node = Node.remainder(node, parseUnary());
+      } else {
+        return node;
+      }
+    }
+  }
+
+  private Node parseUnary() {
+    if (accept("-")) {
+      return Node.negate(parseUnary());
+    }
+    if (accept("+")) {
+      return parseUnary();
+    }
+    if (accept("!")) {
+      return Node.not(parseUnary());
+    }
+    return parsePrimary();
+  }
+
+  private Node parsePrimary() {
+    if (mTokenType == NUMBER) {
+      double value = mNumber;
+      next();
+      return Node.constant(value);
+    }
+    if (accept("(")) {
+      Node node = parseExpression();
+      expect(")");
+      return node;
+    }
+    if (mTokenType != IDENTIFIER) {
+      throw error("unexpected " + (mTokenType == END ? "end of expression" : mToken));
+    }
+    String name = mToken;
+    next();
+    if (name.equals("Math")) {
+      expect(".");
+      if (mTokenType != IDENTIFIER) {
+        throw error("Math member expected");
+      }
+      String member = mToken;
+      next();
+      return parseMath(member);
+    }
+    if (name.equals("clamp")) {
+      List<Node> arguments = parseArguments("clamp", 3);
+      return Node.clamp(arguments.get(0), arguments.get(1), arguments.get(2));
+    }
+    if (name.equals("true")) {
+      return Node.constant(1);
+    }
+    if (name.equals("false")) {
+      return Node.constant(0);
+    }
+    Double constant = mConstants.get(name);
+    if (constant != null) {
+      return Node.constant(constant);
+    }
+    Double known = mKnownValues.get(name);
+    if (known != null) {
+      return Node.constant(known);
+    }
+    Integer slot = mSlots.get(name);
+    if (slot == null) {
+      throw error("unknown identifier " + name);
+    }
+    return Node.variable(slot);
+  }
+
+  private Node parseMath(String member) {
+    if (member.equals("PI")) {
+      return Node.constant(Math.PI);
+    }
+    if (member.equals("E")) {
+      return Node.constant(Math.E);
+    }
+    int function = unaryFunction(member);
+    if (function >= 0) {
+      return Node.function(function, parseArguments(member, 1).get(0));
+    }
+    function = binaryFunction(member);
+    if (function >= 0) {
+      List<Node> arguments = parseArguments(member, 2);
+      return Node.function(function, arguments.get(0), arguments.get(1));
+    }
+    throw error("unsupported Math." + member);
+  }
+
+  private List<Node> parseArguments(String name, int count) {
+    expect("(");
+    List<Node> arguments = new ArrayList<Node>();
+    if (!accept(")")) {
+      do {
+        arguments.add(parseExpression());
+      } while (accept(","));
+      expect(")");
+    }
+    if (arguments.size() != count) {
+      throw error(name + " takes " + count + " arguments");
+    }
+    return arguments;
+  }
+
+  private static int unaryFunction(String name) {
+    if (name.equals("sin")) {
+      return Node.SIN;
+    } else if (name.equals("cos")) {
+      return Node.COS;
+    } else if (name.equals("tan")) {
+      return Node.TAN;
+    } else if (name.equals("asin")) {
+      return Node.ASIN;
+    } else if (name.equals("acos")) {
+      return Node.ACOS;
+    } else if (name.equals("atan")) {
+      return Node.ATAN;
+    } else if (name.equals("exp")) {
+      return Node.EXP;
+    } else if (name.equals("log")) {
+      return Node.LOG;
+    } else if (name.equals("sqrt")) {
+      return Node.SQRT;
+    } else if (name.equals("abs")) {
+      return Node.ABS;
+    } else if (name.equals("floor")) {
+      return Node.FLOOR;
+    } else if (name.equals("ceil")) {
+      return Node.CEIL;
+    } else if (name.equals("round")) {
+      return Node.ROUND;
+    }
+    return -1;
+  }
+
+  private static int binaryFunction(String name) {
+    if (name.equals("pow")) {
+      return Node.POW;
+    } else if (name.equals("atan2")) {
+      return Node.ATAN2;
+    } else if (name.equals("min")) {
+      return Node.MIN;
+    } else if (name.equals("max")) {
+      return Node.MAX;
+    }
+    return -1;
+  }
+
+  private static boolean isReserved(String name) {
+    return name.equals("Math") || name.equals("clamp") || name.equals("true")
+        || name.equals("false") || name.equals("if") || name.equals("else");
+  }
+
+  /** tokenizer **/
+
+  private boolean accept(String operator) {
+    if (mTokenType == OPERATOR && mToken.equals(operator)) {
+      next();
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(String operator) {
+    if (!accept(operator)) {
+      throw error(operator + " expected");
+    }
+  }
+
+  /**
+   * @return true if the current identifier is followed by a single =
+   */
+  private boolean peekAssignment() {
+    int i = skipWhitespace(mPosition);
+    return i < mSource.length() && mSource.charAt(i) == '='
+        && (i + 1 >= mSource.length() || mSource.charAt(i + 1) != '=');
+  }
+
+  private int skipWhitespace(int i) {
+    int length = mSource.length();
+    while (i < length) {
+      char c = mSource.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '/' && i + 1 < length && mSource.charAt(i + 1) == '/') {
+        while (i < length && mSource.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '/' && i + 1 < length && mSource.charAt(i + 1) == '*') {
+        int end = mSource.indexOf("*/", i + 2);
+        if (end < 0) {
+          mPosition = i;
+          throw error("unterminated comment");
+        }
+        i = end + 2;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private void next() {
+    int i = skipWhitespace(mPosition);
+    mTokenStart = i;
+    if (i >= mSource.length()) {
+      mPosition = i;
+      mTokenType = END;
+      mToken = "";
+      return;
+    }
+    char c = mSource.charAt(i);
+    if (Character.isDigit(c) || (c == '.' && i + 1 < mSource.length()
+        && Character.isDigit(mSource.charAt(i + 1)))) {
+      int start = i;
+      while (i < mSource.length() && (Character.isDigit(mSource.charAt(i))
+          || mSource.charAt(i) == '.')) {
+        i++;
+      }
+      if (i < mSource.length() && (mSource.charAt(i) == 'e' || mSource.charAt(i) == 'E')) {
+        i++;
+        if (i < mSource.length() && (mSource.charAt(i) == '+' || mSource.charAt(i) == '-')) {
+          i++;
+        }
+        while (i < mSource.length() && Character.isDigit(mSource.charAt(i))) {
+          i++;
+        }
+      }
+      mToken = mSource.substring(start, i);
+      mPosition = i;
+      try {
+        mNumber = Double.parseDouble(mToken);
+      } catch (NumberFormatException e) {
+        throw error("invalid number " + mToken);
+      }
+      mTokenType = NUMBER;
+      return;
+    }
+    if (Character.isJavaIdentifierStart(c)) {
+      int start = i;
+      while (i < mSource.length() && Character.isJavaIdentifierPart(mSource.charAt(i))) {
+        i++;
+      }
+      mToken = mSource.substring(start, i);
+      mPosition = i;
+      mTokenType = IDENTIFIER;
+      return;
+    }
+    String[] operators = {"===", "!==", "==", "!=", "<=", ">=", "&&", "||"};
+    for (String operator : operators) {
+      if (mSource.startsWith(operator, i)) {
+        mToken = operator;
+        mPosition = i + operator.length();
+        mTokenType = OPERATOR;
+        return;
+      }
+    }
+    if ("+-*/%<>!?:(){};,.=".indexOf(c) >= 0) {
+      mToken = String.valueOf(c);
+      mPosition = i + 1;
+      mTokenType = OPERATOR;
+      return;
+    }
+    mPosition = i;
+    throw error("unexpected character " + c);
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at " + mTokenStart + " in expression");
+  }
+}
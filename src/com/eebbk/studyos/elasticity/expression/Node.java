@@ -0,0 +1,413 @@
+package com.eebbk.studyos.elasticity.expression;
+
+/**
+ * Node of a compiled expression. Every node is a small closure evaluating its children on a frame
+ * of doubles holding the inputs and variables, so evaluation neither boxes nor allocates. The
+ * factories fold constant operands while the tree is built.
+ */
+abstract class Node {
+
+  /**
+   * @param frame inputs and variables of the expression
+   * @return the value of the node
+   */
+  abstract double eval(double[] frame);
+
+  /**
+   * @return true if the node always evaluates to the same value
+   */
+  boolean isConstant() {
+    return false;
+  }
+
+  static final class Constant extends Node {
+    final double mValue;
+
+    Constant(double value) {
+      mValue = value;
+    }
+
+    @Override
+    double eval(double[] frame) {
+      return mValue;
+    }
+
+    @Override
+    boolean isConstant() {
+      return true;
+    }
+  }
+
+  static final class Variable extends Node {
+    final int mIndex;
+
+    Variable(int index) {
+      mIndex = index;
+    }
+
+    @Override
+    double eval(double[] frame) {
+      return frame[mIndex];
+    }
+  }
+
+  /** x * c, kept apart so chains like freq * time * 2 * Math.PI fold into a single product */
+  static class Scale extends Node {
+    final Node mNode;
+    final double mFactor;
+
+    Scale(Node node, double factor) {
+      mNode = node;
+      mFactor = factor;
+    }
+
+    @Override
+    double eval(double[] frame) {
+      return mNode.eval(frame) * mFactor;
+    }
+  }
+
+  static Node constant(double value) {
+    return new Constant(value);
+  }
+
+  static Node variable(int index) {
+    return new Variable(index);
+  }
+
+  static Node assign(final int index, final Node value) {
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return frame[index] = value.eval(frame);
+      }
+    };
+  }
+
+  static Node sequence(final Node[] statements) {
+    if (statements.length == 1) {
+      return statements[0];
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        double value = 0;
+        for (int i = 0; i < statements.length; i++) {
+          value = statements[i].eval(frame);
+        }
+        return value;
+      }
+    };
+  }
+
+  static Node ifElse(final Node condition, final Node then, final Node otherwise) {
+    if (condition.isConstant()) {
+      return truthy(condition.eval(null)) ? then : otherwise;
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return truthy(condition.eval(frame)) ? then.eval(frame) : otherwise.eval(frame);
+      }
+    };
+  }
+
+  static Node add(final Node a, final Node b) {
+    if (a.isConstant() && b.isConstant()) {
+      return constant(a.eval(null) + b.eval(null));
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return a.eval(frame) + b.eval(frame);
+      }
+    };
+  }
+
+  static Node subtract(final Node a, final Node b) {
+    if (a.isConstant() && b.isConstant()) {
+      return constant(a.eval(null) - b.eval(null));
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return a.eval(frame) - b.eval(frame);
+      }
+    };
+  }
+
+  static Node multiply(final Node a, final Node b) {
+    if (a.isConstant() && b.isConstant()) {
+      return constant(a.eval(null) * b.eval(null));
+    }
+    if (a.isConstant()) {
+      return scale(b, a.eval(null));
+    }
+    if (b.isConstant()) {
+      return scale(a, b.eval(null));
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return a.eval(frame) * b.eval(frame);
+      }
+    };
+  }
+
+  private static Node scale(Node node, double factor) {
+    if (node instanceof Scale) {
+      Scale scale = (Scale) node;
+      return scale(scale.mNode, scale.mFactor * factor);
+    }
+    if (node instanceof Variable) {
+      // the most common product, time * constant, read in a single node
+      final int index = ((Variable) node).mIndex;
+      final double scaleFactor = factor;
+      return new Scale(node, factor) {
+        @Override
+        double eval(double[] frame) {
+          return frame[index] * scaleFactor;
+        }
+      };
+    }
+    return new Scale(node, factor);
+  }
+
+  static Node divide(final Node a, final Node b) {
+    if (a.isConstant() && b.isConstant()) {
+      return constant(a.eval(null) / b.eval(null));
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return a.eval(frame) / b.eval(frame);
+      }
+    };
+  }
+
+  static Node remainder(final Node a, final Node b) {
+    if (a.isConstant() && b.isConstant()) {
+      return constant(a.eval(null) % b.eval(null));
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return a.eval(frame) % b.eval(frame);
+      }
+    };
+  }
+
+  static Node negate(final Node a) {
+    if (a.isConstant()) {
+      return constant(-a.eval(null));
+    }
+    return scale(a, -1);
+  }
+
+  static Node not(final Node a) {
+    if (a.isConstant()) {
+      return constant(truthy(a.eval(null)) ? 0 : 1);
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        return truthy(a.eval(frame)) ? 0 : 1;
+      }
+    };
+  }
+
+  static final int LESS = 0;
+  static final int LESS_EQUAL = 1;
+  static final int GREATER = 2;
+  static final int GREATER_EQUAL = 3;
+  static final int EQUAL = 4;
+  static final int NOT_EQUAL = 5;
+
+  static Node compare(final int operator, final Node a, final Node b) {
+    Node node = new Node() {
+      @Override
+      double eval(double[] frame) {
+        double x = a.eval(frame);
+        double y = b.eval(frame);
+        boolean result;
+        switch (operator) {
+          case LESS:
+            result = x < y;
+            break;
+          case LESS_EQUAL:
+            result = x <= y;
+            break;
+          case GREATER:
+            result = x > y;
+            break;
+          case GREATER_EQUAL:
+            result = x >= y;
+            break;
+          case EQUAL:
+            result = x == y;
+            break;
+          default:
+            result = x != y;
+            break;
+        }
+        return result ? 1 : 0;
+      }
+    };
+    return a.isConstant() && b.isConstant() ? constant(node.eval(null)) : node;
+  }
+
+  static Node and(final Node a, final Node b) {
+    if (a.isConstant()) {
+      return truthy(a.eval(null)) ? b : a;
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        double x = a.eval(frame);
+        return truthy(x) ? b.eval(frame) : x;
+      }
+    };
+  }
+
+  static Node or(final Node a, final Node b) {
+    if (a.isConstant()) {
+      return truthy(a.eval(null)) ? a : b;
+    }
+    return new Node() {
+      @Override
+      double eval(double[] frame) {
+        double x = a.eval(frame);
+        return truthy(x) ? x : b.eval(frame);
+      }
+    };
+  }
+
+  static final int SIN = 0;
+  static final int COS = 1;
+  static final int TAN = 2;
+  static final int ASIN = 3;
+  static final int ACOS = 4;
+  static final int ATAN = 5;
+  static final int EXP = 6;
+  static final int LOG = 7;
+  static final int SQRT = 8;
+  static final int ABS = 9;
+  static final int FLOOR = 10;
+  static final int CEIL = 11;
+  static final int ROUND = 12;
+
+  static Node function(final int function, final Node a) {
+    Node node;
+    switch (function) {
+      case SIN:
+        node = new Node() {
+          @Override
+          double eval(double[] frame) {
+            return Math.sin(a.eval(frame));
+          }
+        };
+        break;
+      case COS:
+        node = new Node() {
+          @Override
+          double eval(double[] frame) {
+            return Math.cos(a.eval(frame));
+          }
+        };
+        break;
+      case EXP:
+        node = new Node() {
+          @Override
+          double eval(double[] frame) {
+            return Math.exp(a.eval(frame));
+          }
+        };
+        break;
+      default:
+        node = new Node() {
+          @Override
+          double eval(double[] frame) {
+            return apply(function, a.eval(frame));
+          }
+        };
+        break;
+    }
+    return a.isConstant() ? constant(node.eval(null)) : node;
+  }
+
+  private static double apply(int function, double x) {
+    switch (function) {
+      case SIN:
+        return Math.sin(x);
+      case COS:
+        return Math.cos(x);
+      case TAN:
+        return Math.tan(x);
+      case ASIN:
+        return Math.asin(x);
+      case ACOS:
+        return Math.acos(x);
+      case ATAN:
+        return Math.atan(x);
+      case EXP:
+        return Math.exp(x);
+      case LOG:
+        return Math.log(x);
+      case SQRT:
+        return Math.sqrt(x);
+      case ABS:
+        return Math.abs(x);
+      case FLOOR:
+        return Math.floor(x);
+      case CEIL:
+        return Math.ceil(x);
+      default:
+        // JavaScript rounds halves up
+        return Math.floor(x + 0.5);
+    }
+  }
+
+  static final int POW = 0;
+  static final int ATAN2 = 1;
+  static final int MIN = 2;
+  static final int MAX = 3;
+
+  static Node function(final int function, final Node a, final Node b) {
+    Node node = new Node() {
+      @Override
+      double eval(double[] frame) {
+        double x = a.eval(frame);
+        double y = b.eval(frame);
+        switch (function) {
+          case POW:
+            return Math.pow(x, y);
+          case ATAN2:
+            return Math.atan2(x, y);
+          case MIN:
+            return Math.min(x, y);
+          default:
+            return Math.max(x, y);
+        }
+      }
+    };
+    return a.isConstant() && b.isConstant() ? constant(node.eval(null)) : node;
+  }
+
+  static Node clamp(final Node value, final Node min, final Node max) {
+    Node node = new Node() {
+      @Override
+      double eval(double[] frame) {
+        return Math.min(Math.max(value.eval(frame), min.eval(frame)), max.eval(frame));
+      }
+    };
+    return value.isConstant() && min.isConstant() && max.isConstant()
+        ? constant(node.eval(null)) : node;
+  }
+
+  /**
+   * JavaScript truthiness of a number
+   */
+  static boolean truthy(double value) {
+    return value != 0 && !Double.isNaN(value);
+  }
+}
@@ -0,0 +1,214 @@
+package com.eebbk.studyos.elasticity.importer;
+
+import com.eebbk.studyos.elasticity.overshoot.OverShootConfig;
+
+/**
+ * Keyframes of an After Effects composition read by {@link BodymovinImporter}. Every animated
+ * property, and every property driven by an expression, is one entry. The keyframes of all
+ * properties are packed into shared primitive arrays, indexed from the keyframe and value offsets
+ * of each property.
+ *
+ * A property has {@link #getDimensions(int)} values per keyframe, for example 2 or 3 for a
+ * position. The easing of keyframe k, towards keyframe k + 1, is stored as the four floats out x,
+ * out y, in x, in y of its Bezier handles, (0, 0, 1, 1) being linear. Properties that are not
+ * animated, with or without an expression, are stored with a single keyframe holding their static
+ * value.
+ */
+public final class BodymovinAnimation {
+
+  /** floats of easing stored per keyframe */
+  public static final int EASING_STRIDE = 4;
+
+  private final double mFrameRate;
+  private final double mInPoint;
+  private final double mOutPoint;
+  private final String[] mNames;
+  private final int[] mDimensions;
+  private final int[] mKeyframeOffsets;
+  private final int[] mKeyframeCounts;
+  private final int[] mValueOffsets;
+  private final String[] mExpressions;
+  // amp, freq and decay of each property, NaN when the expression doesn't set them
+  private final double[] mBounceParameters;
+  private final float[] mTimes;
+  private final float[] mValues;
+  private final float[] mEasing;
+  private final boolean[] mHold;
+
+  BodymovinAnimation(double frameRate, double inPoint, double outPoint, String[] names,
+      int[] dimensions, int[] keyframeOffsets, int[] keyframeCounts, int[] valueOffsets,
+      String[] expressions, double[] bounceParameters, float[] times, float[] values,
+      float[] easing, boolean[] hold) {
+    mFrameRate = frameRate;
+    mInPoint = inPoint;
+    mOutPoint = outPoint;
+    mNames = names;
+    mDimensions = dimensions;
+    mKeyframeOffsets = keyframeOffsets;
+    mKeyframeCounts = keyframeCounts;
+    mValueOffsets = valueOffsets;
+    mExpressions = expressions;
+    mBounceParameters = bounceParameters;
+    mTimes = times;
+    mValues = values;
+    mEasing = easing;
+    mHold = hold;
+  }
+
+  /**
+   * @return frames per second of the composition
+   */
+  public double getFrameRate() {
+    return mFrameRate;
+  }
+
+  /**
+   * @return first frame of the composition
+   */
+  public double getInPoint() {
+    return mInPoint;
+  }
+
+  /**
+   * @return frame at which the composition ends
+   */
+  public double getOutPoint() {
+    return mOutPoint;
+  }
+
+  public int getPropertyCount() {
+    return mNames.length;
+  }
+
+  /**
+   * @param property index of a property
+   * @return its path, made of the names of the layers and groups holding it and of its member
+   *         name, for example Ball/ks/p
+   */
+  public String getName(int property) {
+    return mNames[property];
+  }
+
+  /**
+   * @param name the path of a property
+   * @return the index of the first property with that path, -1 if there is none
+   */
+  public int indexOf(String name) {
+    for (int i = 0; i < mNames.length; i++) {
+      if (mNames[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public int getDimensions(int property) {
+    return mDimensions[property];
+  }
+
+  public int getKeyframeCount(int property) {
+    return mKeyframeCounts[property];
+  }
+
+  /**
+   * @param property index of a property
+   * @return index of its first keyframe in the time, hold and easing arrays
+   */
+  public int getKeyframeOffset(int property) {
+    return mKeyframeOffsets[property];
+  }
+
+  /**
+   * @param property index of a property
+   * @return index of the first value of its first keyframe in the value array
+   */
+  public int getValueOffset(int property) {
+    return mValueOffsets[property];
+  }
+
+  /**
+   * @param property index of a property
+   * @param keyframe index of the keyframe within the property
+   * @return time of the keyframe in seconds
+   */
+  public double getTime(int property, int keyframe) {
+    return mTimes[mKeyframeOffsets[property] + keyframe] / mFrameRate;
+  }
+
+  /**
+   * @param property index of a property
+   * @param keyframe index of the keyframe within the property
+   * @param dimension index of the component
+   * @return the value of the component at the keyframe
+   */
+  public float getValue(int property, int keyframe, int dimension) {
+    return mValues[mValueOffsets[property] + keyframe * mDimensions[property] + dimension];
+  }
+
+  /**
+   * @param property index of a property
+   * @return the expression of the property, null if it has none
+   */
+  public String getExpression(int property) {
+    return mExpressions[property];
+  }
+
+  /**
+   * @param property index of a property
+   * @return true if the expression of the property sets amp, freq and decay
+   */
+  public boolean hasBounce(int property) {
+    int offset = property * 3;
+    return !Double.isNaN(mBounceParameters[offset]) && !Double.isNaN(mBounceParameters[offset + 1])
+        && !Double.isNaN(mBounceParameters[offset + 2]);
+  }
+
+  /**
+   * @param property index of a property
+   * @param velocity velocity of the overshoot
+   * @return a config with the amp, freq and decay of the expression of the property, null if it
+   *         doesn't set them
+   */
+  public OverShootConfig createOverShootConfig(int property, double velocity) {
+    if (!hasBounce(property)) {
+      return null;
+    }
+    int offset = property * 3;
+    return new OverShootConfig(velocity, mBounceParameters[offset], mBounceParameters[offset + 1],
+        mBounceParameters[offset + 2]);
+  }
+
+  /**
+   * get the keyframe times of all properties in frames, shared and not to be modified
+   * @return the times
+   */
+  public float[] getTimes() {
+    return mTimes;
+  }
+
+  /**
+   * get the keyframe values of all properties, shared and not to be modified
+   * @return the values
+   */
+  public float[] getValues() {
+    return mValues;
+  }
+
+  /**
+   * get the easing handles of all keyframes, {@link #EASING_STRIDE} floats per keyframe, shared
+   * and not to be modified
+   * @return the easing
+   */
+  public float[] getEasing() {
+    return mEasing;
+  }
+
+  /**
+   * get the hold flag of all keyframes, shared and not to be modified. A hold keyframe keeps its
+   * value until the next one.
+   * @return the flags
+   */
+  public boolean[] getHold() {
+    return mHold;
+  }
+}
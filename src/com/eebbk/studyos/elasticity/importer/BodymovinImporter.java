@@ -0,0 +1,607 @@
+package com.eebbk.studyos.elasticity.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the keyframes, easing and expressions of a Bodymovin / Lottie JSON export into a
+ * {@link BodymovinAnimation}. The document is streamed with a {@link JsonPullParser} and keyframes
+ * are appended to growing primitive arrays as they are read, so time and memory are linear in the
+ * size of the file and no tree of the document is built.
+ *
+ * Every object holding a k member is read as a property, wherever it is in the layers, shapes and
+ * assets. A static value is read as a single keyframe at time 0. Shape paths and other non numeric
+ * keyframes are skipped. The amp, freq and decay of a bounce expression are read from assignments
+ * such as amp = .1; in its source.
+ */
+public final class BodymovinImporter {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final JsonPullParser mParser;
+
+  private double mFrameRate = 60;
+  private double mInPoint;
+  private double mOutPoint;
+
+  // properties
+  private final List<String> mNames = new ArrayList<String>();
+  private final List<String> mExpressions = new ArrayList<String>();
+  private int mPropertyCount;
+  private int[] mDimensions = new int[INITIAL_CAPACITY];
+  private int[] mKeyframeOffsets = new int[INITIAL_CAPACITY];
+  private int[] mKeyframeCounts = new int[INITIAL_CAPACITY];
+  private int[] mValueOffsets = new int[INITIAL_CAPACITY];
+  private double[] mBounceParameters = new double[INITIAL_CAPACITY * 3];
+
+  // keyframes
+  private int mKeyframeCount;
+  private int mValueCount;
+  private float[] mTimes = new float[INITIAL_CAPACITY];
+  private float[] mValues = new float[INITIAL_CAPACITY];
+  private float[] mEasing = new float[INITIAL_CAPACITY * BodymovinAnimation.EASING_STRIDE];
+  private boolean[] mHold = new boolean[INITIAL_CAPACITY];
+
+  // values of the keyframe or static value being read
+  private float[] mStart = new float[4];
+  private int mStartCount;
+  private float[] mEnd = new float[4];
+  private int mEndCount;
+  private final float[] mKeyframeEasing = new float[BodymovinAnimation.EASING_STRIDE];
+
+  /**
+   * read an export
+   * @param reader the JSON document
+   * @return the animation
+   * @throws IOException if the document can't be read or isn't valid JSON
+   */
+  public static BodymovinAnimation read(Reader reader) throws IOException {
+    return new BodymovinImporter(reader).readAnimation();
+  }
+
+  /**
+   * read an export encoded in UTF-8
+   * @param in the JSON document
+   * @return the animation
+   * @throws IOException if the document can't be read or isn't valid JSON
+   */
+  public static BodymovinAnimation read(InputStream in) throws IOException {
+    return read(new InputStreamReader(in, "UTF-8"));
+  }
+
+  private BodymovinImporter(Reader reader) {
+    mParser = new JsonPullParser(reader);
+  }
+
+  private BodymovinAnimation readAnimation() throws IOException {
+    JsonPullParser parser = mParser;
+    if (parser.next() != JsonPullParser.BEGIN_OBJECT) {
+      throw new IOException("expected an object at offset " + parser.getOffset());
+    }
+    while (parser.next() == JsonPullParser.NAME) {
+      if (parser.isName("fr")) {
+        mFrameRate = readNumber(mFrameRate);
+      } else if (parser.isName("ip")) {
+        mInPoint = readNumber(mInPoint);
+      } else if (parser.isName("op")) {
+        mOutPoint = readNumber(mOutPoint);
+      } else if (parser.isName("layers") || parser.isName("assets")) {
+        readValue("");
+      } else {
+        parser.skipValue();
+      }
+    }
+    if (!(mFrameRate > 0)) {
+      throw new IOException("invalid frame rate " + mFrameRate);
+    }
+    int propertyCount = mPropertyCount;
+    double[] bounceParameters = new double[propertyCount * 3];
+    System.arraycopy(mBounceParameters, 0, bounceParameters, 0, bounceParameters.length);
+    return new BodymovinAnimation(mFrameRate, mInPoint, mOutPoint,
+        mNames.toArray(new String[propertyCount]), trim(mDimensions, propertyCount),
+        trim(mKeyframeOffsets, propertyCount), trim(mKeyframeCounts, propertyCount),
+        trim(mValueOffsets, propertyCount), mExpressions.toArray(new String[propertyCount]),
+        bounceParameters, trim(mTimes, mKeyframeCount), trim(mValues, mValueCount),
+        trim(mEasing, mKeyframeCount * BodymovinAnimation.EASING_STRIDE),
+        trim(mHold, mKeyframeCount));
+  }
+
+  private double readNumber(double defaultValue) throws IOException {
+    if (mParser.next() == JsonPullParser.NUMBER) {
+      return mParser.getNumber();
+    }
+    skipValueContent();
+    return defaultValue;
+  }
+
+  /**
+   * read the value of a member or an array element, looking for properties in objects and arrays
+   * @param path path of the object holding the value
+   */
+  private void readValue(String path) throws IOException {
+    int event = mParser.next();
+    if (event == JsonPullParser.BEGIN_OBJECT) {
+      readObject(path, null);
+    } else if (event == JsonPullParser.BEGIN_ARRAY) {
+      readArray(path);
+    }
+  }
+
+  private void readArray(String path) throws IOException {
+    int index = 0;
+    int event;
+    while ((event = mParser.next()) != JsonPullParser.END_ARRAY) {
+      if (event == JsonPullParser.BEGIN_OBJECT) {
+        // elements are named after their nm or id member, or their index
+        readObject(path, String.valueOf(index));
+      } else if (event == JsonPullParser.BEGIN_ARRAY) {
+        readArray(path);
+      }
+      index++;
+    }
+  }
+
+  /**
+   * read an object after its BEGIN_OBJECT event
+   * @param parentPath path of the object holding this one
+   * @param elementName name of an array element until its nm is read, null for a member object
+   *          already named in parentPath
+   */
+  private void readObject(String parentPath, String elementName) throws IOException {
+    JsonPullParser parser = mParser;
+    String name = elementName;
+    boolean named = false;
+    String expression = null;
+    boolean hasValue = false;
+    boolean keyframed = false;
+    int keyframeOffset = 0;
+    int valueOffset = 0;
+    int dimensions = 0;
+    float[] staticValue = null;
+    while (parser.next() == JsonPullParser.NAME) {
+      if (elementName != null && !named && (parser.isName("nm") || parser.isName("id"))) {
+        // nm wins over id
+        boolean layerName = parser.isName("nm");
+        if (parser.next() == JsonPullParser.STRING) {
+          name = parser.getString();
+          named = layerName;
+        } else {
+          skipValueContent();
+        }
+      } else if (parser.isName("k")) {
+        int event = parser.next();
+        if (event == JsonPullParser.NUMBER) {
+          staticValue = new float[] {(float) parser.getNumber()};
+          hasValue = true;
+        } else if (event == JsonPullParser.BEGIN_ARRAY) {
+          event = parser.next();
+          if (event == JsonPullParser.NUMBER) {
+            if (readNumbers(true)) {
+              staticValue = trim(mStart, mStartCount);
+              hasValue = true;
+            }
+          } else if (event == JsonPullParser.BEGIN_OBJECT) {
+            keyframeOffset = mKeyframeCount;
+            valueOffset = mValueCount;
+            dimensions = readKeyframes();
+            keyframed = dimensions > 0;
+            hasValue = keyframed;
+            if (!keyframed) {
+              // drop the keyframes read before the unsupported one
+              mKeyframeCount = keyframeOffset;
+              mValueCount = valueOffset;
+            }
+          } else if (event != JsonPullParser.END_ARRAY) {
+            skipValueContent();
+            skipToEnd();
+          }
+        } else {
+          skipValueContent();
+        }
+      } else if (parser.isName("x")) {
+        int event = parser.next();
+        if (event == JsonPullParser.STRING) {
+          expression = parser.getString();
+        } else if (event == JsonPullParser.BEGIN_OBJECT) {
+          // x of a position split in dimensions
+          readObject(join(join(parentPath, name), "x"), null);
+        } else if (event == JsonPullParser.BEGIN_ARRAY) {
+          readArray(join(join(parentPath, name), "x"));
+        }
+      } else {
+        String member = parser.getString();
+        int event = parser.next();
+        if (event == JsonPullParser.BEGIN_OBJECT) {
+          readObject(join(join(parentPath, name), member), null);
+        } else if (event == JsonPullParser.BEGIN_ARRAY) {
+          readArray(join(parentPath, name));
+        }
+      }
+    }
+    if (!hasValue) {
+      return;
+    }
+    if (!keyframed) {
+      // a static value, with or without an expression
+      keyframeOffset = mKeyframeCount;
+      valueOffset = mValueCount;
+      dimensions = staticValue.length;
+      setLinear(mKeyframeEasing);
+      appendKeyframe(0, staticValue, dimensions, dimensions, false);
+    }
+    addProperty(join(parentPath, name), dimensions, keyframeOffset, valueOffset, expression);
+  }
+
+  /**
+   * read the keyframes of a k member after the BEGIN_OBJECT of the first one
+   * @return the number of values per keyframe, 0 if the keyframes aren't numeric
+   */
+  private int readKeyframes() throws IOException {
+    JsonPullParser parser = mParser;
+    int dimensions = 0;
+    boolean previousHadEnd = false;
+    float[] previousEnd = new float[0];
+    int event = JsonPullParser.BEGIN_OBJECT;
+    while (event != JsonPullParser.END_ARRAY) {
+      if (event != JsonPullParser.BEGIN_OBJECT) {
+        skipValueContent();
+        skipToEnd();
+        return 0;
+      }
+      double time = 0;
+      boolean hold = false;
+      boolean hasStart = false;
+      mEndCount = 0;
+      setLinear(mKeyframeEasing);
+      while (parser.next() == JsonPullParser.NAME) {
+        if (parser.isName("t")) {
+          time = readNumber(time);
+        } else if (parser.isName("s")) {
+          if (!readValues(true)) {
+            skipKeyframes();
+            return 0;
+          }
+          hasStart = true;
+        } else if (parser.isName("e")) {
+          if (!readValues(false)) {
+            skipKeyframes();
+            return 0;
+          }
+        } else if (parser.isName("h")) {
+          hold = readNumber(0) != 0;
+        } else if (parser.isName("o")) {
+          readHandle(0);
+        } else if (parser.isName("i")) {
+          readHandle(2);
+        } else {
+          parser.skipValue();
+        }
+      }
+      if (!hasStart) {
+        // legacy exports give the value of a keyframe as the end of the previous one
+        if (previousHadEnd) {
+          ensureStart(previousEnd.length);
+          System.arraycopy(previousEnd, 0, mStart, 0, previousEnd.length);
+          mStartCount = previousEnd.length;
+        } else if (mKeyframeCount > 0 && dimensions > 0) {
+          ensureStart(dimensions);
+          System.arraycopy(mValues, mValueCount - dimensions, mStart, 0, dimensions);
+          mStartCount = dimensions;
+        } else {
+          mStartCount = 0;
+        }
+      }
+      if (dimensions == 0) {
+        dimensions = mStartCount;
+      }
+      if (dimensions > 0) {
+        appendKeyframe(time, mStart, mStartCount, dimensions, hold);
+      }
+      previousHadEnd = mEndCount > 0;
+      if (previousHadEnd) {
+        previousEnd = trim(mEnd, mEndCount);
+      }
+      event = parser.next();
+    }
+    return dimensions;
+  }
+
+  /**
+   * read a Bezier handle {x, y} of the current keyframe, keeping the first component of
+   * handles given per dimension
+   */
+  private void readHandle(int offset) throws IOException {
+    JsonPullParser parser = mParser;
+    if (parser.next() != JsonPullParser.BEGIN_OBJECT) {
+      skipValueContent();
+      return;
+    }
+    while (parser.next() == JsonPullParser.NAME) {
+      int index;
+      if (parser.isName("x")) {
+        index = offset;
+      } else if (parser.isName("y")) {
+        index = offset + 1;
+      } else {
+        parser.skipValue();
+        continue;
+      }
+      int event = parser.next();
+      if (event == JsonPullParser.NUMBER) {
+        mKeyframeEasing[index] = (float) parser.getNumber();
+      } else if (event == JsonPullParser.BEGIN_ARRAY) {
+        boolean first = true;
+        while ((event = parser.next()) != JsonPullParser.END_ARRAY) {
+          if (event == JsonPullParser.NUMBER && first) {
+            mKeyframeEasing[index] = (float) parser.getNumber();
+          } else {
+            skipValueContent();
+          }
+          first = false;
+        }
+      } else {
+        skipValueContent();
+      }
+    }
+  }
+
+  /**
+   * read the s or e value of a keyframe into the start or end buffer
+   * @return false if the value isn't a number or an array of numbers
+   */
+  private boolean readValues(boolean start) throws IOException {
+    int event = mParser.next();
+    if (event == JsonPullParser.NUMBER) {
+      append(start, (float) mParser.getNumber(), 0);
+      setCount(start, 1);
+      return true;
+    }
+    if (event != JsonPullParser.BEGIN_ARRAY) {
+      skipValueContent();
+      return false;
+    }
+    event = mParser.next();
+    if (event == JsonPullParser.END_ARRAY) {
+      setCount(start, 0);
+      return true;
+    }
+    if (event != JsonPullParser.NUMBER) {
+      skipValueContent();
+      skipToEnd();
+      return false;
+    }
+    return readNumbers(start);
+  }
+
+  /**
+   * read an array of numbers after the NUMBER event of its first element
+   * @return false if an element isn't a number, after skipping the rest of the array
+   */
+  private boolean readNumbers(boolean start) throws IOException {
+    int count = 0;
+    int event = JsonPullParser.NUMBER;
+    while (event != JsonPullParser.END_ARRAY) {
+      if (event != JsonPullParser.NUMBER) {
+        skipValueContent();
+        skipToEnd();
+        return false;
+      }
+      append(start, (float) mParser.getNumber(), count++);
+      event = mParser.next();
+    }
+    setCount(start, count);
+    return true;
+  }
+
+  private void append(boolean start, float value, int index) {
+    if (start) {
+      ensureStart(index + 1);
+      mStart[index] = value;
+    } else {
+      if (index >= mEnd.length) {
+        mEnd = grow(mEnd, index + 1);
+      }
+      mEnd[index] = value;
+    }
+  }
+
+  private void setCount(boolean start, int count) {
+    if (start) {
+      mStartCount = count;
+    } else {
+      mEndCount = count;
+    }
+  }
+
+  private void ensureStart(int capacity) {
+    if (capacity > mStart.length) {
+      mStart = grow(mStart, capacity);
+    }
+  }
+
+  /**
+   * skip the keyframes left after one that isn't numeric, from inside that keyframe object
+   */
+  private void skipKeyframes() throws IOException {
+    skipToEnd();
+    skipToEnd();
+  }
+
+  /**
+   * skip the content of the value of the last event if it is an object or an array
+   */
+  private void skipValueContent() throws IOException {
+    int event = mParser.getEvent();
+    if (event == JsonPullParser.BEGIN_OBJECT || event == JsonPullParser.BEGIN_ARRAY) {
+      skipToEnd();
+    }
+  }
+
+  /**
+   * skip to the end of the innermost open object or array
+   */
+  private void skipToEnd() throws IOException {
+    int event;
+    int depth = 1;
+    while (depth > 0) {
+      event = mParser.next();
+      if (event == JsonPullParser.BEGIN_OBJECT || event == JsonPullParser.BEGIN_ARRAY) {
+        depth++;
+      } else if (event == JsonPullParser.END_OBJECT || event == JsonPullParser.END_ARRAY) {
+        depth--;
+      } else if (event == JsonPullParser.END_DOCUMENT) {
+        throw new IOException("unexpected end of document");
+      }
+    }
+  }
+
+  private void appendKeyframe(double time, float[] values, int count, int dimensions,
+      boolean hold) {
+    int index = mKeyframeCount;
+    if (index == mTimes.length) {
+      int capacity = index * 2;
+      mTimes = grow(mTimes, capacity);
+      mHold = grow(mHold, capacity);
+      mEasing = grow(mEasing, capacity * BodymovinAnimation.EASING_STRIDE);
+    }
+    if (mValueCount + dimensions > mValues.length) {
+      mValues = grow(mValues, Math.max(mValues.length * 2, mValueCount + dimensions));
+    }
+    mTimes[index] = (float) time;
+    mHold[index] = hold;
+    System.arraycopy(mKeyframeEasing, 0, mEasing, index * BodymovinAnimation.EASING_STRIDE,
+        BodymovinAnimation.EASING_STRIDE);
+    for (int i = 0; i < dimensions; i++) {
+      // missing components keep the last one given
+      mValues[mValueCount + i] = count == 0 ? 0 : values[Math.min(i, count - 1)];
+    }
+    mValueCount += dimensions;
+    mKeyframeCount++;
+  }
+
+  private void addProperty(String name, int dimensions, int keyframeOffset, int valueOffset,
+      String expression) {
+    int index = mPropertyCount;
+    if (index == mDimensions.length) {
+      int capacity = index * 2;
+      mDimensions = grow(mDimensions, capacity);
+      mKeyframeOffsets = grow(mKeyframeOffsets, capacity);
+      mKeyframeCounts = grow(mKeyframeCounts, capacity);
+      mValueOffsets = grow(mValueOffsets, capacity);
+      double[] bounceParameters = new double[capacity * 3];
+      System.arraycopy(mBounceParameters, 0, bounceParameters, 0, mBounceParameters.length);
+      mBounceParameters = bounceParameters;
+    }
+    mNames.add(name);
+    mExpressions.add(expression);
+    mDimensions[index] = dimensions;
+    mKeyframeOffsets[index] = keyframeOffset;
+    mKeyframeCounts[index] = mKeyframeCount - keyframeOffset;
+    mValueOffsets[index] = valueOffset;
+    mBounceParameters[index * 3] = findAssignment(expression, "amp");
+    mBounceParameters[index * 3 + 1] = findAssignment(expression, "freq");
+    mBounceParameters[index * 3 + 2] = findAssignment(expression, "decay");
+    mPropertyCount++;
+  }
+
+  /**
+   * find the number assigned to a variable, as in amp = .1;
+   * @return the number of the first such assignment, NaN if there is none
+   */
+  static double findAssignment(String source, String variable) {
+    if (source == null) {
+      return Double.NaN;
+    }
+    int length = source.length();
+    int from = 0;
+    while (true) {
+      int i = source.indexOf(variable, from);
+      if (i < 0) {
+        return Double.NaN;
+      }
+      from = i + 1;
+      if (i > 0 && Character.isJavaIdentifierPart(source.charAt(i - 1))) {
+        continue;
+      }
+      int j = skipSpaces(source, i + variable.length());
+      if (j >= length || source.charAt(j) != '='
+          || (j + 1 < length && source.charAt(j + 1) == '=')) {
+        continue;
+      }
+      j = skipSpaces(source, j + 1);
+      int start = j;
+      if (j < length && (source.charAt(j) == '-' || source.charAt(j) == '+')) {
+        j++;
+      }
+      while (j < length && (Character.isDigit(source.charAt(j)) || source.charAt(j) == '.')) {
+        j++;
+      }
+      try {
+        return Double.parseDouble(source.substring(start, j));
+      } catch (NumberFormatException e) {
+        // assigned something else than a literal
+      }
+    }
+  }
+
+  private static int skipSpaces(String source, int i) {
+    while (i < source.length() && Character.isWhitespace(source.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static String join(String path, String name) {
+    if (name == null) {
+      return path;
+    }
+    return path.length() == 0 ? name : path + "/" + name;
+  }
+
+  private static void setLinear(float[] easing) {
+    easing[0] = 0;
+    easing[1] = 0;
+    easing[2] = 1;
+    easing[3] = 1;
+  }
+
+  private static float[] grow(float[] array, int capacity) {
+    float[] grown = new float[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static int[] grow(int[] array, int capacity) {
+    int[] grown = new int[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static boolean[] grow(boolean[] array, int capacity) {
+    boolean[] grown = new boolean[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static float[] trim(float[] array, int length) {
+    float[] trimmed = new float[length];
+    System.arraycopy(array, 0, trimmed, 0, length);
+    return trimmed;
+  }
+
+  private static int[] trim(int[] array, int length) {
+    int[] trimmed = new int[length];
+    System.arraycopy(array, 0, trimmed, 0, length);
+    return trimmed;
+  }
+
+  private static boolean[] trim(boolean[] array, int length) {
+    boolean[] trimmed = new boolean[length];
+    System.arraycopy(array, 0, trimmed, 0, length);
+    return trimmed;
+  }
+}
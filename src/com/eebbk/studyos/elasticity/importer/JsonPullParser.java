@@ -0,0 +1,357 @@
+package com.eebbk.studyos.elasticity.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal streaming JSON parser. {@link #next()} returns one event at a time, values are read
+ * through {@link #getString()} and {@link #getNumber()}, and no tree is built, so memory does not
+ * depend on the size of the document. Names can be compared with {@link #isName(String)} without
+ * allocating a string. Malformed input throws an IOException with the offset of the error.
+ */
+public final class JsonPullParser {
+
+  public static final int BEGIN_OBJECT = 1;
+  public static final int END_OBJECT = 2;
+  public static final int BEGIN_ARRAY = 3;
+  public static final int END_ARRAY = 4;
+  public static final int NAME = 5;
+  public static final int STRING = 6;
+  public static final int NUMBER = 7;
+  public static final int TRUE = 8;
+  public static final int FALSE = 9;
+  public static final int NULL = 10;
+  public static final int END_DOCUMENT = 11;
+
+  // scopes of the container stack
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_OBJECT = 2;
+  private static final int DANGLING_NAME = 3;
+  private static final int NONEMPTY_OBJECT = 4;
+  private static final int EMPTY_ARRAY = 5;
+  private static final int NONEMPTY_ARRAY = 6;
+
+  private final Reader mReader;
+  private final char[] mBuffer = new char[8192];
+  private int mPosition;
+  private int mLimit;
+  // characters consumed before mBuffer[0]
+  private long mBufferOffset;
+
+  private int[] mStack = new int[32];
+  private int mDepth;
+
+  private final StringBuilder mText = new StringBuilder();
+  private double mNumber;
+  private int mEvent;
+
+  public JsonPullParser(Reader reader) {
+    if (reader == null) {
+      throw new IllegalArgumentException("reader is required");
+    }
+    mReader = reader;
+    mStack[mDepth++] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * @return the next event
+   * @throws IOException if the input can't be read or isn't valid JSON
+   */
+  public int next() throws IOException {
+    int c = peekNonWhitespace();
+    int scope = mStack[mDepth - 1];
+    switch (scope) {
+      case EMPTY_ARRAY:
+        mStack[mDepth - 1] = NONEMPTY_ARRAY;
+        if (c == ']') {
+          mPosition++;
+          mDepth--;
+          return event(END_ARRAY);
+        }
+        return readValue(c);
+      case NONEMPTY_ARRAY:
+        if (c == ']') {
+          mPosition++;
+          mDepth--;
+          return event(END_ARRAY);
+        }
+        if (c != ',') {
+          throw syntaxError("expected , or ]");
+        }
+        mPosition++;
+        return readValue(peekNonWhitespace());
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        if (c == '}') {
+          mPosition++;
+          mDepth--;
+          return event(END_OBJECT);
+        }
+        if (scope == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError("expected , or }");
+          }
+          mPosition++;
+          c = peekNonWhitespace();
+        }
+        if (c != '"') {
+          throw syntaxError("expected a name");
+        }
+        mPosition++;
+        readString();
+        mStack[mDepth - 1] = DANGLING_NAME;
+        return event(NAME);
+      case DANGLING_NAME:
+        if (c != ':') {
+          throw syntaxError("expected :");
+        }
+        mPosition++;
+        mStack[mDepth - 1] = NONEMPTY_OBJECT;
+        return readValue(peekNonWhitespace());
+      case EMPTY_DOCUMENT:
+        mStack[mDepth - 1] = NONEMPTY_DOCUMENT;
+        return readValue(c);
+      default:
+        if (c != -1) {
+          throw syntaxError("expected the end of the document");
+        }
+        return event(END_DOCUMENT);
+    }
+  }
+
+  /**
+   * skip the next value, with all of its content if it is an object or an array. Call it after a
+   * NAME event to skip the value of the member.
+   * @throws IOException if the input can't be read or isn't valid JSON
+   */
+  public void skipValue() throws IOException {
+    int depth = 0;
+    do {
+      int event = next();
+      if (event == BEGIN_OBJECT || event == BEGIN_ARRAY) {
+        depth++;
+      } else if (event == END_OBJECT || event == END_ARRAY) {
+        depth--;
+      } else if (event == END_DOCUMENT) {
+        throw syntaxError("unexpected end of document");
+      }
+    } while (depth > 0);
+  }
+
+  /**
+   * @return the last event returned by {@link #next()}
+   */
+  public int getEvent() {
+    return mEvent;
+  }
+
+  /**
+   * @return the text of the last NAME or STRING event, or the literal of a NUMBER
+   */
+  public String getString() {
+    return mText.toString();
+  }
+
+  /**
+   * @param name the expected name
+   * @return true if the text of the last event equals name, without allocating
+   */
+  public boolean isName(String name) {
+    int length = mText.length();
+    if (length != name.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (mText.charAt(i) != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the value of the last NUMBER event
+   */
+  public double getNumber() {
+    return mNumber;
+  }
+
+  /**
+   * @return the number of characters read so far
+   */
+  public long getOffset() {
+    return mBufferOffset + mPosition;
+  }
+
+  private int event(int event) {
+    mEvent = event;
+    return event;
+  }
+
+  private int readValue(int c) throws IOException {
+    switch (c) {
+      case '{':
+        mPosition++;
+        push(EMPTY_OBJECT);
+        return event(BEGIN_OBJECT);
+      case '[':
+        mPosition++;
+        push(EMPTY_ARRAY);
+        return event(BEGIN_ARRAY);
+      case '"':
+        mPosition++;
+        readString();
+        return event(STRING);
+      case 't':
+        readLiteral("true");
+        return event(TRUE);
+      case 'f':
+        readLiteral("false");
+        return event(FALSE);
+      case 'n':
+        readLiteral("null");
+        return event(NULL);
+      case -1:
+        throw syntaxError("unexpected end of document");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          readNumber();
+          return event(NUMBER);
+        }
+        throw syntaxError("unexpected character " + (char) c);
+    }
+  }
+
+  private void push(int scope) {
+    if (mDepth == mStack.length) {
+      int[] stack = new int[mDepth * 2];
+      System.arraycopy(mStack, 0, stack, 0, mDepth);
+      mStack = stack;
+    }
+    mStack[mDepth++] = scope;
+  }
+
+  private void readString() throws IOException {
+    StringBuilder text = mText;
+    text.setLength(0);
+    while (true) {
+      if (mPosition == mLimit && !fill()) {
+        throw syntaxError("unterminated string");
+      }
+      char c = mBuffer[mPosition++];
+      if (c == '"') {
+        return;
+      }
+      if (c != '\\') {
+        text.append(c);
+        continue;
+      }
+      if (mPosition == mLimit && !fill()) {
+        throw syntaxError("unterminated escape");
+      }
+      char escaped = mBuffer[mPosition++];
+      switch (escaped) {
+        case 'b':
+          text.append('\b');
+          break;
+        case 'f':
+          text.append('\f');
+          break;
+        case 'n':
+          text.append('\n');
+          break;
+        case 'r':
+          text.append('\r');
+          break;
+        case 't':
+          text.append('\t');
+          break;
+        case 'u':
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            if (mPosition == mLimit && !fill()) {
+              throw syntaxError("unterminated escape");
+            }
+            int digit = Character.digit(mBuffer[mPosition++], 16);
+            if (digit < 0) {
+              throw syntaxError("invalid escape");
+            }
+            code = code * 16 + digit;
+          }
+          text.append((char) code);
+          break;
+        default:
+          text.append(escaped);
+          break;
+      }
+    }
+  }
+
+  private void readNumber() throws IOException {
+    StringBuilder text = mText;
+    text.setLength(0);
+    while (true) {
+      if (mPosition == mLimit && !fill()) {
+        break;
+      }
+      char c = mBuffer[mPosition];
+      if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+        text.append(c);
+        mPosition++;
+      } else {
+        break;
+      }
+    }
+    try {
+      mNumber = Double.parseDouble(text.toString());
+    } catch (NumberFormatException e) {
+      throw syntaxError("invalid number " + text);
+    }
+  }
+
+  private void readLiteral(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (mPosition == mLimit && !fill()) {
+        throw syntaxError("unexpected end of document");
+      }
+      if (mBuffer[mPosition] != literal.charAt(i)) {
+        throw syntaxError("expected " + literal);
+      }
+      mPosition++;
+    }
+  }
+
+  /**
+   * @return the next non whitespace character without consuming it, -1 at the end of the input
+   */
+  private int peekNonWhitespace() throws IOException {
+    while (true) {
+      if (mPosition == mLimit && !fill()) {
+        return -1;
+      }
+      char c = mBuffer[mPosition];
+      if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+        mPosition++;
+      } else {
+        return c;
+      }
+    }
+  }
+
+  private boolean fill() throws IOException {
+    mBufferOffset += mLimit;
+    mPosition = 0;
+    mLimit = 0;
+    int count = mReader.read(mBuffer, 0, mBuffer.length);
+    if (count <= 0) {
+      return false;
+    }
+    mLimit = count;
+    return true;
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException(message + " at offset " + getOffset());
+  }
+}
@@ -10,30 +10,44 @@
 
 package com.eebbk.studyos.elasticity.overshoot;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
 import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.ElasticityFrame;
+import com.eebbk.studyos.elasticity.system.ElasticityFrameStats;
 import com.eebbk.studyos.elasticity.system.ElasticityListener;
-
-import android.util.Log;
+import com.eebbk.studyos.elasticity.system.ElasticityListeners;
+import com.eebbk.studyos.elasticity.system.ElasticityPool;
+import com.eebbk.studyos.elasticity.system.ParallelElasticity;
+import com.eebbk.studyos.elasticity.system.RecyclableElasticity;
 
 /**
  * Classical spring implementing Hooke's law with configurable friction and
  * tension.
  */
-public class OverShoot implements Elasticity {
+public class OverShoot implements ParallelElasticity, RecyclableElasticity {
+
+	/**
+	 * creates the overshoots of an {@link ElasticityPool}
+	 */
+	public static final ElasticityPool.Factory<OverShoot> POOL_FACTORY = new ElasticityPool.Factory<OverShoot>() {
+		@Override
+		public OverShoot create(BaseElasticitySystem system) {
+			return new OverShoot(system);
+		}
+	};
 
 	// unique incrementer id for springs
-	private static int ID = 0;
+	private static final AtomicInteger ID = new AtomicInteger();
 
 	// maximum amount of time to simulate per physics iteration in seconds (4
 	// frames at 60 FPS)
 	private static final double MAX_DELTA_TIME_SEC = 0.064;
 	// fixed timestep to use in the physics solver in seconds
 	private static final double SOLVER_TIMESTEP_SEC = 0.001;
+	/** default distance from 0 under which the motion is invisible, in pixels */
+	public static final double DEFAULT_REST_THRESHOLD = 0.5;
 	private OverShootConfig mOverShootConfig;
 	// private boolean mOvershootClampingEnabled;
 
@@ -46,6 +60,8 @@ public class OverShoot implements Elasticity {
 
 	// unique id for the spring in the system
 	private final String mId;
+	// handle of the overshoot once it is registered with the system
+	private int mHandle = BaseElasticitySystem.NO_HANDLE;
 	// all physics simulation objects are final and reused in each processing
 	// pass
 	// private final PhysicsState mCurrentState = new PhysicsState();
@@ -53,20 +69,38 @@ public class OverShoot implements Elasticity {
 	// private final PhysicsState mTempState = new PhysicsState();
 	// private double mStartValue;
 	// private double mEndValue;
-	// private boolean mWasAtRest = true;
+	private boolean mWasAtRest = true;
+	// set by setVelocity, cleared once the settle time is reached
+	private boolean mMoving;
 	// thresholds for determining when the spring is at rest
 	// private double mRestSpeedThreshold = 0.005;
 	// private double mDisplacementFromRestThreshold = 0.005;
 	private double mTimeAccumulator = 0;
-	private final CopyOnWriteArraySet<ElasticityListener> mListeners = new CopyOnWriteArraySet<ElasticityListener>();
+	private final ElasticityListeners mListeners = new ElasticityListeners();
 
 	private final BaseElasticitySystem mOverShootSystem;
 
 	private double mValue;
+	// settle time and the parameters it was computed for
+	private double mRestThreshold = DEFAULT_REST_THRESHOLD;
+	private double mSettleTime;
+	private double mSettleVelocity = Double.NaN;
+	private double mSettleAmp = Double.NaN;
+	private double mSettleDecay = Double.NaN;
 	private double mPreviousValue;
 //	private List<Double> mValues;
 
 	private double mValueIncreace;
+	// transitions computed by integrate and reported by dispatch
+	private boolean mNotifyActivate;
+	private boolean mNotifyAtRest;
+	// shared table of the configured curve, looked up again when amp, freq or
+	// decay change. null if the curve is evaluated exactly
+	private boolean mCurveTableEnabled = true;
+	private OverShootCurve mCurve;
+	private double mCurveAmp = Double.NaN;
+	private double mCurveFreq = Double.NaN;
+	private double mCurveDecay = Double.NaN;
 
 	/**
 	 * create a new spring
@@ -76,9 +110,8 @@ public class OverShoot implements Elasticity {
 			throw new IllegalArgumentException("Spring cannot be created outside of a BaseSpringSystem");
 		}
 		mOverShootSystem = system;
-		mId = "over:" + ID++;
-		mValue = 1000;
-		mValueIncreace = 1000; 
+		mId = "over:" + ID.getAndIncrement();
+		mValue = 0;
 //		mValues = new ArrayList<Double>();
 //		setOverShootConfig(new OverShootConfig(1, 1, 1, 1));
 	}
@@ -103,6 +136,16 @@ public class OverShoot implements Elasticity {
 		return mId;
 	}
 
+	@Override
+	public int getHandle() {
+		return mHandle;
+	}
+
+	@Override
+	public void setHandle(int handle) {
+		mHandle = handle;
+	}
+
 	/**
 	 * set the config class
 	 * 
@@ -174,18 +217,74 @@ public class OverShoot implements Elasticity {
 	// return this;
 	// }
 
+	/**
+	 * set the velocity of the motion. An overshoot at rest starts a new
+	 * motion, a moving one keeps its phase and is scaled to the new velocity.
+	 * 
+	 * @param velocity
+	 *            the velocity
+	 * @return this object
+	 */
 	public OverShoot setVelocity(double velocity) {
-		mOverShootConfig.velocity = velocity;
-		mOverShootSystem.activateElasticity(this.getId());
-		for (ElasticityListener listener : mListeners) {
-			listener.onSpringUpdate(this);
+		if (!mMoving) {
+			mTimeAccumulator = 0;
+			mMoving = true;
 		}
+		mOverShootConfig.velocity = velocity;
+		mOverShootSystem.activateElasticity(mHandle);
+		mListeners.notifyUpdate(this);
+		return this;
+	}
+
+	/**
+	 * evaluate the curve from a shared table instead of calling sin and exp
+	 * every frame. Enabled by default, the error of the table is bounded by
+	 * {@link OverShootCurve#TOLERANCE} times the velocity.
+	 * 
+	 * @param enabled
+	 *            use the table
+	 * @return this object
+	 */
+	public OverShoot setCurveTableEnabled(boolean enabled) {
+		mCurveTableEnabled = enabled;
 		return this;
 	}
 
+	public boolean isCurveTableEnabled() {
+		return mCurveTableEnabled;
+	}
+
+	/**
+	 * stop the motion and put the overshoot back at rest on 0 without
+	 * notifying the listeners. The next {@link #setVelocity(double)} starts a
+	 * new motion.
+	 */
 	public void reset() {
 		mTimeAccumulator = 0;
-		mValue = 1000;
+		mValue = 0;
+		mWasAtRest = true;
+		mMoving = false;
+	}
+
+	/**
+	 * Put the overshoot back in the state of a new one without notifying its
+	 * listeners, which are removed, and stop it being advanced. It keeps its
+	 * handle and id, see {@link ElasticityPool}. A config must be set again
+	 * before the next {@link #setVelocity(double)}.
+	 */
+	@Override
+	public void recycle() {
+		mListeners.clear();
+		reset();
+		mOverShootConfig = null;
+		mRestThreshold = DEFAULT_REST_THRESHOLD;
+		mSettleVelocity = Double.NaN;
+		mCurveTableEnabled = true;
+		mNotifyActivate = false;
+		mNotifyAtRest = false;
+		if (mHandle != BaseElasticitySystem.NO_HANDLE) {
+			mOverShootSystem.deactivateElasticity(mHandle);
+		}
 	}
 
 	/**
@@ -371,13 +470,20 @@ public class OverShoot implements Elasticity {
 	 */
 	
 	public void advance(double realDeltaTime) {
-//		Log.v("djh", "advance");
-		boolean isAtRest = isAtRest();
-
-		if (isAtRest) {
-			mValue = 0;
-		}
+		integrate(realDeltaTime);
+		dispatch();
+	}
 
+	/**
+	 * compute the value for the frame without notifying the listeners, see
+	 * {@link #dispatch()}
+	 * 
+	 * @param realDeltaTime
+	 *            clock drift
+	 */
+	@Override
+	public void integrate(double realDeltaTime) {
+//		Log.v("djh", "advance");
 		double adjustedDeltaTime = realDeltaTime;
 		if (realDeltaTime > MAX_DELTA_TIME_SEC) {
 			adjustedDeltaTime = MAX_DELTA_TIME_SEC;
@@ -391,32 +497,112 @@ public class OverShoot implements Elasticity {
 		double decay = mOverShootConfig.decay;
 //		Log.v("djh", " mOverShootConfig.decay " + mOverShootConfig.decay);
 		double T = mTimeAccumulator;
-		double value = v * amp * Math.sin(freq * 2 * T * Math.PI) / Math.exp(decay * T);
+		boolean notifyActivate = false;
+		if (mWasAtRest) {
+			mWasAtRest = false;
+			notifyActivate = true;
+		}
+		boolean isAtRest = T >= getSettleTime();
+		double value;
+		if (isAtRest) {
+			// retire exactly at the settle time, resting on 0
+			value = 0;
+		} else if (mCurveTableEnabled) {
+			if (amp != mCurveAmp || freq != mCurveFreq || decay != mCurveDecay) {
+				mCurve = OverShootCurve.get(amp, freq, decay);
+				mCurveAmp = amp;
+				mCurveFreq = freq;
+				mCurveDecay = decay;
+			}
+			value = mCurve != null ? v * mCurve.evaluate(T)
+					: v * OverShootCurve.evaluateExact(amp, freq, decay, T);
+		} else {
+			value = v * amp * Math.sin(freq * 2 * T * Math.PI) / Math.exp(decay * T);
+		}
 //		Log.v("djh2", Math.exp(decay * T)+"");
 //		Log.v("djh", " value " + value);
 		mValueIncreace = value;
 		mPreviousValue = mValue;
 //		mValue = mValue + value;
 		mValue = value;
-		boolean notifyActivate = false;
-		// if (mWasAtRest) {
-		// mWasAtRest = false;
-		// notifyActivate = true;
-		// }
-		boolean notifyAtRest = false;
 		if (isAtRest) {
-			notifyAtRest = true;
+			mWasAtRest = true;
+			mMoving = false;
 		}
-		for (ElasticityListener listener : mListeners) {
-			if (notifyActivate) {
-				listener.onSpringActivate(this);
+		mNotifyActivate = notifyActivate;
+		mNotifyAtRest = isAtRest;
+	}
+
+	/**
+	 * Get the time after which the motion stays within the rest threshold of
+	 * 0. The envelope of the curve is |velocity * amp| / exp(decay * T), so the
+	 * settle time is ln(|velocity * amp| / threshold) / decay. It is computed
+	 * again only when the velocity, amp, decay or threshold change.
+	 * 
+	 * @return the settle time in seconds since the motion started, infinite if
+	 *         the curve doesn't decay
+	 */
+	public double getSettleTime() {
+		double v = mOverShootConfig.velocity;
+		double amp = mOverShootConfig.amp;
+		double decay = mOverShootConfig.decay;
+		if (v != mSettleVelocity || amp != mSettleAmp || decay != mSettleDecay) {
+			double peak = Math.abs(v * amp);
+			if (peak <= mRestThreshold) {
+				mSettleTime = 0;
+			} else if (decay > 0) {
+				mSettleTime = Math.log(peak / mRestThreshold) / decay;
+			} else {
+				mSettleTime = Double.POSITIVE_INFINITY;
 			}
+			mSettleVelocity = v;
+			mSettleAmp = amp;
+			mSettleDecay = decay;
+		}
+		return mSettleTime;
+	}
+
+	/**
+	 * Set the distance from 0 under which the overshoot is considered at rest,
+	 * in the unit of its value, usually pixels.
+	 * 
+	 * @param restThreshold
+	 *            the threshold, {@link #DEFAULT_REST_THRESHOLD} by default
+	 * @return this object
+	 */
+	public OverShoot setRestThreshold(double restThreshold) {
+		if (!(restThreshold > 0)) {
+			throw new IllegalArgumentException("restThreshold must be positive");
+		}
+		mRestThreshold = restThreshold;
+		mSettleVelocity = Double.NaN;
+		return this;
+	}
 
-			listener.onSpringUpdate(this);
+	public double getRestThreshold() {
+		return mRestThreshold;
+	}
 
-			if (notifyAtRest) {
-				listener.onSpringAtRest(this);
-			}
+	/**
+	 * notify the listeners of the value computed by the last
+	 * {@link #integrate(double)} call
+	 */
+	@Override
+	public void dispatch() {
+		boolean notifyActivate = mNotifyActivate;
+		boolean notifyAtRest = mNotifyAtRest;
+		int callbacks = 0;
+		if (mOverShootSystem.shouldNotify(mHandle, notifyActivate || notifyAtRest)) {
+			callbacks = mListeners.notifyFrame(this, notifyActivate, notifyAtRest);
+		}
+		ElasticityFrame frame = mOverShootSystem.getFrame();
+		if (frame != null) {
+			frame.record(mHandle, notifyActivate, notifyAtRest);
+		}
+		ElasticityFrameStats stats = mOverShootSystem.getFrameStats();
+		if (stats != null) {
+			stats.add(ElasticityFrameStats.SOLVER_ITERATIONS, 1);
+			stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, callbacks);
 		}
 	}
 
@@ -441,11 +627,9 @@ public class OverShoot implements Elasticity {
 //				return true;
 //			}
 //		}
-		if (isAtRest()) {
-			return true;
-		}
 //		return mValueIncreace > 0.00001 || mValueIncreace < -0.00001;
-		return mValue > 0.00001 || mValue < -0.00001;
+//		return mValue > 0.00001 || mValue < -0.00001;
+		return mMoving;
 	}
 
 	/**
@@ -464,7 +648,7 @@ public class OverShoot implements Elasticity {
 	 * @return is the spring at rest
 	 */
 	public boolean isAtRest() {
-		return mValue == 1000;
+		return !mMoving;
 	}
 
 	/**
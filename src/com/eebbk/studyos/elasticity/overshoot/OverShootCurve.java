@@ -0,0 +1,208 @@
+package com.eebbk.studyos.elasticity.overshoot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed table of the damped sine amp * sin(2 * PI * freq * T) / exp(decay * T) of an
+ * {@link OverShoot} for a velocity of 1, evaluated by linear interpolation. Tables are shared by
+ * every OverShoot with the same amp, freq and decay through a small LRU cache.
+ *
+ * The sample step h is chosen so the interpolation error h * h / 8 * max|f''| stays below
+ * {@link #TOLERANCE}, with max|f''| <= amp * (w * w + decay * decay) and w = 2 * PI * freq. The
+ * table ends once the envelope amp / exp(decay * T) is below the tolerance, later times are
+ * evaluated exactly.
+ */
+public final class OverShootCurve {
+
+	/** maximum error of the table against the exact curve for a velocity of 1 */
+	public static final double TOLERANCE = 1e-5;
+	// curves that would need more samples are evaluated exactly
+	private static final int MAX_SAMPLES = 1 << 16;
+	private static final int MAX_CACHED_CURVES = 32;
+
+	private static final Map<Key, OverShootCurve> sCache = new LinkedHashMap<Key, OverShootCurve>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, OverShootCurve> eldest) {
+			return size() > MAX_CACHED_CURVES;
+		}
+	};
+
+	private final double mAmp;
+	private final double mFreq;
+	private final double mDecay;
+	private final double mStep;
+	private final double mInverseStep;
+	private final float[] mSamples;
+	private final double mMaxError;
+
+	/**
+	 * get the shared table of a curve, building it if it isn't cached
+	 *
+	 * @param amp
+	 *            amplitude of the curve
+	 * @param freq
+	 *            frequency of the curve
+	 * @param decay
+	 *            decay of the curve
+	 * @return the table or null if the curve doesn't decay or needs too many
+	 *         samples, in which case it should be evaluated exactly
+	 */
+	public static OverShootCurve get(double amp, double freq, double decay) {
+		if (!(decay > 0)) {
+			return null;
+		}
+		Key key = new Key(amp, freq, decay);
+		synchronized (sCache) {
+			if (sCache.containsKey(key)) {
+				return sCache.get(key);
+			}
+		}
+		OverShootCurve curve = build(amp, freq, decay);
+		synchronized (sCache) {
+			sCache.put(key, curve);
+		}
+		return curve;
+	}
+
+	/**
+	 * drop every cached table, instances keep the tables they already hold
+	 */
+	public static void clearCache() {
+		synchronized (sCache) {
+			sCache.clear();
+		}
+	}
+
+	/**
+	 * evaluate the curve exactly
+	 *
+	 * @param amp
+	 *            amplitude of the curve
+	 * @param freq
+	 *            frequency of the curve
+	 * @param decay
+	 *            decay of the curve
+	 * @param time
+	 *            time since the overshoot started in seconds
+	 * @return the value for a velocity of 1
+	 */
+	public static double evaluateExact(double amp, double freq, double decay, double time) {
+		return amp * Math.sin(freq * 2 * time * Math.PI) / Math.exp(decay * time);
+	}
+
+	private static OverShootCurve build(double amp, double freq, double decay) {
+		double absAmp = Math.abs(amp);
+		double w = 2 * Math.PI * Math.abs(freq);
+		// float samples add up to half an ulp of the amplitude
+		double roundingError = absAmp * Math.ulp(1.0f) / 2;
+		double budget = TOLERANCE - roundingError;
+		double maxSecondDerivative = absAmp * (w * w + decay * decay);
+		if (budget <= 0) {
+			return null;
+		}
+		double duration = absAmp > TOLERANCE ? Math.log(absAmp / TOLERANCE) / decay : 0;
+		double step = maxSecondDerivative > 0 ? Math.sqrt(8 * budget / maxSecondDerivative) : duration;
+		if (!(step > 0)) {
+			step = 1;
+		}
+		double sampleCount = Math.ceil(duration / step) + 2;
+		if (sampleCount > MAX_SAMPLES) {
+			return null;
+		}
+		float[] samples = new float[(int) sampleCount];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (float) evaluateExact(amp, freq, decay, i * step);
+		}
+		double maxError = step * step / 8 * maxSecondDerivative + roundingError;
+		return new OverShootCurve(amp, freq, decay, step, samples, maxError);
+	}
+
+	private OverShootCurve(double amp, double freq, double decay, double step, float[] samples,
+			double maxError) {
+		mAmp = amp;
+		mFreq = freq;
+		mDecay = decay;
+		mStep = step;
+		mInverseStep = 1 / step;
+		mSamples = samples;
+		mMaxError = maxError;
+	}
+
+	/**
+	 * evaluate the curve from the table, or exactly past its end
+	 *
+	 * @param time
+	 *            time since the overshoot started in seconds
+	 * @return the value for a velocity of 1
+	 */
+	public double evaluate(double time) {
+		double position = time * mInverseStep;
+		int index = (int) position;
+		if (position < 0 || index >= mSamples.length - 1) {
+			return evaluateExact(mAmp, mFreq, mDecay, time);
+		}
+		double a = mSamples[index];
+		return a + (mSamples[index + 1] - a) * (position - index);
+	}
+
+	/**
+	 * @return true if this table was built for the given parameters
+	 */
+	public boolean matches(double amp, double freq, double decay) {
+		return mAmp == amp && mFreq == freq && mDecay == decay;
+	}
+
+	/**
+	 * @return the bound on the error against the exact curve for a velocity
+	 *         of 1, at most {@link #TOLERANCE}
+	 */
+	public double getMaxError() {
+		return mMaxError;
+	}
+
+	/**
+	 * @return the time between two samples in seconds
+	 */
+	public double getStep() {
+		return mStep;
+	}
+
+	/**
+	 * @return the number of samples of the table
+	 */
+	public int getSampleCount() {
+		return mSamples.length;
+	}
+
+	private static final class Key {
+		private final double mAmp;
+		private final double mFreq;
+		private final double mDecay;
+
+		Key(double amp, double freq, double decay) {
+			mAmp = amp;
+			mFreq = freq;
+			mDecay = decay;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return Double.compare(mAmp, other.mAmp) == 0 && Double.compare(mFreq, other.mFreq) == 0
+					&& Double.compare(mDecay, other.mDecay) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(mAmp);
+			bits = 31 * bits + Double.doubleToLongBits(mFreq);
+			bits = 31 * bits + Double.doubleToLongBits(mDecay);
+			return (int) (bits ^ (bits >>> 32));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.eebbk.studyos.elasticity.spring;
+
+/**
+ * Adaptive step Dormand-Prince (RK45) solver for the spring equation
+ * x'' = tension * (end - x) - friction * x'. The fifth order solution is propagated and the
+ * embedded fourth order one is only used to estimate the error of each step, which drives the size
+ * of the next step. The step size is kept per spring so it carries over from one frame to the next.
+ */
+final class AdaptiveSpringSolver {
+
+  // step used when a spring has no step size history yet
+  private static final double INITIAL_STEP_SEC = 0.004;
+  // bounds for the step size so a bad error estimate can neither stall nor skip a whole frame
+  private static final double MIN_STEP_SEC = 0.00001;
+  private static final double MAX_STEP_SEC = 0.064;
+  // step size controller, see Hairer, Norsett & Wanner, Solving ODEs I, II.4
+  private static final double SAFETY = 0.9;
+  private static final double MIN_FACTOR = 0.2;
+  private static final double MAX_FACTOR = 5.0;
+
+  // Dormand-Prince tableau
+  private static final double A21 = 1.0 / 5.0;
+  private static final double A31 = 3.0 / 40.0, A32 = 9.0 / 40.0;
+  private static final double A41 = 44.0 / 45.0, A42 = -56.0 / 15.0, A43 = 32.0 / 9.0;
+  private static final double A51 = 19372.0 / 6561.0, A52 = -25360.0 / 2187.0,
+      A53 = 64448.0 / 6561.0, A54 = -212.0 / 729.0;
+  private static final double A61 = 9017.0 / 3168.0, A62 = -355.0 / 33.0,
+      A63 = 46732.0 / 5247.0, A64 = 49.0 / 176.0, A65 = -5103.0 / 18656.0;
+  private static final double B1 = 35.0 / 384.0, B3 = 500.0 / 1113.0, B4 = 125.0 / 192.0,
+      B5 = -2187.0 / 6784.0, B6 = 11.0 / 84.0;
+  // difference between the fifth and fourth order weights
+  private static final double E1 = 71.0 / 57600.0, E3 = -71.0 / 16695.0, E4 = 71.0 / 1920.0,
+      E5 = -17253.0 / 339200.0, E6 = 22.0 / 525.0, E7 = -1.0 / 40.0;
+
+  private AdaptiveSpringSolver() {
+  }
+
+  /**
+   * advance the spring stored at index by deltaTime seconds.
+   * @param position positions, updated in place
+   * @param velocity velocities, updated in place
+   * @param stepSize step size carried between frames, updated in place. 0 means no history.
+   * @param index the index of the spring in the arrays
+   * @param endValue the rest value the spring is pulled towards
+   * @param tension spring tension
+   * @param friction spring friction
+   * @param tolerance largest local error accepted per step, in units of the value
+   * @param deltaTime time to advance in seconds
+   * @return the number of steps attempted, including rejected ones
+   */
+  static int advance(
+      double[] position,
+      double[] velocity,
+      double[] stepSize,
+      int index,
+      double endValue,
+      double tension,
+      double friction,
+      double tolerance,
+      double deltaTime) {
+    // velocity errors are weighed against the displacement tolerance scaled by the natural
+    // frequency of the spring, which is how the two relate on an undamped oscillation
+    double frequency = Math.sqrt(tension);
+    double velocityTolerance = tolerance * (frequency > 1 ? frequency : 1);
+
+    double y = position[index] - endValue;
+    double v = velocity[index];
+    double h = stepSize[index] > 0 ? stepSize[index] : INITIAL_STEP_SEC;
+    double remaining = deltaTime;
+    int steps = 0;
+
+    // first stage, reused from the last stage of the previous step (FSAL)
+    double k1y = v;
+    double k1v = -tension * y - friction * v;
+
+    while (remaining > 0) {
+      double step = h < remaining ? h : remaining;
+      steps++;
+
+      double ty = y + step * A21 * k1y;
+      double tv = v + step * A21 * k1v;
+      double k2y = tv;
+      double k2v = -tension * ty - friction * tv;
+
+      ty = y + step * (A31 * k1y + A32 * k2y);
+      tv = v + step * (A31 * k1v + A32 * k2v);
+      double k3y = tv;
+      double k3v = -tension * ty - friction * tv;
+
+      ty = y + step * (A41 * k1y + A42 * k2y + A43 * k3y);
+      tv = v + step * (A41 * k1v + A42 * k2v + A43 * k3v);
+      double k4y = tv;
+      double k4v = -tension * ty - friction * tv;
+
+      ty = y + step * (A51 * k1y + A52 * k2y + A53 * k3y + A54 * k4y);
+      tv = v + step * (A51 * k1v + A52 * k2v + A53 * k3v + A54 * k4v);
+      double k5y = tv;
+      double k5v = -tension * ty - friction * tv;
+
+      ty = y + step * (A61 * k1y + A62 * k2y + A63 * k3y + A64 * k4y + A65 * k5y);
+      tv = v + step * (A61 * k1v + A62 * k2v + A63 * k3v + A64 * k4v + A65 * k5v);
+      double k6y = tv;
+      double k6v = -tension * ty - friction * tv;
+
+      double newY = y + step * (B1 * k1y + B3 * k3y + B4 * k4y + B5 * k5y + B6 * k6y);
+      double newV = v + step * (B1 * k1v + B3 * k3v + B4 * k4v + B5 * k5v + B6 * k6v);
+      double k7y = newV;
+      double k7v = -tension * newY - friction * newV;
+
+      double errorY = step * (E1 * k1y + E3 * k3y + E4 * k4y + E5 * k5y + E6 * k6y + E7 * k7y);
+      double errorV = step * (E1 * k1v + E3 * k3v + E4 * k4v + E5 * k5v + E6 * k6v + E7 * k7v);
+      double error = Math.max(Math.abs(errorY) / tolerance, Math.abs(errorV) / velocityTolerance);
+
+      boolean accepted = error <= 1 || step <= MIN_STEP_SEC;
+      double factor = error == 0 ? MAX_FACTOR : SAFETY * Math.pow(error, -0.2);
+      factor = Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, factor));
+
+      if (accepted) {
+        y = newY;
+        v = newV;
+        k1y = k7y;
+        k1v = k7v;
+        remaining -= step;
+        // a step shortened to land on the end of the frame says nothing against the full size
+        h = step < h ? Math.max(h, step * factor) : step * factor;
+      } else {
+        h = step * Math.min(factor, 1);
+      }
+      h = Math.min(MAX_STEP_SEC, Math.max(MIN_STEP_SEC, h));
+    }
+
+    position[index] = endValue + y;
+    velocity[index] = v;
+    stepSize[index] = h;
+    return steps;
+  }
+}
@@ -0,0 +1,89 @@
+package com.eebbk.studyos.elasticity.spring;
+
+/**
+ * Closed form solver for the spring equation x'' = tension * (end - x) - friction * x'.
+ * The state is read from and written back to parallel position and velocity arrays so it can be
+ * used directly on the storage of a {@link SpringBatch}.
+ */
+final class AnalyticSpringSolver {
+
+  // relative distance of the discriminant from zero below which the spring is treated as
+  // critically damped, the under-damped form loses precision as the damped frequency reaches zero
+  private static final double CRITICAL_DAMPING_EPSILON = 1e-9;
+
+  private AnalyticSpringSolver() {
+  }
+
+  /**
+   * advance the spring stored at index by deltaTime seconds.
+   * @param position positions, updated in place
+   * @param velocity velocities, updated in place
+   * @param index the index of the spring in the arrays
+   * @param endValue the rest value the spring is pulled towards
+   * @param tension spring tension
+   * @param friction spring friction
+   * @param deltaTime time to advance in seconds
+   */
+  static void advance(
+      double[] position,
+      double[] velocity,
+      int index,
+      double endValue,
+      double tension,
+      double friction,
+      double deltaTime) {
+    double x0 = position[index] - endValue;
+    double v0 = velocity[index];
+    double x;
+    double v;
+
+    if (tension == 0) {
+      // no restoring force, the velocity only decays with friction
+      if (friction == 0) {
+        x = x0 + v0 * deltaTime;
+        v = v0;
+      } else {
+        double decay = Math.exp(-friction * deltaTime);
+        x = x0 + v0 * (1 - decay) / friction;
+        v = v0 * decay;
+      }
+      position[index] = endValue + x;
+      velocity[index] = v;
+      return;
+    }
+
+    double alpha = friction * 0.5;
+    double discriminant = alpha * alpha - tension;
+
+    if (Math.abs(discriminant) <= CRITICAL_DAMPING_EPSILON * tension) {
+      // critically damped: x = (a + b * t) * e^(-alpha * t)
+      double decay = Math.exp(-alpha * deltaTime);
+      double b = v0 + alpha * x0;
+      x = (x0 + b * deltaTime) * decay;
+      v = (b - alpha * (x0 + b * deltaTime)) * decay;
+    } else if (discriminant < 0) {
+      // under-damped: x = e^(-alpha * t) * (a * cos(w * t) + b * sin(w * t))
+      double omega = Math.sqrt(-discriminant);
+      double decay = Math.exp(-alpha * deltaTime);
+      double cos = Math.cos(omega * deltaTime);
+      double sin = Math.sin(omega * deltaTime);
+      double b = (v0 + alpha * x0) / omega;
+      x = decay * (x0 * cos + b * sin);
+      v = decay * ((b * omega - alpha * x0) * cos - (x0 * omega + alpha * b) * sin);
+    } else {
+      // over-damped: x = c1 * e^(r1 * t) + c2 * e^(r2 * t)
+      double root = Math.sqrt(discriminant);
+      double r1 = -alpha + root;
+      double r2 = -alpha - root;
+      double c1 = (v0 - r2 * x0) / (r1 - r2);
+      double c2 = x0 - c1;
+      double e1 = Math.exp(r1 * deltaTime);
+      double e2 = Math.exp(r2 * deltaTime);
+      x = c1 * e1 + c2 * e2;
+      v = c1 * r1 * e1 + c2 * r2 * e2;
+    }
+
+    position[index] = endValue + x;
+    velocity[index] = v;
+  }
+}
@@ -0,0 +1,46 @@
+package com.eebbk.studyos.elasticity.spring;
+
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.ElasticityCoupling;
+
+/**
+ * Coupling pulling a {@link Spring} towards the value of another elasticity, end = value * scale +
+ * offset, for follow the leader chains such as chat heads or staggered cards.
+ */
+public class FollowCoupling implements ElasticityCoupling {
+
+  /** coupling setting the end value of the target to the value of the source */
+  public static final FollowCoupling FOLLOW = new FollowCoupling(1, 0);
+
+  private final double mScale;
+  private final double mOffset;
+
+  /**
+   * @param scale factor applied to the value of the source
+   * @param offset added to the scaled value of the source
+   */
+  public FollowCoupling(double scale, double offset) {
+    mScale = scale;
+    mOffset = offset;
+  }
+
+  @Override
+  public void apply(Elasticity source, Elasticity target) {
+    if (!(target instanceof Spring)) {
+      throw new IllegalArgumentException("FollowCoupling only drives springs");
+    }
+    Spring spring = (Spring) target;
+    double endValue = source.getValue() * mScale + mOffset;
+    if (spring.getEndValue() != endValue) {
+      spring.setEndValue(endValue);
+    }
+  }
+
+  public double getScale() {
+    return mScale;
+  }
+
+  public double getOffset() {
+    return mOffset;
+  }
+}
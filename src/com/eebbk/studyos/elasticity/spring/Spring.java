@@ -10,49 +10,44 @@
 
 package com.eebbk.studyos.elasticity.spring;
 
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.eebbk.studyos.elasticity.overshoot.OverShoot;
 import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
-import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.CoupledElasticity;
 import com.eebbk.studyos.elasticity.system.ElasticityListener;
+import com.eebbk.studyos.elasticity.system.ElasticityListeners;
+import com.eebbk.studyos.elasticity.system.ElasticityPool;
+import com.eebbk.studyos.elasticity.system.RecyclableElasticity;
 
 /**
  * Classical spring implementing Hooke's law with configurable friction and tension.
  */
-public class Spring  implements Elasticity{
+public class Spring  implements RecyclableElasticity, CoupledElasticity {
+
+  /**
+   * creates the springs of an {@link ElasticityPool}
+   */
+  public static final ElasticityPool.Factory<Spring> POOL_FACTORY = new ElasticityPool.Factory<Spring>() {
+    @Override
+    public Spring create(BaseElasticitySystem system) {
+      return new Spring(system);
+    }
+  };
 
   // unique incrementer id for springs
-  private static int ID = 0;
+  private static final AtomicInteger ID = new AtomicInteger();
 
-  // maximum amount of time to simulate per physics iteration in seconds (4 frames at 60 FPS)
-  private static final double MAX_DELTA_TIME_SEC = 0.064;
-  // fixed timestep to use in the physics solver in seconds
-  private static final double SOLVER_TIMESTEP_SEC = 0.001;
   private SpringConfig mSpringConfig;
-  private boolean mOvershootClampingEnabled;
-
-  // storage for the current and prior physics state while integration is occurring
-  private static class PhysicsState {
-    double position;
-    double velocity;
-  }
 
   // unique id for the spring in the system
   private final String mId;
-  // all physics simulation objects are final and reused in each processing pass
-  private final PhysicsState mCurrentState = new PhysicsState();
-  private final PhysicsState mPreviousState = new PhysicsState();
-  private final PhysicsState mTempState = new PhysicsState();
-  private double mStartValue;
-  private double mEndValue;
-  private boolean mWasAtRest = true;
-  // thresholds for determining when the spring is at rest
-  private double mRestSpeedThreshold = 0.005;
-  private double mDisplacementFromRestThreshold = 0.005;
-  private double mTimeAccumulator = 0;
-  private final CopyOnWriteArraySet<ElasticityListener> mListeners =
-    new CopyOnWriteArraySet<ElasticityListener>();
+  // handle of the spring if it was registered with the system
+  private int mHandle = BaseElasticitySystem.NO_HANDLE;
+  // the physics state lives in a slot of the batch shared by all springs of the system
+  private final SpringBatch mBatch;
+  private final int mSlot;
+  private final ElasticityListeners mListeners = new ElasticityListeners();
 
   private final BaseElasticitySystem mSpringSystem;
 
@@ -64,7 +59,9 @@ public class Spring  implements Elasticity{
       throw new IllegalArgumentException("Spring cannot be created outside of a BaseSpringSystem");
     }
     mSpringSystem = springSystem;
-    mId = "spring:" + ID++;
+    mBatch = SpringBatch.forSystem(springSystem);
+    mSlot = mBatch.allocate(this);
+    mId = "spring:" + ID.getAndIncrement();
     setSpringConfig(SpringConfig.defaultConfig);
   }
 
@@ -75,9 +72,22 @@ public class Spring  implements Elasticity{
    */
   public void destroy() {
     mListeners.clear();
+    mBatch.release(mSlot);
     mSpringSystem.deregisterElasticity(this);
   }
 
+  /**
+   * Put the spring back in the state of a new Spring without notifying its listeners, which are
+   * removed. The spring keeps its slot in the batch, its handle and its id, see
+   * {@link ElasticityPool}.
+   */
+  @Override
+  public void recycle() {
+    mListeners.clear();
+    mBatch.reset(mSlot);
+    setSpringConfig(SpringConfig.defaultConfig);
+  }
+
   /**
    * get the unique id for this spring
    * @return the unique id
@@ -86,6 +96,16 @@ public class Spring  implements Elasticity{
     return mId;
   }
 
+  @Override
+  public int getHandle() {
+    return mHandle;
+  }
+
+  @Override
+  public void setHandle(int handle) {
+    mHandle = handle;
+  }
+
   /**
    * set the config class
    * @param springConfig config class for the spring
@@ -96,6 +116,7 @@ public class Spring  implements Elasticity{
       throw new IllegalArgumentException("springConfig is required");
     }
     mSpringConfig = springConfig;
+    mBatch.setConfig(mSlot, springConfig);
     return this;
   }
 
@@ -131,12 +152,10 @@ public class Spring  implements Elasticity{
    * @return the spring for chaining
    */
   public Spring setCurrentValue(double currentValue, boolean setAtRest) {
-    mStartValue = currentValue;
-    mCurrentState.position = currentValue;
-    mSpringSystem.activateElasticity(this.getId());
-    for (ElasticityListener listener : mListeners) {
-      listener.onSpringUpdate(this);
-    }
+    mBatch.mStartValue[mSlot] = currentValue;
+    mBatch.mPosition[mSlot] = currentValue;
+    activate();
+    mListeners.notifyUpdate(this);
     if (setAtRest) {
       setAtRest();
     }
@@ -147,7 +166,7 @@ public class Spring  implements Elasticity{
    * @return displacement value
    */
   public double getStartValue() {
-    return mStartValue;
+    return mBatch.mStartValue[mSlot];
   }
 
   /**
@@ -155,7 +174,7 @@ public class Spring  implements Elasticity{
    * @return current value
    */
   public double getCurrentValue() {
-    return mCurrentState.position;
+    return mBatch.mPosition[mSlot];
   }
 
   /**
@@ -163,16 +182,7 @@ public class Spring  implements Elasticity{
    * @return the distance displaced by
    */
   public double getCurrentDisplacementDistance() {
-    return getDisplacementDistanceForState(mCurrentState);
-  }
-
-  /**
-   * get the displacement from rest for a given physics state
-   * @param state the state to measure from
-   * @return the distance displaced by
-   */
-  private double getDisplacementDistanceForState(PhysicsState state) {
-    return Math.abs(mEndValue - state.position);
+    return Math.abs(getEndValue() - getCurrentValue());
   }
 
   /**
@@ -181,15 +191,13 @@ public class Spring  implements Elasticity{
    * @return the spring for chaining
    */
   public Spring setEndValue(double endValue) {
-    if (mEndValue == endValue && isAtRest()) {
+    if (getEndValue() == endValue && isAtRest()) {
       return this;
     }
-    mStartValue = getCurrentValue();
-    mEndValue = endValue;
-    mSpringSystem.activateElasticity(this.getId());
-    for (ElasticityListener listener : mListeners) {
-      listener.onSpringEndStateChange(this);
-    }
+    mBatch.mStartValue[mSlot] = getCurrentValue();
+    mBatch.mEndValue[mSlot] = endValue;
+    activate();
+    mListeners.notifyEndStateChange(this);
     return this;
   }
 
@@ -198,7 +206,7 @@ public class Spring  implements Elasticity{
    * @return the rest value for the spring
    */
   public double getEndValue() {
-    return mEndValue;
+    return mBatch.mEndValue[mSlot];
   }
 
   /**
@@ -207,11 +215,11 @@ public class Spring  implements Elasticity{
    * @return the spring for chaining
    */
   public Spring setVelocity(double velocity) {
-    if (velocity == mCurrentState.velocity) {
+    if (velocity == getVelocity()) {
       return this;
     }
-    mCurrentState.velocity = velocity;
-    mSpringSystem.activateElasticity(this.getId());
+    mBatch.mVelocity[mSlot] = velocity;
+    activate();
     return this;
   }
 
@@ -220,7 +228,7 @@ public class Spring  implements Elasticity{
    * @return the current velocity
    */
   public double getVelocity() {
-    return mCurrentState.velocity;
+    return mBatch.mVelocity[mSlot];
   }
 
   /**
@@ -229,7 +237,7 @@ public class Spring  implements Elasticity{
    * @return the spring for chaining
    */
   public Spring setRestSpeedThreshold(double restSpeedThreshold) {
-    mRestSpeedThreshold = restSpeedThreshold;
+    mBatch.mRestSpeedThreshold[mSlot] = restSpeedThreshold;
     return this;
   }
 
@@ -238,7 +246,7 @@ public class Spring  implements Elasticity{
    * @return speed in pixels per second
    */
   public double getRestSpeedThreshold() {
-    return mRestSpeedThreshold;
+    return mBatch.mRestSpeedThreshold[mSlot];
   }
 
   /**
@@ -247,7 +255,7 @@ public class Spring  implements Elasticity{
    * @return the spring for chaining
    */
   public Spring setRestDisplacementThreshold(double displacementFromRestThreshold) {
-    mDisplacementFromRestThreshold = displacementFromRestThreshold;
+    mBatch.mDisplacementFromRestThreshold[mSlot] = displacementFromRestThreshold;
     return this;
   }
 
@@ -256,7 +264,7 @@ public class Spring  implements Elasticity{
    * @return displacement to consider resting below
    */
   public double getRestDisplacementThreshold() {
-    return mDisplacementFromRestThreshold;
+    return mBatch.mDisplacementFromRestThreshold[mSlot];
   }
 
   /**
@@ -265,7 +273,7 @@ public class Spring  implements Elasticity{
    * @return the spring for chaining
    */
   public Spring setOvershootClampingEnabled(boolean overshootClampingEnabled) {
-    mOvershootClampingEnabled = overshootClampingEnabled;
+    mBatch.mOvershootClampingEnabled[mSlot] = overshootClampingEnabled;
     return this;
   }
 
@@ -274,182 +282,70 @@ public class Spring  implements Elasticity{
    * @return is overshoot clamping enabled
    */
   public boolean isOvershootClampingEnabled() {
-    return mOvershootClampingEnabled;
+    return mBatch.mOvershootClampingEnabled[mSlot];
   }
 
   /**
-   * Check if the spring is overshooting beyond its target.
-   * @return true if the spring is overshooting its target
+   * Select how this spring is integrated. {@link SpringSolver#ANALYTIC} costs the same for any
+   * frame length, the state is carried over so switching is possible while the spring moves.
+   * @param solver the solver to use
+   * @return the spring for chaining
    */
-  public boolean isOvershooting() {
-    return mSpringConfig.tension > 0 &&
-           ((mStartValue < mEndValue && getCurrentValue() > mEndValue) ||
-           (mStartValue > mEndValue && getCurrentValue() < mEndValue));
+  public Spring setSolver(SpringSolver solver) {
+    if (solver == null) {
+      throw new IllegalArgumentException("solver is required");
+    }
+    mBatch.mSolver[mSlot] = solver;
+    return this;
   }
 
   /**
-   * advance the physics simulation in SOLVER_TIMESTEP_SEC sized chunks to fulfill the required
-   * realTimeDelta.
-   * The math is inlined inside the loop since it made a huge performance impact when there are
-   * several springs being advanced.
-   * @param realDeltaTime clock drift
+   * get the solver used to integrate this spring
+   * @return the solver
    */
-  public void advance(double realDeltaTime) {
-
-    boolean isAtRest = isAtRest();
-
-    if (isAtRest && mWasAtRest) {
-      /* begin debug
-      Log.d(TAG, "bailing out because we are at rest:" + getName());
-      end debug */
-      return;
-    }
-
-    // clamp the amount of realTime to simulate to avoid stuttering in the UI. We should be able
-    // to catch up in a subsequent advance if necessary.
-    double adjustedDeltaTime = realDeltaTime;
-    if (realDeltaTime > MAX_DELTA_TIME_SEC) {
-      adjustedDeltaTime = MAX_DELTA_TIME_SEC;
-    }
+  public SpringSolver getSolver() {
+    return mBatch.mSolver[mSlot];
+  }
 
-    /* begin debug
-    long startTime = System.currentTimeMillis();
-    int iterations = 0;
-    end debug */
-
-    mTimeAccumulator += adjustedDeltaTime;
-
-    double tension = mSpringConfig.tension;
-    double friction = mSpringConfig.friction;
-
-    double position = mCurrentState.position;
-    double velocity = mCurrentState.velocity;
-    double tempPosition = mTempState.position;
-    double tempVelocity = mTempState.velocity;
-
-    double aVelocity, aAcceleration;
-    double bVelocity, bAcceleration;
-    double cVelocity, cAcceleration;
-    double dVelocity, dAcceleration;
-
-    double dxdt, dvdt;
-
-    // iterate over the true time
-    while (mTimeAccumulator >= SOLVER_TIMESTEP_SEC) {
-      /* begin debug
-      iterations++;
-      end debug */
-      mTimeAccumulator -= SOLVER_TIMESTEP_SEC;
-
-      if (mTimeAccumulator < SOLVER_TIMESTEP_SEC) {
-        // This will be the last iteration. Remember the previous state in case we need to
-        // interpolate
-        mPreviousState.position = position;
-        mPreviousState.velocity = velocity;
-      }
-
-      // Perform an RK4 integration to provide better detection of the acceleration curve via
-      // sampling of Euler integrations at 4 intervals feeding each derivative into the calculation
-      // of the next and taking a weighted sum of the 4 derivatives as the final output.
-
-      // This math was inlined since it made for big performance improvements when advancing several
-      // springs in one pass of the BaseSpringSystem.
-
-      // The initial derivative is based on the current velocity and the calculated acceleration
-      aVelocity = velocity;
-      aAcceleration = (tension * (mEndValue - tempPosition)) - friction * velocity;
-
-      // Calculate the next derivatives starting with the last derivative and integrating over the
-      // timestep
-      tempPosition = position + aVelocity * SOLVER_TIMESTEP_SEC * 0.5;
-      tempVelocity = velocity + aAcceleration * SOLVER_TIMESTEP_SEC * 0.5;
-      bVelocity = tempVelocity;
-      bAcceleration = (tension * (mEndValue - tempPosition)) - friction * tempVelocity;
-
-      tempPosition = position + bVelocity * SOLVER_TIMESTEP_SEC * 0.5;
-      tempVelocity = velocity + bAcceleration * SOLVER_TIMESTEP_SEC * 0.5;
-      cVelocity = tempVelocity;
-      cAcceleration = (tension * (mEndValue - tempPosition)) - friction * tempVelocity;
-
-      tempPosition = position + cVelocity * SOLVER_TIMESTEP_SEC;
-      tempVelocity = velocity + cAcceleration * SOLVER_TIMESTEP_SEC;
-      dVelocity = tempVelocity;
-      dAcceleration = (tension * (mEndValue - tempPosition)) - friction * tempVelocity;
-
-      // Take the weighted sum of the 4 derivatives as the final output.
-      dxdt = 1.0/6.0 * (aVelocity + 2.0 * (bVelocity + cVelocity) + dVelocity);
-      dvdt = 1.0/6.0 * (aAcceleration + 2.0 * (bAcceleration + cAcceleration) + dAcceleration);
-
-      position += dxdt * SOLVER_TIMESTEP_SEC;
-      velocity += dvdt * SOLVER_TIMESTEP_SEC;
+  /**
+   * Set the local error tolerance used when this spring is advanced with
+   * {@link SpringSolver#ADAPTIVE}. Larger tolerances allow larger steps.
+   * @param tolerance largest error accepted per step in units of the value, or 0 to use the
+   *                  default of the {@link SpringBatch}
+   * @return the spring for chaining
+   */
+  public Spring setSolverTolerance(double tolerance) {
+    if (tolerance < 0) {
+      throw new IllegalArgumentException("tolerance must not be negative");
     }
+    mBatch.mSolverTolerance[mSlot] = tolerance;
+    return this;
+  }
 
-    mTempState.position = tempPosition;
-    mTempState.velocity = tempVelocity;
-
-    mCurrentState.position = position;
-    mCurrentState.velocity = velocity;
-
-    if (mTimeAccumulator > 0) {
-      interpolate(mTimeAccumulator / SOLVER_TIMESTEP_SEC);
-    }
+  /**
+   * get the local error tolerance of the adaptive solver for this spring
+   * @return the tolerance, 0 if the default of the {@link SpringBatch} is used
+   */
+  public double getSolverTolerance() {
+    return mBatch.mSolverTolerance[mSlot];
+  }
 
-    // End the spring immediately if it is overshooting and overshoot clamping is enabled.
-    // Also make sure that if the spring was considered within a resting threshold that it's now
-    // snapped to its end value.
-    if (isAtRest() || (mOvershootClampingEnabled && isOvershooting())) {
-      // Don't call setCurrentValue because that forces a call to onSpringUpdate
-      if (tension > 0) {
-        mStartValue = mEndValue;
-        mCurrentState.position = mEndValue;
-      } else {
-        mEndValue = mCurrentState.position;
-        mStartValue = mEndValue;
-      }
-      setVelocity(0);
-      isAtRest = true;
-    }
+  /**
+   * Check if the spring is overshooting beyond its target.
+   * @return true if the spring is overshooting its target
+   */
+  public boolean isOvershooting() {
+    return mBatch.isOvershooting(mSlot);
+  }
 
-    /* begin debug
-    long endTime = System.currentTimeMillis();
-    long elapsedMillis = endTime - startTime;
-    Log.d(TAG,
-        "iterations:" + iterations +
-            " iterationTime:" + elapsedMillis +
-            " position:" + mCurrentState.position +
-            " velocity:" + mCurrentState.velocity +
-            " realDeltaTime:" + realDeltaTime +
-            " adjustedDeltaTime:" + adjustedDeltaTime +
-            " isAtRest:" + isAtRest +
-            " wasAtRest:" + mWasAtRest);
-    end debug */
-
-    // NB: do these checks outside the loop so all listeners are properly notified of the state
-    //     transition
-    boolean notifyActivate = false;
-    if (mWasAtRest) {
-      mWasAtRest = false;
-      notifyActivate = true;
-    }
-    boolean notifyAtRest = false;
-    if (isAtRest) {
-      mWasAtRest = true;
-      notifyAtRest = true;
-    }
-    for (ElasticityListener listener : mListeners) {
-      // starting to move
-      if (notifyActivate) {
-        listener.onSpringActivate(this);
-      }
-
-      // updated
-      listener.onSpringUpdate(this);
-
-      // coming to rest
-      if (notifyAtRest) {
-        listener.onSpringAtRest(this);
-      }
-    }
+  /**
+   * advance the physics simulation of this spring on its own. The system normally advances all
+   * springs together through their {@link SpringBatch}, this is only needed when driving a spring
+   * by hand.
+   * @param realDeltaTime clock drift
+   */
+  public void advance(double realDeltaTime) {
+    mBatch.advance(mSlot, realDeltaTime);
   }
 
   /**
@@ -458,7 +354,7 @@ public class Spring  implements Elasticity{
    * @return should the system process this spring
    */
   public boolean systemShouldAdvance() {
-    return !isAtRest() || !wasAtRest();
+    return mBatch.shouldAdvance(mSlot);
   }
 
   /**
@@ -467,7 +363,7 @@ public class Spring  implements Elasticity{
    * @return true if the spring was at rest in the prior iteration
    */
   public boolean wasAtRest() {
-    return mWasAtRest;
+    return mBatch.mWasAtRest[mSlot];
   }
 
   /**
@@ -475,9 +371,7 @@ public class Spring  implements Elasticity{
    * @return is the spring at rest
    */
   public boolean isAtRest() {
-    return Math.abs(mCurrentState.velocity) <= mRestSpeedThreshold &&
-        (getDisplacementDistanceForState(mCurrentState) <= mDisplacementFromRestThreshold ||
-         mSpringConfig.tension == 0);
+    return mBatch.isAtRest(mSlot);
   }
 
   /**
@@ -486,24 +380,39 @@ public class Spring  implements Elasticity{
    * @return this object
    */
   public Spring setAtRest() {
-    mEndValue = mCurrentState.position;
-    mTempState.position = mCurrentState.position;
-    mCurrentState.velocity = 0;
+    mBatch.mEndValue[mSlot] = mBatch.mPosition[mSlot];
+    mBatch.mTempPosition[mSlot] = mBatch.mPosition[mSlot];
+    mBatch.mVelocity[mSlot] = 0;
     return this;
   }
 
   /**
-   * linear interpolation between the previous and current physics state based on the amount of
-   * timestep remaining after processing the rendering delta time in timestep sized chunks.
-   * @param alpha from 0 to 1, where 0 is the previous state, 1 is the current state
+   * Called by the system when the spring is coupled to or decoupled from other elasticities. A
+   * coupled spring is advanced by the dependency graph of the system instead of its batch.
+   * @param coupled true if the graph advances the spring
    */
-  private void interpolate(double alpha) {
-    mCurrentState.position = mCurrentState.position * alpha + mPreviousState.position *(1-alpha);
-    mCurrentState.velocity = mCurrentState.velocity * alpha + mPreviousState.velocity *(1-alpha);
+  @Override
+  public void setCoupled(boolean coupled) {
+    mBatch.setCoupled(mSlot, coupled, mSpringConfig);
+  }
+
+  /**
+   * let the batch integrate this spring on the next frame
+   */
+  private void activate() {
+    mBatch.activate(mSlot, mSpringConfig);
   }
 
   /** listeners **/
 
+  /**
+   * the listeners notified by the batch when this spring is advanced
+   * @return the listener list
+   */
+  ElasticityListeners getListeners() {
+    return mListeners;
+  }
+
   /**
    * add a listener
    * @param newListener to add
@@ -553,7 +462,7 @@ public class Spring  implements Elasticity{
 @Override
 public double getValue() {
 	// TODO Auto-generated method stub
-	return mCurrentState.position;
+	return mBatch.mPosition[mSlot];
 }
 
 
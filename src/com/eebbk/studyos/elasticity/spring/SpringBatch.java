@@ -0,0 +1,863 @@
+package com.eebbk.studyos.elasticity.spring;
+
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.Elasticity;
+import com.eebbk.studyos.elasticity.system.ElasticityDegradation;
+import com.eebbk.studyos.elasticity.system.ElasticityFrame;
+import com.eebbk.studyos.elasticity.system.ElasticityFrameStats;
+import com.eebbk.studyos.elasticity.system.ElasticityListener;
+import com.eebbk.studyos.elasticity.system.ElasticityWorkers;
+import com.eebbk.studyos.elasticity.system.ParallelElasticity;
+
+/**
+ * SpringBatch keeps the physics state of every {@link Spring} of a BaseElasticitySystem in parallel
+ * arrays and advances all of the active springs in one pass. The batch is registered with the
+ * system as a single internal {@link Elasticity}, hidden from its registry and snapshots; each
+ * Spring is only a handle onto one slot of the batch.
+ *
+ * A frame is processed in two passes: the first integrates every active slot without touching the
+ * Spring objects, the second notifies listeners and drops the slots that came to rest. The first
+ * pass is split across the system's parallel workers once enough springs are active.
+ */
+public class SpringBatch implements ParallelElasticity {
+
+  // id under which the batch is registered in its BaseElasticitySystem
+  static final String ID = "spring:batch";
+
+  // maximum amount of time to simulate per physics iteration in seconds (4 frames at 60 FPS)
+  private static final double MAX_DELTA_TIME_SEC = 0.064;
+  // fixed timestep to use in the physics solver in seconds
+  private static final double SOLVER_TIMESTEP_SEC = 0.001;
+
+  // default local error tolerance of the adaptive solver, in units of the spring value
+  private static final double DEFAULT_SOLVER_TOLERANCE = 0.001;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // per frame result of the integration pass
+  private static final byte FRAME_SKIPPED = 0;
+  private static final byte FRAME_ADVANCED = 1;
+  private static final byte FRAME_ACTIVATED = 2;
+  private static final byte FRAME_AT_REST = 4;
+  // integrated with the adaptive solver, counted in the adaptive solver statistics
+  private static final byte FRAME_ADAPTIVE = 8;
+
+  private final BaseElasticitySystem mSystem;
+  private int mHandle = BaseElasticitySystem.NO_HANDLE;
+
+  // slot storage, indexed by the slot of a Spring
+  double[] mPosition;
+  double[] mVelocity;
+  double[] mPreviousPosition;
+  double[] mPreviousVelocity;
+  double[] mTempPosition;
+  double[] mTempVelocity;
+  double[] mStartValue;
+  double[] mEndValue;
+  double[] mTension;
+  double[] mFriction;
+  double[] mRestSpeedThreshold;
+  double[] mDisplacementFromRestThreshold;
+  double[] mTimeAccumulator;
+  boolean[] mWasAtRest;
+  boolean[] mOvershootClampingEnabled;
+  SpringSolver[] mSolver;
+  // adaptive solver state, a tolerance of 0 uses the batch default
+  double[] mSolverTolerance;
+  private double[] mAdaptiveStep;
+  private boolean[] mActive;
+  // slots in mActiveSlots, which may no longer be active until the next dispatch pass drops them
+  private boolean[] mListed;
+  // slots of springs advanced by the dependency graph of the system instead of the batch
+  private boolean[] mCoupled;
+  private byte[] mFrameState;
+  private Spring[] mSprings;
+
+  // number of slots ever handed out, slots below this are either in use or on the free list
+  private int mSlotCount;
+  private int[] mFreeSlots;
+  private int mFreeCount;
+  private int[] mPendingFreeSlots;
+  private int mPendingFreeCount;
+
+  // dense list of the slots that need to be advanced, in activation order. Deactivated slots stay
+  // listed and are dropped by the next dispatch pass, mStaleCount of them at most.
+  private int[] mActiveSlots;
+  private int mActiveCount;
+  private int mStaleCount;
+  private boolean mAdvancing;
+
+  private double mDefaultSolverTolerance = DEFAULT_SOLVER_TOLERANCE;
+  // adaptive solver statistics
+  private long mAdaptiveStepCount;
+  // fixed steps are summed with their fraction, as the RK4 accumulator carries it between frames
+  private double mFixedStepEquivalentCount;
+  // per frame counters reported to the ElasticityFrameStats of the system
+  private int mFrameIterations;
+  private int mFrameCallbacks;
+  // solver steps of each slot in the last integration, summed up on the looper thread
+  private int[] mSlotIterations;
+  // state of the integration pass read by the dispatch pass
+  private int mIntegratedCount;
+  private double mFrameDeltaTime;
+  // RK4 and adaptive slots are integrated with the closed form while the system is degraded
+  private boolean mCheapSolver;
+  private final ElasticityWorkers.RangeTask mIntegrateTask = new ElasticityWorkers.RangeTask() {
+    @Override
+    public void run(int from, int to) {
+      integrateRange(from, to);
+    }
+  };
+
+  /**
+   * Get the batch used by the springs of a system, creating and registering it on first use.
+   * @param system the system the springs live in
+   * @return the batch for that system
+   */
+  public static SpringBatch forSystem(BaseElasticitySystem system) {
+    if (system == null) {
+      throw new IllegalArgumentException("Spring cannot be created outside of a BaseSpringSystem");
+    }
+    Elasticity batch = system.getInternalElasticity(ID);
+    if (batch == null) {
+      batch = system.registerInternalElasticity(new SpringBatch(system));
+    }
+    return (SpringBatch) batch;
+  }
+
+  private SpringBatch(BaseElasticitySystem system) {
+    mSystem = system;
+    mPosition = new double[INITIAL_CAPACITY];
+    mVelocity = new double[INITIAL_CAPACITY];
+    mPreviousPosition = new double[INITIAL_CAPACITY];
+    mPreviousVelocity = new double[INITIAL_CAPACITY];
+    mTempPosition = new double[INITIAL_CAPACITY];
+    mTempVelocity = new double[INITIAL_CAPACITY];
+    mStartValue = new double[INITIAL_CAPACITY];
+    mEndValue = new double[INITIAL_CAPACITY];
+    mTension = new double[INITIAL_CAPACITY];
+    mFriction = new double[INITIAL_CAPACITY];
+    mRestSpeedThreshold = new double[INITIAL_CAPACITY];
+    mDisplacementFromRestThreshold = new double[INITIAL_CAPACITY];
+    mTimeAccumulator = new double[INITIAL_CAPACITY];
+    mWasAtRest = new boolean[INITIAL_CAPACITY];
+    mOvershootClampingEnabled = new boolean[INITIAL_CAPACITY];
+    mSolver = new SpringSolver[INITIAL_CAPACITY];
+    mSolverTolerance = new double[INITIAL_CAPACITY];
+    mAdaptiveStep = new double[INITIAL_CAPACITY];
+    mActive = new boolean[INITIAL_CAPACITY];
+    mListed = new boolean[INITIAL_CAPACITY];
+    mCoupled = new boolean[INITIAL_CAPACITY];
+    mFrameState = new byte[INITIAL_CAPACITY];
+    mSlotIterations = new int[INITIAL_CAPACITY];
+    mSprings = new Spring[INITIAL_CAPACITY];
+    mFreeSlots = new int[INITIAL_CAPACITY];
+    mPendingFreeSlots = new int[INITIAL_CAPACITY];
+    mActiveSlots = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Hand out a slot for a new Spring and reset it to the default state.
+   * @param spring the spring that will own the slot
+   * @return the slot index
+   */
+  int allocate(Spring spring) {
+    int slot;
+    if (mFreeCount > 0) {
+      slot = mFreeSlots[--mFreeCount];
+    } else {
+      if (mSlotCount == mSprings.length) {
+        growSlots(mSlotCount * 2);
+      }
+      slot = mSlotCount++;
+    }
+    mSprings[slot] = spring;
+    mCoupled[slot] = false;
+    reset(slot);
+    return slot;
+  }
+
+  /**
+   * Put a slot back in the default state of a new Spring, dropping it from the active list. Used
+   * when a Spring is recycled, its listeners are not notified.
+   * @param slot the slot to reset
+   */
+  void reset(int slot) {
+    mPosition[slot] = 0;
+    mVelocity[slot] = 0;
+    mPreviousPosition[slot] = 0;
+    mPreviousVelocity[slot] = 0;
+    mTempPosition[slot] = 0;
+    mTempVelocity[slot] = 0;
+    mStartValue[slot] = 0;
+    mEndValue[slot] = 0;
+    mTimeAccumulator[slot] = 0;
+    mRestSpeedThreshold[slot] = 0.005;
+    mDisplacementFromRestThreshold[slot] = 0.005;
+    mWasAtRest[slot] = true;
+    mOvershootClampingEnabled[slot] = false;
+    mSolver[slot] = SpringSolver.RK4;
+    mSolverTolerance[slot] = 0;
+    mAdaptiveStep[slot] = 0;
+    // a slot integrated in this frame is not reported, the dispatch pass then drops it as resting
+    mFrameState[slot] = FRAME_SKIPPED;
+    deactivate(slot);
+  }
+
+  /**
+   * Give a slot back to the batch. The slot is dropped from the active list and reused by the next
+   * allocated Spring.
+   * @param slot the slot to release
+   */
+  void release(int slot) {
+    mSprings[slot] = null;
+    deactivate(slot);
+    if (mAdvancing) {
+      // the advance pass drops the slot from the active list and frees it afterwards
+      mPendingFreeSlots = ensureCapacity(mPendingFreeSlots, mPendingFreeCount + 1);
+      mPendingFreeSlots[mPendingFreeCount++] = slot;
+      return;
+    }
+    mFreeSlots = ensureCapacity(mFreeSlots, mFreeCount + 1);
+    mFreeSlots[mFreeCount++] = slot;
+  }
+
+  /**
+   * Copy the config of a spring into its slot.
+   * @param slot the slot to update
+   * @param springConfig the config to sample
+   */
+  void setConfig(int slot, SpringConfig springConfig) {
+    mTension[slot] = springConfig.tension;
+    mFriction[slot] = springConfig.friction;
+  }
+
+  /**
+   * Mark a slot as needing integration. The config is sampled again so changes made to a shared
+   * SpringConfig take effect the next time the spring is set in motion.
+   * @param slot the slot to activate
+   * @param springConfig the current config of the spring
+   */
+  void activate(int slot, SpringConfig springConfig) {
+    setConfig(slot, springConfig);
+    // the motion is about to change abruptly, let the adaptive solver start with small steps again
+    mAdaptiveStep[slot] = 0;
+    if (mCoupled[slot]) {
+      mSystem.activateElasticity(mSprings[slot].getHandle());
+      return;
+    }
+    if (mActive[slot]) {
+      return;
+    }
+    mActive[slot] = true;
+    if (mListed[slot]) {
+      // deactivated since the last dispatch pass and still listed
+      mStaleCount--;
+    } else {
+      mListed[slot] = true;
+      mActiveSlots = ensureCapacity(mActiveSlots, mActiveCount + 1);
+      mActiveSlots[mActiveCount++] = slot;
+    }
+    mSystem.activateElasticity(mHandle);
+  }
+
+  /**
+   * Hand a slot over to the dependency graph of the system, or take it back. A coupled slot is
+   * dropped from the active list and its spring activates its own handle.
+   * @param slot the slot of a coupled spring
+   * @param coupled true if the graph advances the spring
+   * @param springConfig the current config of the spring
+   */
+  void setCoupled(int slot, boolean coupled, SpringConfig springConfig) {
+    if (mCoupled[slot] == coupled) {
+      return;
+    }
+    mCoupled[slot] = coupled;
+    if (coupled) {
+      deactivate(slot);
+    } else if (shouldAdvance(slot)) {
+      activate(slot, springConfig);
+    }
+  }
+
+  /**
+   * Stop advancing a slot in constant time. It stays listed, the next dispatch pass drops it
+   * without changing the order of the others.
+   */
+  private void deactivate(int slot) {
+    if (mActive[slot]) {
+      mActive[slot] = false;
+      mStaleCount++;
+    }
+  }
+
+  /**
+   * get the number of springs currently being advanced by the batch
+   * @return the active spring count
+   */
+  public int getActiveCount() {
+    return mActiveCount - mStaleCount;
+  }
+
+  /**
+   * get the number of springs currently allocated in the batch
+   * @return the allocated spring count
+   */
+  public int getSpringCount() {
+    return mSlotCount - mFreeCount - mPendingFreeCount;
+  }
+
+  /**
+   * Set the local error tolerance of the adaptive solver for all springs that don't set their own.
+   * @param tolerance largest error accepted per step, in units of the spring value
+   */
+  public void setDefaultSolverTolerance(double tolerance) {
+    if (tolerance <= 0) {
+      throw new IllegalArgumentException("tolerance must be positive");
+    }
+    mDefaultSolverTolerance = tolerance;
+  }
+
+  /**
+   * get the local error tolerance of the adaptive solver used by springs that don't set their own
+   * @return the default tolerance
+   */
+  public double getDefaultSolverTolerance() {
+    return mDefaultSolverTolerance;
+  }
+
+  /**
+   * get the number of steps the adaptive solver attempted since the last reset, including the ones
+   * it rejected
+   * @return the adaptive step count
+   */
+  public long getAdaptiveStepCount() {
+    return mAdaptiveStepCount;
+  }
+
+  /**
+   * get the number of fixed RK4 steps the adaptively solved springs would have cost since the last
+   * reset
+   * @return the equivalent fixed step count
+   */
+  public long getFixedStepEquivalentCount() {
+    return Math.round(mFixedStepEquivalentCount);
+  }
+
+  /**
+   * get the number of steps saved by the adaptive solver compared to the fixed RK4 solver since the
+   * last reset. Each adaptive step evaluates 6 derivatives against 4 for a RK4 step.
+   * @return the saved step count, negative if the adaptive solver took more steps
+   */
+  public long getAdaptiveStepsSaved() {
+    return getFixedStepEquivalentCount() - mAdaptiveStepCount;
+  }
+
+  /**
+   * reset the adaptive solver statistics
+   */
+  public void resetSolverStats() {
+    mAdaptiveStepCount = 0;
+    mFixedStepEquivalentCount = 0;
+  }
+
+  @Override
+  public String getId() {
+    return ID;
+  }
+
+  @Override
+  public int getHandle() {
+    return mHandle;
+  }
+
+  @Override
+  public void setHandle(int handle) {
+    mHandle = handle;
+  }
+
+  /**
+   * The batch has no value of its own, the values are read from the individual springs.
+   * @return the number of active springs
+   */
+  @Override
+  public double getValue() {
+    return getActiveCount();
+  }
+
+  @Override
+  public boolean systemShouldAdvance() {
+    return mActiveCount > mStaleCount;
+  }
+
+  /**
+   * advance every active spring of the batch. All slots are integrated first, then listeners are
+   * notified in activation order and the slots that came to rest are dropped from the active list.
+   * @param realDeltaTime clock drift in seconds
+   */
+  @Override
+  public void advance(double realDeltaTime) {
+    integrate(realDeltaTime);
+    dispatch();
+  }
+
+  /**
+   * first pass of {@link #advance(double)}, integrates every active slot without notifying
+   * listeners. Runs on the system's parallel workers when at least its parallel threshold of
+   * springs are active.
+   * @param realDeltaTime clock drift in seconds
+   */
+  @Override
+  public void integrate(double realDeltaTime) {
+    double adjustedDeltaTime = realDeltaTime;
+    if (realDeltaTime > MAX_DELTA_TIME_SEC) {
+      adjustedDeltaTime = MAX_DELTA_TIME_SEC;
+    }
+
+    mAdvancing = true;
+    mFrameDeltaTime = adjustedDeltaTime;
+    mCheapSolver = mSystem.isDegraded(ElasticityDegradation.CHEAP_SOLVER);
+    mIntegratedCount = mActiveCount;
+    ElasticityWorkers workers = mSystem.getParallelWorkers();
+    if (workers != null && mIntegratedCount >= mSystem.getParallelThreshold()) {
+      workers.run(mIntegrateTask, mIntegratedCount);
+    } else {
+      integrateRange(0, mIntegratedCount);
+    }
+  }
+
+  private void integrateRange(int from, int to) {
+    double adjustedDeltaTime = mFrameDeltaTime;
+    int[] activeSlots = mActiveSlots;
+    for (int i = from; i < to; i++) {
+      int slot = activeSlots[i];
+      mFrameState[slot] = mCoupled[slot] || !mActive[slot]
+          ? FRAME_SKIPPED : integrate(slot, adjustedDeltaTime);
+    }
+  }
+
+  /**
+   * second pass of {@link #advance(double)}, notifies listeners in activation order and drops the
+   * slots that came to rest from the active list.
+   */
+  @Override
+  public void dispatch() {
+    mFrameIterations = 0;
+    mFrameCallbacks = 0;
+    int advanced = 0;
+    int putToRest = 0;
+    int count = mIntegratedCount;
+
+    // Listeners may activate, deactivate or release springs while they are notified. Newly
+    // activated slots are appended after count, the list is compacted once every listener ran.
+    ElasticityFrame frame = mSystem.getFrame();
+    for (int i = 0; i < count; i++) {
+      int slot = mActiveSlots[i];
+      byte frameState = mFrameState[slot];
+      if (frameState != FRAME_SKIPPED) {
+        advanced++;
+        countSteps(slot, frameState, mFrameDeltaTime);
+      }
+      if ((frameState & FRAME_AT_REST) != 0) {
+        putToRest++;
+      }
+      Spring spring = mSprings[slot];
+      if (spring != null) {
+        notifyListeners(spring, mFrameState[slot]);
+        if (frame != null) {
+          recordFrame(frame, spring, mFrameState[slot]);
+        }
+      }
+    }
+
+    // released slots are dropped before they join the free list below
+    int kept = 0;
+    for (int i = 0; i < mActiveCount; i++) {
+      int slot = mActiveSlots[i];
+      if (!mActive[slot]) {
+        mStaleCount--;
+        mListed[slot] = false;
+      } else if (mSprings[slot] != null && !mCoupled[slot] && (i >= count || shouldAdvance(slot))) {
+        mActiveSlots[kept++] = slot;
+      } else {
+        mActive[slot] = false;
+        mListed[slot] = false;
+      }
+    }
+    mActiveCount = kept;
+    mIntegratedCount = 0;
+    mAdvancing = false;
+
+    if (mPendingFreeCount > 0) {
+      mFreeSlots = ensureCapacity(mFreeSlots, mFreeCount + mPendingFreeCount);
+      System.arraycopy(mPendingFreeSlots, 0, mFreeSlots, mFreeCount, mPendingFreeCount);
+      mFreeCount += mPendingFreeCount;
+      mPendingFreeCount = 0;
+    }
+
+    ElasticityFrameStats stats = mSystem.getFrameStats();
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.ADVANCED, advanced);
+      stats.add(ElasticityFrameStats.PUT_TO_REST, putToRest);
+      stats.add(ElasticityFrameStats.SOLVER_ITERATIONS, mFrameIterations);
+      stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, mFrameCallbacks);
+    }
+  }
+
+  /**
+   * advance a single slot outside of the batch pass, used when a Spring is advanced directly or
+   * by the dependency graph. Its solver steps and callbacks are reported to the frame stats right
+   * away, the counters of a batch pass in progress are left as they were.
+   * @param slot the slot to advance
+   * @param realDeltaTime clock drift in seconds
+   */
+  void advance(int slot, double realDeltaTime) {
+    double adjustedDeltaTime = realDeltaTime;
+    if (realDeltaTime > MAX_DELTA_TIME_SEC) {
+      adjustedDeltaTime = MAX_DELTA_TIME_SEC;
+    }
+    int frameIterations = mFrameIterations;
+    int frameCallbacks = mFrameCallbacks;
+    mCheapSolver = mSystem.isDegraded(ElasticityDegradation.CHEAP_SOLVER);
+    byte frameState = integrate(slot, adjustedDeltaTime);
+    if (frameState != FRAME_SKIPPED) {
+      countSteps(slot, frameState, adjustedDeltaTime);
+    }
+    notifyListeners(mSprings[slot], frameState);
+    ElasticityFrame frame = mSystem.getFrame();
+    if (frame != null) {
+      recordFrame(frame, mSprings[slot], frameState);
+    }
+    ElasticityFrameStats stats = mSystem.getFrameStats();
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.SOLVER_ITERATIONS, mFrameIterations - frameIterations);
+      stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, mFrameCallbacks - frameCallbacks);
+    }
+    mFrameIterations = frameIterations;
+    mFrameCallbacks = frameCallbacks;
+  }
+
+  /**
+   * advance the physics simulation of one slot with the solver selected for it and snap it to its
+   * end value if it came to rest.
+   * @param slot the slot to integrate
+   * @param adjustedDeltaTime clamped clock drift in seconds
+   * @return the FRAME_ flags describing the state transition
+   */
+  private byte integrate(int slot, double adjustedDeltaTime) {
+    boolean isAtRest = isAtRest(slot);
+    if (isAtRest && mWasAtRest[slot]) {
+      return FRAME_SKIPPED;
+    }
+
+    SpringSolver solver = mCheapSolver ? SpringSolver.ANALYTIC : mSolver[slot];
+    if (solver == SpringSolver.ADAPTIVE) {
+      double tolerance = mSolverTolerance[slot];
+      int steps = AdaptiveSpringSolver.advance(
+          mPosition,
+          mVelocity,
+          mAdaptiveStep,
+          slot,
+          mEndValue[slot],
+          mTension[slot],
+          mFriction[slot],
+          tolerance > 0 ? tolerance : mDefaultSolverTolerance,
+          adjustedDeltaTime);
+      mSlotIterations[slot] = steps;
+      mTempPosition[slot] = mPosition[slot];
+      mTempVelocity[slot] = mVelocity[slot];
+      mTimeAccumulator[slot] = 0;
+    } else if (solver == SpringSolver.ANALYTIC) {
+      AnalyticSpringSolver.advance(
+          mPosition,
+          mVelocity,
+          slot,
+          mEndValue[slot],
+          mTension[slot],
+          mFriction[slot],
+          adjustedDeltaTime);
+      mSlotIterations[slot] = 1;
+      // keep the RK4 state coherent in case the spring is switched back to it
+      mTempPosition[slot] = mPosition[slot];
+      mTempVelocity[slot] = mVelocity[slot];
+      mTimeAccumulator[slot] = 0;
+    } else {
+      integrateRk4(slot, adjustedDeltaTime);
+    }
+    byte frameState = settle(slot);
+    return solver == SpringSolver.ADAPTIVE ? (byte) (frameState | FRAME_ADAPTIVE) : frameState;
+  }
+
+  /**
+   * advance the physics simulation of one slot in SOLVER_TIMESTEP_SEC sized chunks to fulfill the
+   * required adjustedDeltaTime.
+   * The math is inlined inside the loop since it made a huge performance impact when there are
+   * several springs being advanced.
+   * @param slot the slot to integrate
+   * @param adjustedDeltaTime clamped clock drift in seconds
+   */
+  private void integrateRk4(int slot, double adjustedDeltaTime) {
+    double timeAccumulator = mTimeAccumulator[slot] + adjustedDeltaTime;
+
+    double tension = mTension[slot];
+    double friction = mFriction[slot];
+    double endValue = mEndValue[slot];
+
+    double position = mPosition[slot];
+    double velocity = mVelocity[slot];
+    double tempPosition = mTempPosition[slot];
+    double tempVelocity = mTempVelocity[slot];
+    double previousPosition = mPreviousPosition[slot];
+    double previousVelocity = mPreviousVelocity[slot];
+
+    double aVelocity, aAcceleration;
+    double bVelocity, bAcceleration;
+    double cVelocity, cAcceleration;
+    double dVelocity, dAcceleration;
+
+    double dxdt, dvdt;
+
+    // iterate over the true time
+    int iterations = 0;
+    while (timeAccumulator >= SOLVER_TIMESTEP_SEC) {
+      iterations++;
+      timeAccumulator -= SOLVER_TIMESTEP_SEC;
+
+      if (timeAccumulator < SOLVER_TIMESTEP_SEC) {
+        // This will be the last iteration. Remember the previous state in case we need to
+        // interpolate
+        previousPosition = position;
+        previousVelocity = velocity;
+      }
+
+      // Perform an RK4 integration to provide better detection of the acceleration curve via
+      // sampling of Euler integrations at 4 intervals feeding each derivative into the calculation
+      // of the next and taking a weighted sum of the 4 derivatives as the final output.
+      aVelocity = velocity;
+      aAcceleration = (tension * (endValue - tempPosition)) - friction * velocity;
+
+      tempPosition = position + aVelocity * SOLVER_TIMESTEP_SEC * 0.5;
+      tempVelocity = velocity + aAcceleration * SOLVER_TIMESTEP_SEC * 0.5;
+      bVelocity = tempVelocity;
+      bAcceleration = (tension * (endValue - tempPosition)) - friction * tempVelocity;
+
+      tempPosition = position + bVelocity * SOLVER_TIMESTEP_SEC * 0.5;
+      tempVelocity = velocity + bAcceleration * SOLVER_TIMESTEP_SEC * 0.5;
+      cVelocity = tempVelocity;
+      cAcceleration = (tension * (endValue - tempPosition)) - friction * tempVelocity;
+
+      tempPosition = position + cVelocity * SOLVER_TIMESTEP_SEC;
+      tempVelocity = velocity + cAcceleration * SOLVER_TIMESTEP_SEC;
+      dVelocity = tempVelocity;
+      dAcceleration = (tension * (endValue - tempPosition)) - friction * tempVelocity;
+
+      // Take the weighted sum of the 4 derivatives as the final output.
+      dxdt = 1.0/6.0 * (aVelocity + 2.0 * (bVelocity + cVelocity) + dVelocity);
+      dvdt = 1.0/6.0 * (aAcceleration + 2.0 * (bAcceleration + cAcceleration) + dAcceleration);
+
+      position += dxdt * SOLVER_TIMESTEP_SEC;
+      velocity += dvdt * SOLVER_TIMESTEP_SEC;
+    }
+
+    if (timeAccumulator > 0) {
+      // linear interpolation between the previous and current physics state based on the amount
+      // of timestep remaining
+      double alpha = timeAccumulator / SOLVER_TIMESTEP_SEC;
+      position = position * alpha + previousPosition * (1 - alpha);
+      velocity = velocity * alpha + previousVelocity * (1 - alpha);
+    }
+
+    mSlotIterations[slot] = iterations;
+    mTimeAccumulator[slot] = timeAccumulator;
+    mTempPosition[slot] = tempPosition;
+    mTempVelocity[slot] = tempVelocity;
+    mPreviousPosition[slot] = previousPosition;
+    mPreviousVelocity[slot] = previousVelocity;
+    mPosition[slot] = position;
+    mVelocity[slot] = velocity;
+  }
+
+  /**
+   * End the spring immediately if it is overshooting and overshoot clamping is enabled. Also make
+   * sure that if the spring was considered within a resting threshold that it's now snapped to its
+   * end value, and work out which transitions the listeners need to hear about.
+   * @param slot the slot that was just integrated
+   * @return the FRAME_ flags describing the state transition
+   */
+  private byte settle(int slot) {
+    boolean isAtRest = false;
+    if (isAtRest(slot) || (mOvershootClampingEnabled[slot] && isOvershooting(slot))) {
+      if (mTension[slot] > 0) {
+        mStartValue[slot] = mEndValue[slot];
+        mPosition[slot] = mEndValue[slot];
+      } else {
+        mEndValue[slot] = mPosition[slot];
+        mStartValue[slot] = mEndValue[slot];
+      }
+      mVelocity[slot] = 0;
+      isAtRest = true;
+    }
+
+    // NB: do these checks outside the loop so all listeners are properly notified of the state
+    //     transition
+    byte frameState = FRAME_ADVANCED;
+    if (mWasAtRest[slot]) {
+      mWasAtRest[slot] = false;
+      frameState |= FRAME_ACTIVATED;
+    }
+    if (isAtRest) {
+      mWasAtRest[slot] = true;
+      frameState |= FRAME_AT_REST;
+    }
+    return frameState;
+  }
+
+  /**
+   * add the solver steps of the last integration of a slot to the frame and solver stats.
+   * @param slot the integrated slot
+   * @param frameState the FRAME_ flags of the integration
+   * @param adjustedDeltaTime clamped clock drift in seconds
+   */
+  private void countSteps(int slot, byte frameState, double adjustedDeltaTime) {
+    int steps = mSlotIterations[slot];
+    mFrameIterations += steps;
+    // not when the adaptive solver was replaced by the closed form for a degraded frame
+    if ((frameState & FRAME_ADAPTIVE) != 0) {
+      mAdaptiveStepCount += steps;
+      mFixedStepEquivalentCount += adjustedDeltaTime / SOLVER_TIMESTEP_SEC;
+    }
+  }
+
+  private void notifyListeners(Spring spring, byte frameState) {
+    if (frameState == FRAME_SKIPPED) {
+      return;
+    }
+    boolean activated = (frameState & FRAME_ACTIVATED) != 0;
+    boolean atRest = (frameState & FRAME_AT_REST) != 0;
+    if (!mSystem.shouldNotify(spring.getHandle(), activated || atRest)) {
+      return;
+    }
+    // starting to move, updated, coming to rest
+    mFrameCallbacks += spring.getListeners().notifyFrame(spring, activated, atRest);
+  }
+
+  private static void recordFrame(ElasticityFrame frame, Spring spring, byte frameState) {
+    if (frameState != FRAME_SKIPPED && spring.getHandle() != BaseElasticitySystem.NO_HANDLE) {
+      frame.record(spring.getHandle(), (frameState & FRAME_ACTIVATED) != 0,
+          (frameState & FRAME_AT_REST) != 0);
+    }
+  }
+
+  /**
+   * Check if a slot should be advanced. The rule is if the spring is currently at rest and it was
+   * at rest in the previous advance, the batch can skip this spring.
+   * @param slot the slot to check
+   * @return should the batch process this slot
+   */
+  boolean shouldAdvance(int slot) {
+    return !isAtRest(slot) || !mWasAtRest[slot];
+  }
+
+  /**
+   * check if the current state of a slot is at rest
+   * @param slot the slot to check
+   * @return is the slot at rest
+   */
+  boolean isAtRest(int slot) {
+    return Math.abs(mVelocity[slot]) <= mRestSpeedThreshold[slot] &&
+        (Math.abs(mEndValue[slot] - mPosition[slot]) <= mDisplacementFromRestThreshold[slot] ||
+         mTension[slot] == 0);
+  }
+
+  /**
+   * Check if the spring of a slot is overshooting beyond its target.
+   * @param slot the slot to check
+   * @return true if the spring is overshooting its target
+   */
+  boolean isOvershooting(int slot) {
+    double startValue = mStartValue[slot];
+    double endValue = mEndValue[slot];
+    double position = mPosition[slot];
+    return mTension[slot] > 0 &&
+           ((startValue < endValue && position > endValue) ||
+           (startValue > endValue && position < endValue));
+  }
+
+  /**
+   * The batch reports through the listeners of its individual springs, listeners added to it are
+   * ignored.
+   */
+  @Override
+  public Elasticity addListener(ElasticityListener newListener) {
+    return this;
+  }
+
+  /**
+   * The batch reports through the listeners of its individual springs.
+   */
+  @Override
+  public Elasticity removeListener(ElasticityListener listenerToRemove) {
+    return this;
+  }
+
+  private void growSlots(int capacity) {
+    mPosition = grow(mPosition, capacity);
+    mVelocity = grow(mVelocity, capacity);
+    mPreviousPosition = grow(mPreviousPosition, capacity);
+    mPreviousVelocity = grow(mPreviousVelocity, capacity);
+    mTempPosition = grow(mTempPosition, capacity);
+    mTempVelocity = grow(mTempVelocity, capacity);
+    mStartValue = grow(mStartValue, capacity);
+    mEndValue = grow(mEndValue, capacity);
+    mTension = grow(mTension, capacity);
+    mFriction = grow(mFriction, capacity);
+    mRestSpeedThreshold = grow(mRestSpeedThreshold, capacity);
+    mDisplacementFromRestThreshold = grow(mDisplacementFromRestThreshold, capacity);
+    mTimeAccumulator = grow(mTimeAccumulator, capacity);
+
+    boolean[] wasAtRest = new boolean[capacity];
+    System.arraycopy(mWasAtRest, 0, wasAtRest, 0, mWasAtRest.length);
+    mWasAtRest = wasAtRest;
+    boolean[] clamping = new boolean[capacity];
+    System.arraycopy(mOvershootClampingEnabled, 0, clamping, 0, mOvershootClampingEnabled.length);
+    mOvershootClampingEnabled = clamping;
+    SpringSolver[] solver = new SpringSolver[capacity];
+    System.arraycopy(mSolver, 0, solver, 0, mSolver.length);
+    mSolver = solver;
+    mSolverTolerance = grow(mSolverTolerance, capacity);
+    mAdaptiveStep = grow(mAdaptiveStep, capacity);
+    boolean[] active = new boolean[capacity];
+    System.arraycopy(mActive, 0, active, 0, mActive.length);
+    mActive = active;
+    boolean[] listed = new boolean[capacity];
+    System.arraycopy(mListed, 0, listed, 0, mListed.length);
+    mListed = listed;
+    boolean[] coupled = new boolean[capacity];
+    System.arraycopy(mCoupled, 0, coupled, 0, mCoupled.length);
+    mCoupled = coupled;
+    byte[] frameState = new byte[capacity];
+    System.arraycopy(mFrameState, 0, frameState, 0, mFrameState.length);
+    mFrameState = frameState;
+    int[] slotIterations = new int[capacity];
+    System.arraycopy(mSlotIterations, 0, slotIterations, 0, mSlotIterations.length);
+    mSlotIterations = slotIterations;
+    Spring[] springs = new Spring[capacity];
+    System.arraycopy(mSprings, 0, springs, 0, mSprings.length);
+    mSprings = springs;
+  }
+
+  private static double[] grow(double[] array, int capacity) {
+    double[] grown = new double[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static int[] ensureCapacity(int[] array, int size) {
+    if (size <= array.length) {
+      return array;
+    }
+    int[] grown = new int[Math.max(size, array.length * 2)];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
@@ -0,0 +1,26 @@
+package com.eebbk.studyos.elasticity.spring;
+
+/**
+ * The integration methods a {@link Spring} can be advanced with.
+ */
+public enum SpringSolver {
+
+  /**
+   * Fixed 1ms RK4 steps with interpolation of the remainder. This is the default and matches the
+   * behavior of rebound.
+   */
+  RK4,
+
+  /**
+   * Closed form solution of the damped harmonic oscillator. Costs the same for any frame length and
+   * is exact for the under-damped, critically damped and over-damped cases.
+   */
+  ANALYTIC,
+
+  /**
+   * Adaptive step Dormand-Prince (RK45) integration. Takes large steps while the motion is smooth
+   * and small ones around fast transients, keeping the local error below the solver tolerance of
+   * the spring.
+   */
+  ADAPTIVE
+}
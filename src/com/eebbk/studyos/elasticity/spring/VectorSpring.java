@@ -0,0 +1,533 @@
+package com.eebbk.studyos.elasticity.spring;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.eebbk.studyos.elasticity.system.BaseElasticitySystem;
+import com.eebbk.studyos.elasticity.system.ElasticityDegradation;
+import com.eebbk.studyos.elasticity.system.ElasticityFrame;
+import com.eebbk.studyos.elasticity.system.ElasticityFrameStats;
+import com.eebbk.studyos.elasticity.system.ElasticityListener;
+import com.eebbk.studyos.elasticity.system.ElasticityListeners;
+import com.eebbk.studyos.elasticity.system.ParallelElasticity;
+
+/**
+ * Spring with several components sharing one {@link SpringConfig}, for example x, y, scale and
+ * alpha of a view. All components are integrated in one pass, the spring is activated and put to
+ * rest as a whole, rest being detected on the norm of the velocity and displacement vectors, and
+ * listeners get a single callback per frame for all components, read with
+ * {@link #getComponents()}.
+ *
+ * As for a single {@link Spring}, each component follows x'' = tension * (end - x) - friction * x',
+ * so a component moves exactly as a Spring with the same config would.
+ */
+public class VectorSpring implements ParallelElasticity {
+
+  // unique incrementer id for vector springs
+  private static final AtomicInteger ID = new AtomicInteger();
+
+  // maximum amount of time to simulate per physics iteration in seconds (4 frames at 60 FPS)
+  private static final double MAX_DELTA_TIME_SEC = 0.064;
+  // fixed timestep to use in the physics solver in seconds
+  private static final double SOLVER_TIMESTEP_SEC = 0.001;
+  // local error tolerance of the adaptive solver, in units of the spring value
+  private static final double DEFAULT_SOLVER_TOLERANCE = 0.001;
+
+  private final BaseElasticitySystem mSystem;
+  private final String mId;
+  private int mHandle = BaseElasticitySystem.NO_HANDLE;
+  private final ElasticityListeners mListeners = new ElasticityListeners();
+  private final int mDimensions;
+  private SpringConfig mSpringConfig;
+  private double mTension;
+  private double mFriction;
+  private SpringSolver mSolver = SpringSolver.RK4;
+
+  // state of each component
+  private final double[] mPosition;
+  private final double[] mVelocity;
+  private final double[] mEndValue;
+  private final double[] mPreviousPosition;
+  private final double[] mPreviousVelocity;
+  private final double[] mTempPosition;
+  private final double[] mTempVelocity;
+  private final double[] mAdaptiveStep;
+  private double mTimeAccumulator;
+
+  private double mRestSpeedThreshold = 0.005;
+  private double mDisplacementFromRestThreshold = 0.005;
+  private boolean mWasAtRest = true;
+  // result of integrate read by dispatch
+  private int mIterations;
+  private boolean mNotifyActivate;
+  private boolean mNotifyAtRest;
+  private boolean mIntegrated;
+
+  /**
+   * create a vector spring resting on 0 in every component
+   * @param system the system advancing it
+   * @param dimensions the number of components
+   */
+  public VectorSpring(BaseElasticitySystem system, int dimensions) {
+    if (system == null) {
+      throw new IllegalArgumentException("VectorSpring cannot be created outside of a BaseSpringSystem");
+    }
+    if (dimensions <= 0) {
+      throw new IllegalArgumentException("dimensions must be positive");
+    }
+    mSystem = system;
+    mId = "vector:" + ID.getAndIncrement();
+    mDimensions = dimensions;
+    mPosition = new double[dimensions];
+    mVelocity = new double[dimensions];
+    mEndValue = new double[dimensions];
+    mPreviousPosition = new double[dimensions];
+    mPreviousVelocity = new double[dimensions];
+    mTempPosition = new double[dimensions];
+    mTempVelocity = new double[dimensions];
+    mAdaptiveStep = new double[dimensions];
+    setSpringConfig(SpringConfig.defaultConfig);
+  }
+
+  /**
+   * Deregister from the system and clear the listeners.
+   */
+  public void destroy() {
+    mListeners.clear();
+    mSystem.deregisterElasticity(this);
+  }
+
+  @Override
+  public String getId() {
+    return mId;
+  }
+
+  @Override
+  public int getHandle() {
+    return mHandle;
+  }
+
+  @Override
+  public void setHandle(int handle) {
+    mHandle = handle;
+  }
+
+  public int getDimensions() {
+    return mDimensions;
+  }
+
+  /**
+   * set the config shared by all components
+   * @param springConfig config class for the spring
+   * @return this object
+   */
+  public VectorSpring setSpringConfig(SpringConfig springConfig) {
+    if (springConfig == null) {
+      throw new IllegalArgumentException("springConfig is required");
+    }
+    mSpringConfig = springConfig;
+    mTension = springConfig.tension;
+    mFriction = springConfig.friction;
+    return this;
+  }
+
+  public SpringConfig getSpringConfig() {
+    return mSpringConfig;
+  }
+
+  /**
+   * Select how the components are integrated, see {@link Spring#setSolver(SpringSolver)}.
+   * @param solver the solver to use
+   * @return this object
+   */
+  public VectorSpring setSolver(SpringSolver solver) {
+    if (solver == null) {
+      throw new IllegalArgumentException("solver is required");
+    }
+    mSolver = solver;
+    return this;
+  }
+
+  public SpringSolver getSolver() {
+    return mSolver;
+  }
+
+  /**
+   * Move every component to a value and put the spring at rest there.
+   * @param values one value per component
+   * @return this object
+   */
+  public VectorSpring setCurrentValues(double[] values) {
+    checkLength(values);
+    for (int i = 0; i < mDimensions; i++) {
+      mPosition[i] = values[i];
+    }
+    setAtRest();
+    mListeners.notifyUpdate(this);
+    return this;
+  }
+
+  /**
+   * Move one component to a value, putting the whole spring at rest.
+   * @param component index of the component
+   * @param value the new value
+   * @return this object
+   */
+  public VectorSpring setCurrentValue(int component, double value) {
+    mPosition[component] = value;
+    setAtRest();
+    mListeners.notifyUpdate(this);
+    return this;
+  }
+
+  /**
+   * set the values the components are pulled towards
+   * @param values one value per component
+   * @return this object
+   */
+  public VectorSpring setEndValues(double[] values) {
+    checkLength(values);
+    for (int i = 0; i < mDimensions; i++) {
+      mEndValue[i] = values[i];
+    }
+    onEndValueChanged();
+    return this;
+  }
+
+  /**
+   * set the value one component is pulled towards
+   * @param component index of the component
+   * @param value the end value
+   * @return this object
+   */
+  public VectorSpring setEndValue(int component, double value) {
+    if (mEndValue[component] == value && isAtRest()) {
+      return this;
+    }
+    mEndValue[component] = value;
+    onEndValueChanged();
+    return this;
+  }
+
+  /**
+   * set the velocities of the components in units per second
+   * @param velocities one velocity per component
+   * @return this object
+   */
+  public VectorSpring setVelocities(double[] velocities) {
+    checkLength(velocities);
+    for (int i = 0; i < mDimensions; i++) {
+      mVelocity[i] = velocities[i];
+    }
+    activate();
+    return this;
+  }
+
+  /**
+   * set the velocity of one component in units per second
+   * @param component index of the component
+   * @param velocity the velocity
+   * @return this object
+   */
+  public VectorSpring setVelocity(int component, double velocity) {
+    mVelocity[component] = velocity;
+    activate();
+    return this;
+  }
+
+  public double getCurrentValue(int component) {
+    return mPosition[component];
+  }
+
+  public double getEndValue(int component) {
+    return mEndValue[component];
+  }
+
+  public double getVelocity(int component) {
+    return mVelocity[component];
+  }
+
+  /**
+   * get the current value of every component, shared with the spring and not to be modified
+   * @return the values
+   */
+  public double[] getComponents() {
+    return mPosition;
+  }
+
+  /**
+   * @return the value of the first component, so a vector spring of one component reads as a
+   *         Spring
+   */
+  @Override
+  public double getValue() {
+    return mPosition[0];
+  }
+
+  /**
+   * @param restSpeedThreshold norm of the velocity vector under which the spring may rest
+   * @return this object
+   */
+  public VectorSpring setRestSpeedThreshold(double restSpeedThreshold) {
+    mRestSpeedThreshold = restSpeedThreshold;
+    return this;
+  }
+
+  public double getRestSpeedThreshold() {
+    return mRestSpeedThreshold;
+  }
+
+  /**
+   * @param displacementFromRestThreshold norm of the displacement from the end values under which
+   *          the spring may rest
+   * @return this object
+   */
+  public VectorSpring setRestDisplacementThreshold(double displacementFromRestThreshold) {
+    mDisplacementFromRestThreshold = displacementFromRestThreshold;
+    return this;
+  }
+
+  public double getRestDisplacementThreshold() {
+    return mDisplacementFromRestThreshold;
+  }
+
+  /**
+   * Set the end values to the current values and the velocities to 0.
+   * @return this object
+   */
+  public VectorSpring setAtRest() {
+    for (int i = 0; i < mDimensions; i++) {
+      mEndValue[i] = mPosition[i];
+      mTempPosition[i] = mPosition[i];
+      mVelocity[i] = 0;
+    }
+    return this;
+  }
+
+  /**
+   * check if the current state is at rest, measured on the norms of the velocity and of the
+   * displacement from the end values
+   * @return is the spring at rest
+   */
+  public boolean isAtRest() {
+    double speed = 0;
+    double displacement = 0;
+    for (int i = 0; i < mDimensions; i++) {
+      double v = mVelocity[i];
+      double d = mEndValue[i] - mPosition[i];
+      speed += v * v;
+      displacement += d * d;
+    }
+    double speedThreshold = mRestSpeedThreshold;
+    double displacementThreshold = mDisplacementFromRestThreshold;
+    return speed <= speedThreshold * speedThreshold &&
+        (displacement <= displacementThreshold * displacementThreshold || mTension == 0);
+  }
+
+  @Override
+  public boolean systemShouldAdvance() {
+    return !isAtRest() || !mWasAtRest;
+  }
+
+  @Override
+  public void advance(double realDeltaTime) {
+    integrate(realDeltaTime);
+    dispatch();
+  }
+
+  @Override
+  public void integrate(double realDeltaTime) {
+    double adjustedDeltaTime = realDeltaTime;
+    if (realDeltaTime > MAX_DELTA_TIME_SEC) {
+      adjustedDeltaTime = MAX_DELTA_TIME_SEC;
+    }
+    if (isAtRest() && mWasAtRest) {
+      mIntegrated = false;
+      return;
+    }
+    mIntegrated = true;
+    if (mSolver == SpringSolver.ANALYTIC
+        || mSystem.isDegraded(ElasticityDegradation.CHEAP_SOLVER)) {
+      for (int i = 0; i < mDimensions; i++) {
+        AnalyticSpringSolver.advance(mPosition, mVelocity, i, mEndValue[i], mTension, mFriction,
+            adjustedDeltaTime);
+      }
+      mIterations = 1;
+      resetRk4State();
+    } else if (mSolver == SpringSolver.ADAPTIVE) {
+      int steps = 0;
+      for (int i = 0; i < mDimensions; i++) {
+        steps += AdaptiveSpringSolver.advance(mPosition, mVelocity, mAdaptiveStep, i,
+            mEndValue[i], mTension, mFriction, DEFAULT_SOLVER_TOLERANCE, adjustedDeltaTime);
+      }
+      mIterations = steps;
+      resetRk4State();
+    } else {
+      integrateRk4(adjustedDeltaTime);
+    }
+
+    boolean isAtRest = false;
+    if (isAtRest()) {
+      for (int i = 0; i < mDimensions; i++) {
+        if (mTension > 0) {
+          mPosition[i] = mEndValue[i];
+        } else {
+          mEndValue[i] = mPosition[i];
+        }
+        mVelocity[i] = 0;
+      }
+      isAtRest = true;
+    }
+    mNotifyActivate = mWasAtRest;
+    mWasAtRest = isAtRest;
+    mNotifyAtRest = isAtRest;
+  }
+
+  /**
+   * advance every component in SOLVER_TIMESTEP_SEC sized RK4 steps sharing one time accumulator,
+   * with the same interpolation of the remainder as {@link SpringBatch}
+   */
+  private void integrateRk4(double adjustedDeltaTime) {
+    double timeAccumulator = mTimeAccumulator + adjustedDeltaTime;
+    double tension = mTension;
+    double friction = mFriction;
+    // count the steps the same way as SpringBatch so both stay in sync
+    int iterations = 0;
+    while (timeAccumulator >= SOLVER_TIMESTEP_SEC) {
+      iterations++;
+      timeAccumulator -= SOLVER_TIMESTEP_SEC;
+    }
+    double alpha = timeAccumulator > 0 ? timeAccumulator / SOLVER_TIMESTEP_SEC : 1;
+    for (int i = 0; i < mDimensions; i++) {
+      double endValue = mEndValue[i];
+      double position = mPosition[i];
+      double velocity = mVelocity[i];
+      double tempPosition = mTempPosition[i];
+      double tempVelocity = mTempVelocity[i];
+      double previousPosition = mPreviousPosition[i];
+      double previousVelocity = mPreviousVelocity[i];
+      for (int step = 0; step < iterations; step++) {
+        if (step == iterations - 1) {
+          previousPosition = position;
+          previousVelocity = velocity;
+        }
+        double aVelocity = velocity;
+        double aAcceleration = (tension * (endValue - tempPosition)) - friction * velocity;
+
+        tempPosition = position + aVelocity * SOLVER_TIMESTEP_SEC * 0.5;
+        tempVelocity = velocity + aAcceleration * SOLVER_TIMESTEP_SEC * 0.5;
+        double bVelocity = tempVelocity;
+        double bAcceleration = (tension * (endValue - tempPosition)) - friction * tempVelocity;
+
+        tempPosition = position + bVelocity * SOLVER_TIMESTEP_SEC * 0.5;
+        tempVelocity = velocity + bAcceleration * SOLVER_TIMESTEP_SEC * 0.5;
+        double cVelocity = tempVelocity;
+        double cAcceleration = (tension * (endValue - tempPosition)) - friction * tempVelocity;
+
+        tempPosition = position + cVelocity * SOLVER_TIMESTEP_SEC;
+        tempVelocity = velocity + cAcceleration * SOLVER_TIMESTEP_SEC;
+        double dVelocity = tempVelocity;
+        double dAcceleration = (tension * (endValue - tempPosition)) - friction * tempVelocity;
+
+        double dxdt = 1.0/6.0 * (aVelocity + 2.0 * (bVelocity + cVelocity) + dVelocity);
+        double dvdt = 1.0/6.0 * (aAcceleration + 2.0 * (bAcceleration + cAcceleration) + dAcceleration);
+
+        position += dxdt * SOLVER_TIMESTEP_SEC;
+        velocity += dvdt * SOLVER_TIMESTEP_SEC;
+      }
+      if (timeAccumulator > 0) {
+        position = position * alpha + previousPosition * (1 - alpha);
+        velocity = velocity * alpha + previousVelocity * (1 - alpha);
+      }
+      mPosition[i] = position;
+      mVelocity[i] = velocity;
+      mTempPosition[i] = tempPosition;
+      mTempVelocity[i] = tempVelocity;
+      mPreviousPosition[i] = previousPosition;
+      mPreviousVelocity[i] = previousVelocity;
+    }
+    mTimeAccumulator = timeAccumulator;
+    mIterations = iterations * mDimensions;
+  }
+
+  /**
+   * keep the RK4 state coherent in case the spring is switched back to it
+   */
+  private void resetRk4State() {
+    for (int i = 0; i < mDimensions; i++) {
+      mTempPosition[i] = mPosition[i];
+      mTempVelocity[i] = mVelocity[i];
+    }
+    mTimeAccumulator = 0;
+  }
+
+  @Override
+  public void dispatch() {
+    if (!mIntegrated) {
+      return;
+    }
+    mIntegrated = false;
+    boolean notifyActivate = mNotifyActivate;
+    boolean notifyAtRest = mNotifyAtRest;
+    int callbacks = 0;
+    if (mSystem.shouldNotify(mHandle, notifyActivate || notifyAtRest)) {
+      callbacks = mListeners.notifyFrame(this, notifyActivate, notifyAtRest);
+    }
+    ElasticityFrame frame = mSystem.getFrame();
+    if (frame != null) {
+      frame.record(mHandle, notifyActivate, notifyAtRest);
+    }
+    ElasticityFrameStats stats = mSystem.getFrameStats();
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.SOLVER_ITERATIONS, mIterations);
+      stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, callbacks);
+    }
+  }
+
+  @Override
+  public VectorSpring addListener(ElasticityListener newListener) {
+    if (newListener == null) {
+      throw new IllegalArgumentException("newListener is required");
+    }
+    mListeners.add(newListener);
+    return this;
+  }
+
+  @Override
+  public VectorSpring removeListener(ElasticityListener listenerToRemove) {
+    if (listenerToRemove == null) {
+      throw new IllegalArgumentException("listenerToRemove is required");
+    }
+    mListeners.remove(listenerToRemove);
+    return this;
+  }
+
+  /**
+   * remove all of the listeners
+   * @return this object
+   */
+  public VectorSpring removeAllListeners() {
+    mListeners.clear();
+    return this;
+  }
+
+  private void onEndValueChanged() {
+    activate();
+    mListeners.notifyEndStateChange(this);
+  }
+
+  private void activate() {
+    // the motion is about to change abruptly, let the adaptive solver start with small steps again
+    for (int i = 0; i < mDimensions; i++) {
+      mAdaptiveStep[i] = 0;
+    }
+    if (mHandle != BaseElasticitySystem.NO_HANDLE) {
+      mSystem.activateElasticity(mHandle);
+    }
+  }
+
+  private void checkLength(double[] values) {
+    if (values == null || values.length != mDimensions) {
+      throw new IllegalArgumentException("expected " + mDimensions + " values");
+    }
+  }
+}
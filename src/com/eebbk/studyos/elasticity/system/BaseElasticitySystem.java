@@ -16,11 +16,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 
-import android.util.Log;
-
 /**
  * BaseSpringSystem maintains the set of springs within an Application context. It is responsible for
  * Running the spring integration loop and maintains a registry of all the Springs it solves for.
@@ -29,11 +27,101 @@ import android.util.Log;
  */
 public class BaseElasticitySystem {
 
+  /**
+   * Handle of an elasticity that isn't registered with a system.
+   */
+  public static final int NO_HANDLE = -1;
+
+  // a handle packs the slot index of the elasticity with the generation of that slot, so handles of
+  // deregistered elasticities are rejected once their slot is reused
+  private static final int HANDLE_INDEX_BITS = 24;
+  static final int HANDLE_INDEX_MASK = (1 << HANDLE_INDEX_BITS) - 1;
+  private static final int HANDLE_GENERATION_MASK = 0x7f;
+  private static final int INITIAL_CAPACITY = 16;
+  /** default active count from which the system integrates in parallel once workers are set */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 512;
+  // position of a slot activated during a frame and waiting in mPendingActivations
+  private static final int PENDING_ACTIVATION = -2;
+  private static final byte INTEGRATE_PENDING = 0;
+  private static final byte INTEGRATE_DONE = 1;
+  private static final byte INTEGRATE_AT_REST = 2;
+  private static final ElasticitySystemListener[] NO_LISTENERS = new ElasticitySystemListener[0];
+  /** default time the looper keeps running once the system is idle, 250ms */
+  public static final long DEFAULT_IDLE_GRACE_PERIOD_NANOS = 250000000L;
+  // elasticities processed between two reads of the clock while a frame budget is set
+  private static final int BUDGET_CHECK_MASK = 15;
+  // frames under three quarters of the budget after which one degradation stage is lifted
+  private static final int RECOVERY_FRAMES = 30;
+
   private final Map<String, Elasticity> mElasticityRegistry = new HashMap<String, Elasticity>();
-  private final Set<Elasticity> mActiveElasticity = new CopyOnWriteArraySet<Elasticity>();
+  // elasticities driving others, such as the spring batch, kept out of the registry
+  private final Map<String, Elasticity> mInternalRegistry = new HashMap<String, Elasticity>();
   private final ElasticityLooper mElasticityLooper;
   private final CopyOnWriteArraySet<ElasticitySystemListener> mListeners = new CopyOnWriteArraySet<ElasticitySystemListener>();
+  // snapshot of mListeners iterated by the frame loop, replaced whenever the set changes
+  private ElasticitySystemListener[] mListenerArray = NO_LISTENERS;
   private boolean mIdle = true;
+  // the looper was started and not stopped since, activations don't need to start it again
+  private boolean mLooperRunning;
+  private long mIdleGracePeriodNanos = DEFAULT_IDLE_GRACE_PERIOD_NANOS;
+  // time looped since the system became idle
+  private long mIdleNanos;
+  // commands posted from other threads, run at the start of the next frame
+  private final ConcurrentLinkedQueue<Runnable> mCommands = new ConcurrentLinkedQueue<Runnable>();
+  private long mLastFrameNanos;
+  // sum of the frame deltas, the time of the system's own timeline
+  private long mTimeNanos;
+  // recorded only while at least one ElasticityFrameListener is registered
+  private ElasticityFrame mFrame;
+  private int mFrameListenerCount;
+  // registered elasticities by slot
+  private Elasticity[] mSlots = new Elasticity[INITIAL_CAPACITY];
+  private int[] mGenerations = new int[INITIAL_CAPACITY];
+  private boolean[] mInternal = new boolean[INITIAL_CAPACITY];
+  private int mSlotCount;
+  private int[] mFreeSlots = new int[INITIAL_CAPACITY];
+  private int mFreeCount;
+  // dense list of active slots with the position of each slot in it, -1 if it isn't listed. The
+  // active flag is also set for slots waiting in mPendingActivations. Slots deactivated during a
+  // frame stay listed, without the flag, until the loop drops them.
+  private int[] mActiveSlots = new int[INITIAL_CAPACITY];
+  private int mActiveCount;
+  private int[] mActivePositions = new int[INITIAL_CAPACITY];
+  private boolean[] mActive = new boolean[INITIAL_CAPACITY];
+  // mutations requested while advancing, applied at the end of the frame
+  private boolean mAdvancing;
+  private int[] mPendingActivations = new int[INITIAL_CAPACITY];
+  private int mPendingActivationCount;
+  private int[] mPendingReleases = new int[INITIAL_CAPACITY];
+  private int mPendingReleaseCount;
+  // parallel integration, mIntegrateState is indexed by slot and reset during dispatch
+  private ElasticityWorkers mWorkers;
+  private int mParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+  private byte[] mIntegrateState = new byte[INITIAL_CAPACITY];
+  private double mIntegrateDeltaTime;
+  private final ElasticityWorkers.RangeTask mIntegrateTask = new ElasticityWorkers.RangeTask() {
+    @Override
+    public void run(int from, int to) {
+      integrateRange(from, to);
+    }
+  };
+  private ElasticityFrameStats mFrameStats;
+  // dependency graph of the coupled elasticities, created by the first coupling
+  private ElasticityGraph mGraph;
+  private int[] mDecoupledSlots;
+  // frame budget, 0 when disabled, and the degradation stage it led to
+  private long mFrameBudgetNanos;
+  private ElasticityDegradation mDegradation = ElasticityDegradation.NONE;
+  private ElasticityDegradationListener mDegradationListener;
+  private long mFrameStartNanos;
+  private long mLastFrameCostNanos;
+  // the stage was raised during the current frame, at most once per frame
+  private boolean mDegradedThisFrame;
+  private int mUnderBudgetFrames;
+  private int mBudgetChecks;
+  // by slot, low priority elasticities and update notifications deferred to the next frame
+  private boolean[] mLowPriority = new boolean[INITIAL_CAPACITY];
+  private boolean[] mNotificationDeferred = new boolean[INITIAL_CAPACITY];
 
   /**
    * create a new BaseSpringSystem
@@ -46,16 +134,28 @@ public class BaseElasticitySystem {
     }
     mElasticityLooper = looper;
     mElasticityLooper.setSpringSystem(this);
+    for (int i = 0; i < INITIAL_CAPACITY; i++) {
+      mActivePositions[i] = -1;
+    }
   }
 
   /**
-   * check if the system is idle
+   * check if the system is idle. The looper keeps running for the idle grace period afterwards, see
+   * {@link #setIdleGracePeriodNanos(long)}.
    * @return is the system idle
    */
   public boolean getIsIdle() {
     return mIdle;
   }
 
+  /**
+   * get the number of elasticities advanced by the system on the next frame
+   * @return the active elasticity count
+   */
+  public int getActiveCount() {
+    return mGraph != null ? mActiveCount + mGraph.getActiveCount() : mActiveCount;
+  }
+
   /**
    * create a spring with a random uuid for its name.
    * @return the spring
@@ -67,7 +167,21 @@ public class BaseElasticitySystem {
   }
 
   /**
-   * get a spring by name
+   * get an elasticity by its handle
+   * @param handle handle of the elasticity to retrieve
+   * @return the elasticity or null if the handle doesn't reference a registered elasticity
+   */
+  public Elasticity getElasticity(int handle) {
+    int index = handle & HANDLE_INDEX_MASK;
+    if (handle < 0 || index >= mSlotCount || mGenerations[index] != handle >>> HANDLE_INDEX_BITS
+        || mInternal[index]) {
+      return null;
+    }
+    return mSlots[index];
+  }
+
+  /**
+   * get a spring by name. Ids are debug labels, use the handle of the elasticity on hot paths.
    * @param id id of the spring to retrieve
    * @return Spring with the specified key
    */
@@ -101,14 +215,107 @@ public class BaseElasticitySystem {
     if (elasticity == null) {
       throw new IllegalArgumentException("spring is required");
     }
-    if (mElasticityRegistry.containsKey(elasticity.getId())) {
+    if (elasticity.getHandle() != NO_HANDLE || mElasticityRegistry.containsKey(elasticity.getId())) {
       throw new IllegalArgumentException("spring is already registered"); }
     mElasticityRegistry.put(elasticity.getId(), elasticity);
+    allocateSlot(elasticity, false);
+  }
+
+  /**
+   * Register an elasticity that drives other elasticities, such as the batch advancing every
+   * Spring of the system. It gets a handle and is advanced like the others, but stays out of
+   * {@link #getAllElasticity()}, the id and handle lookups and the snapshots, and can't be
+   * deregistered or coupled.
+   * @param elasticity the elasticity to register
+   * @return the elasticity
+   */
+  public Elasticity registerInternalElasticity(Elasticity elasticity) {
+    if (elasticity == null) {
+      throw new IllegalArgumentException("elasticity is required");
+    }
+    if (elasticity.getHandle() != NO_HANDLE || mInternalRegistry.containsKey(elasticity.getId())) {
+      throw new IllegalArgumentException("elasticity is already registered");
+    }
+    mInternalRegistry.put(elasticity.getId(), elasticity);
+    allocateSlot(elasticity, true);
+    return elasticity;
+  }
+
+  /**
+   * @param id id of the internal elasticity to retrieve
+   * @return the elasticity registered with {@link #registerInternalElasticity(Elasticity)} under
+   *         that id, or null
+   */
+  public Elasticity getInternalElasticity(String id) {
+    if (id == null) {
+      throw new IllegalArgumentException("id is required");
+    }
+    return mInternalRegistry.get(id);
+  }
+
+  private void allocateSlot(Elasticity elasticity, boolean internal) {
+    int index;
+    if (mFreeCount > 0) {
+      index = mFreeSlots[--mFreeCount];
+    } else {
+      if (mSlotCount == mSlots.length) {
+        growSlots(mSlotCount * 2);
+      }
+      index = mSlotCount++;
+    }
+    mSlots[index] = elasticity;
+    mInternal[index] = internal;
+    mLowPriority[index] = false;
+    mNotificationDeferred[index] = false;
+    elasticity.setHandle((mGenerations[index] << HANDLE_INDEX_BITS) | index);
+  }
+
+  /**
+   * Create a pool of recyclable elasticities registered with this system.
+   * @param factory creates the elasticities of the pool
+   * @return the pool
+   */
+  public <T extends RecyclableElasticity> ElasticityPool<T> createPool(
+      ElasticityPool.Factory<T> factory) {
+    return new ElasticityPool<T>(this, factory, ElasticityPool.DEFAULT_MAX_FREE);
+  }
+
+  /**
+   * Create a pool of recyclable elasticities registered with this system.
+   * @param factory creates the elasticities of the pool
+   * @param maxFree the number of released elasticities kept for reuse
+   * @return the pool
+   */
+  public <T extends RecyclableElasticity> ElasticityPool<T> createPool(
+      ElasticityPool.Factory<T> factory, int maxFree) {
+    return new ElasticityPool<T>(this, factory, maxFree);
+  }
+
+  /**
+   * Register several elasticities at once.
+   * @param elasticities the elasticities to register
+   * @return the handles of the elasticities, in the same order
+   */
+  public int[] registerElasticities(Elasticity... elasticities) {
+    if (elasticities == null) {
+      throw new IllegalArgumentException("elasticities are required");
+    }
+    int required = mSlotCount - mFreeCount + elasticities.length;
+    if (required > mSlots.length) {
+      growSlots(Math.max(required, mSlots.length * 2));
+    }
+    int[] handles = new int[elasticities.length];
+    for (int i = 0; i < elasticities.length; i++) {
+      registerElasticity(elasticities[i]);
+      handles[i] = elasticities[i].getHandle();
+    }
+    return handles;
   }
 
   /**
    * Deregisters a Spring from this BaseSpringSystem, so it won't be iterated anymore. The Spring should
-   * not be used anymore after doing this.
+   * not be used anymore after doing this. When called while the system advances, the handle is
+   * invalidated right away and the slot is released at the end of the frame.
    *
    * @param elasticity the Spring to deregister
    */
@@ -116,65 +323,803 @@ public class BaseElasticitySystem {
     if (elasticity == null) {
       throw new IllegalArgumentException("spring is required");
     }
-    mActiveElasticity.remove(elasticity);
+    int handle = elasticity.getHandle();
+    if (getElasticity(handle) != elasticity) {
+      // never registered with this system
+      return;
+    }
+    int index = handle & HANDLE_INDEX_MASK;
+    if (mGraph != null && mGraph.contains(index)) {
+      mGraph.deactivate(index);
+      int count = mGraph.removeNode(index, mDecoupledSlots);
+      leaveGraph(count);
+    }
     mElasticityRegistry.remove(elasticity.getId());
+    mSlots[index] = null;
+    mGenerations[index] = (mGenerations[index] + 1) & HANDLE_GENERATION_MASK;
+    elasticity.setHandle(NO_HANDLE);
+    if (mAdvancing) {
+      mPendingReleases[mPendingReleaseCount++] = index;
+    } else {
+      releaseSlot(index);
+    }
+  }
+
+  private void releaseSlot(int index) {
+    if (mActivePositions[index] >= 0) {
+      removeActiveAt(mActivePositions[index]);
+    }
+    mActive[index] = false;
+    mFreeSlots[mFreeCount++] = index;
   }
 
   /**
-   * update the springs in the system
-   * @param deltaTime delta since last update in millis
+   * Deregister several elasticities at once.
+   * @param elasticities the elasticities to deregister
+   */
+  public void deregisterElasticities(Elasticity... elasticities) {
+    if (elasticities == null) {
+      throw new IllegalArgumentException("elasticities are required");
+    }
+    for (Elasticity elasticity : elasticities) {
+      deregisterElasticity(elasticity);
+    }
+  }
+
+  /**
+   * update the springs in the system. Elasticities that no longer need advancing are swapped out of
+   * the active list as they are found, activations and deregistrations requested by listeners
+   * during the pass are applied once it is done.
+   *
+   * With workers set and at least the parallel threshold of elasticities active, every
+   * {@link ParallelElasticity} is integrated on the workers first, then the list is walked on this
+   * thread in the same order as the serial pass to dispatch them and advance the others.
+   *
+   * Coupled elasticities are then advanced by the dependency graph, see
+   * {@link #couple(Elasticity, Elasticity, ElasticityCoupling)}.
+   * @param deltaTime delta since last update in seconds
    */
   void advance(double deltaTime) {
-	  Log.v("djh","elasticity.deltaTime()");
-    for (Elasticity elasticity : mActiveElasticity) {
-  	  Log.v("djh","elasticity.mActiveElasticity()");
-      if (elasticity.systemShouldAdvance()) {
-    		Log.v("djh","elasticity.systemShouldAdvance()");
-        elasticity.advance(deltaTime / 1000.0);
+    int advanced = 0;
+    int putToRest = 0;
+    mAdvancing = true;
+    ElasticityWorkers workers = mWorkers;
+    if (workers != null && mActiveCount >= mParallelThreshold) {
+      mIntegrateDeltaTime = deltaTime;
+      workers.run(mIntegrateTask, mActiveCount);
+    }
+    boolean budgeted = mFrameBudgetNanos > 0;
+    int i = 0;
+    while (i < mActiveCount) {
+      if (budgeted && (++mBudgetChecks & BUDGET_CHECK_MASK) == 0) {
+        checkFrameBudget();
+      }
+      int index = mActiveSlots[i];
+      Elasticity elasticity = mSlots[index];
+      byte integrateState = mIntegrateState[index];
+      mIntegrateState[index] = INTEGRATE_PENDING;
+      if (elasticity == null) {
+        // deregistered during this pass, dropped with the pending releases
+        i++;
+      } else if (!mActive[index]) {
+        // deactivated during this pass
+        removeActiveAt(i);
+        putToRest++;
+      } else if (integrateState == INTEGRATE_DONE) {
+        ((ParallelElasticity) elasticity).dispatch();
+        advanced++;
+        i++;
+      } else if (integrateState != INTEGRATE_AT_REST && elasticity.systemShouldAdvance()) {
+        elasticity.advance(deltaTime);
+        advanced++;
+        i++;
       } else {
-        mActiveElasticity.remove(elasticity);
+        // the last active slot is swapped into i and processed next
+        removeActiveAt(i);
+        mActive[index] = false;
+        putToRest++;
+      }
+    }
+    ElasticityGraph graph = mGraph;
+    if (graph != null && graph.getActiveCount() > 0) {
+      graph.evaluate(deltaTime);
+      advanced += graph.getAdvancedCount();
+      putToRest += graph.getPutToRestCount();
+    }
+    mAdvancing = false;
+
+    for (int j = 0; j < mPendingReleaseCount; j++) {
+      releaseSlot(mPendingReleases[j]);
+    }
+    mPendingReleaseCount = 0;
+    for (int j = 0; j < mPendingActivationCount; j++) {
+      int index = mPendingActivations[j];
+      if (mActive[index]) {
+        appendActive(index);
+      } else {
+        mActivePositions[index] = -1;
+      }
+    }
+    mPendingActivationCount = 0;
+
+    ElasticityFrameStats stats = mFrameStats;
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.ADVANCED, advanced);
+      stats.add(ElasticityFrameStats.PUT_TO_REST, putToRest);
+    }
+  }
+
+  private void integrateRange(int from, int to) {
+    double deltaTime = mIntegrateDeltaTime;
+    for (int i = from; i < to; i++) {
+      int index = mActiveSlots[i];
+      Elasticity elasticity = mSlots[index];
+      if (elasticity instanceof ParallelElasticity) {
+        if (elasticity.systemShouldAdvance()) {
+          ((ParallelElasticity) elasticity).integrate(deltaTime);
+          mIntegrateState[index] = INTEGRATE_DONE;
+        } else {
+          mIntegrateState[index] = INTEGRATE_AT_REST;
+        }
       }
     }
   }
 
   /**
-   * loop the system until idle
-   * @param elapsedMillis elapsed milliseconds
+   * Set the workers used to integrate large active populations in parallel. Workers can be shared
+   * between systems looped on the same thread.
+   * @param workers the workers or null to always advance serially
+   */
+  public void setParallelWorkers(ElasticityWorkers workers) {
+    mWorkers = workers;
+  }
+
+  /**
+   * @return the workers used for parallel integration or null
+   */
+  public ElasticityWorkers getParallelWorkers() {
+    return mWorkers;
+  }
+
+  /**
+   * Set the number of active elasticities from which a frame is integrated in parallel. A
+   * SpringBatch uses the same threshold for the springs it holds.
+   * @param threshold minimum active count, {@link #DEFAULT_PARALLEL_THRESHOLD} by default
+   */
+  public void setParallelThreshold(int threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("threshold must be positive");
+    }
+    mParallelThreshold = threshold;
+  }
+
+  /**
+   * @return the number of active elasticities from which a frame is integrated in parallel
+   */
+  public int getParallelThreshold() {
+    return mParallelThreshold;
+  }
+
+  /**
+   * loop the system until idle. Loopers get the delta from a {@link FrameClock} fed with the vsync
+   * timestamps, so it is free of timestamp jitter.
+   * @param elapsedNanos elapsed nanoseconds since the last frame
    */
-  public void loop(double elapsedMillis) {
-    for (ElasticitySystemListener listener : mListeners) {
-      listener.onBeforeIntegrate(this);
+  public void loop(long elapsedNanos) {
+    if (elapsedNanos < 0) {
+      throw new IllegalArgumentException("elapsedNanos must not be negative");
+    }
+    if (mFrameBudgetNanos > 0) {
+      mFrameStartNanos = System.nanoTime();
+    }
+    mLastFrameNanos = elapsedNanos;
+    mTimeNanos += elapsedNanos;
+    mLooperRunning = true;
+    runCommands();
+    ElasticityFrameStats stats = mFrameStats;
+    long phaseStart = 0;
+    if (stats != null) {
+      stats.beginFrame(elapsedNanos);
+      stats.add(ElasticityFrameStats.LISTENER_CALLBACKS, 2 * mListenerArray.length);
+      phaseStart = System.nanoTime();
+    }
+    ElasticitySystemListener[] listeners = mListenerArray;
+    for (int i = 0; i < listeners.length; i++) {
+      listeners[i].onBeforeIntegrate(this);
+    }
+    if (stats != null) {
+      long now = System.nanoTime();
+      stats.add(ElasticityFrameStats.BEFORE_INTEGRATE_NANOS, now - phaseStart);
+      phaseStart = now;
     }
-    advance(elapsedMillis);
-    if (mActiveElasticity.isEmpty()) {
+    ElasticityFrame frame = getFrame();
+    if (frame != null) {
+      frame.clear();
+    }
+    advance(elapsedNanos / 1e9);
+    if (getActiveCount() == 0) {
       mIdle = true;
     }
-    for (ElasticitySystemListener listener : mListeners) {
-      listener.onAfterIntegrate(this);
+    if (stats != null) {
+      long now = System.nanoTime();
+      stats.add(ElasticityFrameStats.ADVANCE_NANOS, now - phaseStart);
+      phaseStart = now;
+    }
+    listeners = mListenerArray;
+    for (int i = 0; i < listeners.length; i++) {
+      listeners[i].onAfterIntegrate(this);
+    }
+    if (stats != null) {
+      stats.add(ElasticityFrameStats.AFTER_INTEGRATE_NANOS, System.nanoTime() - phaseStart);
     }
-    if (mIdle) {
+    if (mFrameBudgetNanos > 0) {
+      endBudgetFrame();
+    }
+    if (!mIdle) {
+      mIdleNanos = 0;
+    } else if (mIdleNanos >= mIdleGracePeriodNanos) {
+      mIdleNanos = 0;
+      mLooperRunning = false;
+      // the next animation starts without degradation
+      mUnderBudgetFrames = 0;
+      setDegradation(ElasticityDegradation.NONE, mLastFrameCostNanos);
       mElasticityLooper.stop();
+      // a command posted while the looper was still running did not restart it
+      if (!mCommands.isEmpty()) {
+        mLooperRunning = true;
+        mElasticityLooper.start();
+      }
+    } else {
+      // keep looping idle frames for a while, an activation then needs no restart
+      mIdleNanos += elapsedNanos;
+    }
+  }
+
+  /**
+   * Set how long the looper keeps running once the system is idle before it is stopped. Frequent
+   * short animations, such as the feedback of taps, then don't stop and restart the looper every
+   * time. Idle frames only call the system listeners.
+   * @param gracePeriodNanos the grace period in nanoseconds, 0 to stop on the first idle frame
+   */
+  public void setIdleGracePeriodNanos(long gracePeriodNanos) {
+    if (gracePeriodNanos < 0) {
+      throw new IllegalArgumentException("gracePeriodNanos must not be negative");
+    }
+    mIdleGracePeriodNanos = gracePeriodNanos;
+  }
+
+  /**
+   * @return how long the looper keeps running once the system is idle, in nanoseconds
+   */
+  public long getIdleGracePeriodNanos() {
+    return mIdleGracePeriodNanos;
+  }
+
+  /**
+   * Mark the system as busy and start the looper unless it is already running, so every
+   * activation of a frame or of an idle grace period shares one start.
+   */
+  private void wake() {
+    mIdle = false;
+    if (!mLooperRunning) {
+      mLooperRunning = true;
+      mElasticityLooper.start();
+    }
+  }
+
+  private void runCommands() {
+    Runnable command;
+    while ((command = mCommands.poll()) != null) {
+      command.run();
     }
   }
 
+  /**
+   * Run a command on the looper thread at the start of the next frame, for systems looped on
+   * their own thread such as one driven by a {@link HeadlessElasticityLooper}. Changes like
+   * setEndValue made from other threads should be posted. The looper is started if needed, so
+   * its start method must be safe to call from the posting thread.
+   * @param command the command to run
+   */
+  public void post(Runnable command) {
+    if (command == null) {
+      throw new IllegalArgumentException("command is required");
+    }
+    mCommands.offer(command);
+    mElasticityLooper.start();
+  }
+
+  /**
+   * @return the elapsed time the last frame was looped with, in nanoseconds
+   */
+  public long getLastFrameNanos() {
+    return mLastFrameNanos;
+  }
+
+  /**
+   * @return the sum of the elapsed times of every frame looped so far, in nanoseconds
+   */
+  public long getTimeNanos() {
+    return mTimeNanos;
+  }
+
+  int getSlotCount() {
+    return mSlotCount;
+  }
+
+  /**
+   * @return the elasticity of a slot, null for free and internal slots
+   */
+  Elasticity getSlot(int index) {
+    return mInternal[index] ? null : mSlots[index];
+  }
+
   /**
    * This is used internally by the {@link Elasticity}s created by this {@link AnimattionSystem} to notify
    * it has reached a state where it needs to be iterated. This will add the spring to the list of
    * active springs on this system and start the iteration if the system was idle before this call.
-   * @param springId the id of the Spring to be activated
+   * Activating an elasticity that is already active only reads its flag. Elasticities activated
+   * while the system advances join the active list at the end of the frame, coupled elasticities
+   * are advanced by the dependency graph instead.
+   * @param handle the handle of the elasticity to be activated
+   */
+  public void activateElasticity(int handle) {
+    int index = handle & HANDLE_INDEX_MASK;
+    if (handle < 0 || index >= mSlotCount || mGenerations[index] != handle >>> HANDLE_INDEX_BITS) {
+      throw new IllegalArgumentException("handle " + handle + " does not reference a registered spring");
+    }
+    if (mGraph != null && mGraph.contains(index)) {
+      mGraph.activate(index);
+    } else if (!mActive[index]) {
+      mActive[index] = true;
+      // a slot deactivated earlier in this frame may still be listed or pending
+      if (mActivePositions[index] == -1) {
+        if (mAdvancing) {
+          mActivePositions[index] = PENDING_ACTIVATION;
+          mPendingActivations[mPendingActivationCount++] = index;
+        } else {
+          appendActive(index);
+        }
+      }
+    }
+    wake();
+  }
+
+  /**
+   * Stop advancing an elasticity without deregistering it, for example when it is recycled. An
+   * elasticity deactivated while the system advances is dropped from the active list when it is
+   * reached, or on the next frame if it was already advanced.
+   * @param handle the handle of the elasticity to deactivate
+   */
+  public void deactivateElasticity(int handle) {
+    int index = handle & HANDLE_INDEX_MASK;
+    if (handle < 0 || index >= mSlotCount || mGenerations[index] != handle >>> HANDLE_INDEX_BITS) {
+      throw new IllegalArgumentException("handle " + handle + " does not reference a registered spring");
+    }
+    if (mGraph != null && mGraph.contains(index)) {
+      mGraph.deactivate(index);
+      return;
+    }
+    if (!mActive[index]) {
+      return;
+    }
+    mActive[index] = false;
+    if (!mAdvancing && mActivePositions[index] >= 0) {
+      removeActiveAt(mActivePositions[index]);
+    }
+  }
+
+  /**
+   * Activate an elasticity by its id. This goes through the id registry, elasticities should use
+   * {@link #activateElasticity(int)} with their handle instead.
+   * @param id the id of the Spring to be activated
    */
   public void activateElasticity(String id) {
     Elasticity spring = mElasticityRegistry.get(id);
     if (spring == null) {
       throw new IllegalArgumentException("id " + id + " does not reference a registered spring");
     }
-    mActiveElasticity.add(spring);
-    if (getIsIdle()) {
-      mIdle = false;
-      mElasticityLooper.start();
+    activateElasticity(spring.getHandle());
+  }
+
+  /**
+   * Activate several elasticities at once.
+   * @param handles the handles of the elasticities to be activated
+   * @param count the number of handles to read from the array
+   */
+  public void activateElasticities(int[] handles, int count) {
+    for (int i = 0; i < count; i++) {
+      activateElasticity(handles[i]);
+    }
+  }
+
+  private void appendActive(int index) {
+    mActivePositions[index] = mActiveCount;
+    mActiveSlots[mActiveCount++] = index;
+  }
+
+  private void removeActiveAt(int position) {
+    int index = mActiveSlots[position];
+    int last = mActiveSlots[--mActiveCount];
+    mActiveSlots[position] = last;
+    mActivePositions[last] = position;
+    mActivePositions[index] = -1;
+  }
+
+  /**
+   * Grow all per slot storage. Every list indexed by slot holds each slot at most once, so sizing
+   * them with the slot capacity means no allocation happens while frames are processed.
+   */
+  private void growSlots(int capacity) {
+    Elasticity[] slots = new Elasticity[capacity];
+    System.arraycopy(mSlots, 0, slots, 0, mSlotCount);
+    mSlots = slots;
+    mGenerations = grow(mGenerations, capacity);
+    mInternal = grow(mInternal, capacity);
+    mFreeSlots = grow(mFreeSlots, capacity);
+    mActiveSlots = grow(mActiveSlots, capacity);
+    mPendingActivations = grow(mPendingActivations, capacity);
+    mPendingReleases = grow(mPendingReleases, capacity);
+    int[] activePositions = grow(mActivePositions, capacity);
+    for (int i = mActivePositions.length; i < capacity; i++) {
+      activePositions[i] = -1;
+    }
+    mActivePositions = activePositions;
+    boolean[] active = new boolean[capacity];
+    System.arraycopy(mActive, 0, active, 0, mActive.length);
+    mActive = active;
+    mLowPriority = grow(mLowPriority, capacity);
+    mNotificationDeferred = grow(mNotificationDeferred, capacity);
+    byte[] integrateState = new byte[capacity];
+    System.arraycopy(mIntegrateState, 0, integrateState, 0, mIntegrateState.length);
+    mIntegrateState = integrateState;
+    if (mGraph != null) {
+      mGraph.growSlots(capacity);
+      mDecoupledSlots = new int[capacity];
+    }
+  }
+
+  private static int[] grow(int[] array, int capacity) {
+    int[] grown = new int[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static boolean[] grow(boolean[] array, int capacity) {
+    boolean[] grown = new boolean[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  /**
+   * Make target depend on source. Coupled elasticities leave the active list and are advanced
+   * after it by the dependency graph of the system, in topological order: once per frame the
+   * coupling is applied after source was advanced and before target is, so chains of followers
+   * move on the same frame as their leader. Coupling two elasticities again replaces the coupling.
+   * @param source the elasticity target follows, registered with this system
+   * @param target the elasticity updated by the coupling, registered with this system
+   * @param coupling applies source to target
+   * @throws IllegalArgumentException if the coupling would create a cycle
+   */
+  public void couple(Elasticity source, Elasticity target, ElasticityCoupling coupling) {
+    if (coupling == null) {
+      throw new IllegalArgumentException("coupling is required");
+    }
+    int sourceIndex = indexOf(source);
+    int targetIndex = indexOf(target);
+    if (mGraph == null) {
+      mGraph = new ElasticityGraph(this, mSlots.length);
+      mDecoupledSlots = new int[mSlots.length];
+    }
+    boolean sourceJoins = !mGraph.contains(sourceIndex);
+    boolean targetJoins = !mGraph.contains(targetIndex);
+    mGraph.couple(sourceIndex, targetIndex, coupling);
+    if (sourceJoins) {
+      joinGraph(sourceIndex);
+    }
+    if (targetJoins) {
+      joinGraph(targetIndex);
+    }
+    // apply the coupling on the next frame
+    mGraph.activate(targetIndex);
+    wake();
+  }
+
+  /**
+   * Remove the coupling of target to source. An elasticity left without couplings goes back to the
+   * active list.
+   * @param source the source of the coupling
+   * @param target the target of the coupling
+   * @return true if they were coupled
+   */
+  public boolean decouple(Elasticity source, Elasticity target) {
+    if (mGraph == null) {
+      return false;
+    }
+    int sourceIndex = indexOf(source);
+    int targetIndex = indexOf(target);
+    if (!mGraph.decouple(sourceIndex, targetIndex)) {
+      return false;
+    }
+    mDecoupledSlots[0] = sourceIndex;
+    mDecoupledSlots[1] = targetIndex;
+    leaveGraph(2);
+    return true;
+  }
+
+  /**
+   * Remove every coupling of an elasticity, for example before it is recycled.
+   * @param elasticity the elasticity to decouple
+   */
+  public void decouple(Elasticity elasticity) {
+    int index = indexOf(elasticity);
+    if (mGraph == null || !mGraph.contains(index)) {
+      return;
+    }
+    int count = mGraph.removeNode(index, mDecoupledSlots);
+    mDecoupledSlots[count++] = index;
+    leaveGraph(count);
+  }
+
+  /**
+   * @param elasticity an elasticity registered with this system
+   * @return true if the elasticity has at least one coupling
+   */
+  public boolean isCoupled(Elasticity elasticity) {
+    return mGraph != null && mGraph.contains(indexOf(elasticity));
+  }
+
+  /**
+   * @return the number of elasticities with at least one coupling
+   */
+  public int getCoupledCount() {
+    return mGraph != null ? mGraph.getNodeCount() : 0;
+  }
+
+  private int indexOf(Elasticity elasticity) {
+    if (elasticity == null) {
+      throw new IllegalArgumentException("elasticity is required");
+    }
+    if (getElasticity(elasticity.getHandle()) != elasticity) {
+      throw new IllegalArgumentException("elasticity " + elasticity.getId() + " is not registered");
+    }
+    return elasticity.getHandle() & HANDLE_INDEX_MASK;
+  }
+
+  /**
+   * Move a slot that got its first coupling from the active list to the graph.
+   */
+  private void joinGraph(int index) {
+    Elasticity elasticity = mSlots[index];
+    boolean active = mActive[index];
+    if (active) {
+      // a listed slot is dropped by the loop when advancing
+      mActive[index] = false;
+      if (!mAdvancing && mActivePositions[index] >= 0) {
+        removeActiveAt(mActivePositions[index]);
+      }
+    }
+    if (elasticity instanceof CoupledElasticity) {
+      ((CoupledElasticity) elasticity).setCoupled(true);
+    }
+    if (active || elasticity.systemShouldAdvance()) {
+      mGraph.activate(index);
+    }
+  }
+
+  /**
+   * Move the slots of mDecoupledSlots left without couplings back to the active list.
+   */
+  private void leaveGraph(int count) {
+    for (int i = 0; i < count; i++) {
+      int index = mDecoupledSlots[i];
+      Elasticity elasticity = mSlots[index];
+      if (elasticity == null || mGraph.contains(index)) {
+        continue;
+      }
+      boolean active = mGraph.deactivate(index);
+      if (elasticity instanceof CoupledElasticity) {
+        // activates itself again if it is moving
+        ((CoupledElasticity) elasticity).setCoupled(false);
+      } else if (active) {
+        activateElasticity(elasticity.getHandle());
+      }
+    }
+  }
+
+  /**
+   * Give every frame a time budget. The system measures the time spent in each frame, from the
+   * commands to the last system listener, and reads the clock every few elasticities while
+   * advancing. A frame running out of budget raises the {@link ElasticityDegradation} stage by one
+   * for the rest of the frame and the following ones, once per frame. After 30 frames in a row
+   * under three quarters of the budget, one stage is lifted again.
+   * @param budgetNanos the budget of a frame in nanoseconds, 0 to disable the budget
+   */
+  public void setFrameBudgetNanos(long budgetNanos) {
+    if (budgetNanos < 0) {
+      throw new IllegalArgumentException("budgetNanos must not be negative");
+    }
+    mFrameBudgetNanos = budgetNanos;
+    mUnderBudgetFrames = 0;
+    if (budgetNanos == 0) {
+      setDegradation(ElasticityDegradation.NONE, 0);
+    }
+  }
+
+  /**
+   * @return the budget of a frame in nanoseconds, 0 if disabled
+   */
+  public long getFrameBudgetNanos() {
+    return mFrameBudgetNanos;
+  }
+
+  /**
+   * @return the time spent in the last frame, measured while a frame budget is set
+   */
+  public long getLastFrameCostNanos() {
+    return mLastFrameCostNanos;
+  }
+
+  /**
+   * @return the current degradation stage
+   */
+  public ElasticityDegradation getDegradation() {
+    return mDegradation;
+  }
+
+  /**
+   * @param degradation a degradation stage
+   * @return true if the current stage is that stage or a later one
+   */
+  public boolean isDegraded(ElasticityDegradation degradation) {
+    return mDegradation.ordinal() >= degradation.ordinal();
+  }
+
+  /**
+   * @param listener hears about every change of the degradation stage, or null
+   */
+  public void setDegradationListener(ElasticityDegradationListener listener) {
+    mDegradationListener = listener;
+  }
+
+  /**
+   * Mark an elasticity as low priority, its onSpringUpdate notifications are the first ones
+   * skipped when frames run out of budget.
+   * @param elasticity an elasticity registered with this system
+   * @param lowPriority true for low priority
+   */
+  public void setLowPriority(Elasticity elasticity, boolean lowPriority) {
+    mLowPriority[indexOf(elasticity)] = lowPriority;
+  }
+
+  /**
+   * @param elasticity an elasticity registered with this system
+   * @return true if it is low priority
+   */
+  public boolean isLowPriority(Elasticity elasticity) {
+    return mLowPriority[indexOf(elasticity)];
+  }
+
+  /**
+   * Clear the priority and the deferred notification of an elasticity, so it is acquired again from
+   * a pool like a new one.
+   * @param elasticity an elasticity registered with this system
+   */
+  void resetDegradation(Elasticity elasticity) {
+    int index = indexOf(elasticity);
+    mLowPriority[index] = false;
+    mNotificationDeferred[index] = false;
+  }
+
+  /**
+   * Called by elasticities before notifying their listeners of a frame, so the degradation stage
+   * can drop the onSpringUpdate notification. Activation and rest are always notified, with the
+   * update of that frame.
+   * @param handle the handle of the elasticity
+   * @param transition true if the elasticity is activated or put to rest on this frame
+   * @return false if the listeners should not be notified of this frame
+   */
+  public boolean shouldNotify(int handle, boolean transition) {
+    if (mFrameBudgetNanos == 0) {
+      return true;
+    }
+    if ((++mBudgetChecks & BUDGET_CHECK_MASK) == 0) {
+      checkFrameBudget();
+    }
+    if (handle < 0 || mDegradation == ElasticityDegradation.NONE) {
+      return true;
+    }
+    int index = handle & HANDLE_INDEX_MASK;
+    if (!transition) {
+      if (mLowPriority[index] && isDegraded(ElasticityDegradation.SKIP_LOW_PRIORITY)) {
+        return false;
+      }
+      if (!mNotificationDeferred[index]
+          && mDegradation == ElasticityDegradation.DEFER_NOTIFICATIONS) {
+        mNotificationDeferred[index] = true;
+        return false;
+      }
+    }
+    // a deferred update is delivered with this one
+    mNotificationDeferred[index] = false;
+    return true;
+  }
+
+  private void checkFrameBudget() {
+    if (!mDegradedThisFrame) {
+      long cost = System.nanoTime() - mFrameStartNanos;
+      if (cost > mFrameBudgetNanos) {
+        degrade(cost);
+      }
+    }
+  }
+
+  private void endBudgetFrame() {
+    long cost = System.nanoTime() - mFrameStartNanos;
+    mLastFrameCostNanos = cost;
+    if (cost > mFrameBudgetNanos) {
+      mUnderBudgetFrames = 0;
+      if (!mDegradedThisFrame) {
+        degrade(cost);
+      }
+    } else if (cost <= mFrameBudgetNanos - (mFrameBudgetNanos >> 2)
+        && mDegradation != ElasticityDegradation.NONE) {
+      if (++mUnderBudgetFrames >= RECOVERY_FRAMES) {
+        mUnderBudgetFrames = 0;
+        setDegradation(ElasticityDegradation.values()[mDegradation.ordinal() - 1], cost);
+      }
+    } else {
+      mUnderBudgetFrames = 0;
+    }
+    mDegradedThisFrame = false;
+  }
+
+  private void degrade(long cost) {
+    mDegradedThisFrame = true;
+    ElasticityDegradation[] stages = ElasticityDegradation.values();
+    if (mDegradation.ordinal() < stages.length - 1) {
+      setDegradation(stages[mDegradation.ordinal() + 1], cost);
     }
   }
 
+  private void setDegradation(ElasticityDegradation degradation, long cost) {
+    ElasticityDegradation previous = mDegradation;
+    if (previous == degradation) {
+      return;
+    }
+    mDegradation = degradation;
+    ElasticityDegradationListener listener = mDegradationListener;
+    if (listener != null) {
+      listener.onDegradationChange(this, previous, degradation, cost);
+    }
+  }
+
+  /**
+   * Attach per frame counters to the system, or detach them by passing null. While detached the
+   * frame loop only pays a null check per instrumentation point.
+   * @param frameStats the stats to record into
+   */
+  public void setFrameStats(ElasticityFrameStats frameStats) {
+    mFrameStats = frameStats;
+  }
+
+  /**
+   * get the per frame counters attached to the system. Elasticities use this to report their solver
+   * iterations and listener callbacks.
+   * @return the attached stats or null
+   */
+  public ElasticityFrameStats getFrameStats() {
+    return mFrameStats;
+  }
+
+  /**
+   * Get the frame elasticities report their updates to, see {@link ElasticityFrameListener}.
+   * @return the frame being recorded or null if no ElasticityFrameListener is registered
+   */
+  public ElasticityFrame getFrame() {
+    return mFrameListenerCount > 0 ? mFrame : null;
+  }
+
   /** listeners **/
 
   /**
@@ -185,7 +1130,13 @@ public class BaseElasticitySystem {
     if (newListener == null) {
       throw new IllegalArgumentException("newListener is required");
     }
-    mListeners.add(newListener);
+    if (mListeners.add(newListener) && newListener instanceof ElasticityFrameListener) {
+      if (mFrame == null) {
+        mFrame = new ElasticityFrame(this);
+      }
+      mFrameListenerCount++;
+    }
+    mListenerArray = mListeners.toArray(NO_LISTENERS);
   }
 
   /**
@@ -196,13 +1147,18 @@ public class BaseElasticitySystem {
     if (listenerToRemove == null) {
       throw new IllegalArgumentException("listenerToRemove is required");
     }
-    mListeners.remove(listenerToRemove);
+    if (mListeners.remove(listenerToRemove) && listenerToRemove instanceof ElasticityFrameListener) {
+      mFrameListenerCount--;
+    }
+    mListenerArray = mListeners.toArray(NO_LISTENERS);
   }
   /**
    * Remove all listeners.
    */
   public void removeAllListeners() {
     mListeners.clear();
+    mFrameListenerCount = 0;
+    mListenerArray = NO_LISTENERS;
   }
 }
 
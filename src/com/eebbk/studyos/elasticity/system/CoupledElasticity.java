@@ -0,0 +1,16 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * An elasticity that is normally advanced by some other elasticity, like a Spring by its batch, and
+ * has to be told when the dependency graph of the system takes it over. While coupled it must
+ * activate itself with {@link BaseElasticitySystem#activateElasticity(int)} and its own handle, and
+ * leave advancing it to the graph.
+ */
+public interface CoupledElasticity extends Elasticity {
+
+	/**
+	 * called by the system when the elasticity gets its first coupling or loses its last one
+	 * @param coupled true if the graph advances the elasticity from now on
+	 */
+	public void setCoupled(boolean coupled);
+}
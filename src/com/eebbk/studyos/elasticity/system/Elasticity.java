@@ -12,6 +12,18 @@ public interface Elasticity {
 
 	public String getId();
 
+	/**
+	 * get the handle given to this elasticity when it was registered with a system
+	 * @return the handle or {@link BaseElasticitySystem#NO_HANDLE} if it isn't registered
+	 */
+	public int getHandle();
+
+	/**
+	 * called by the system when the elasticity is registered or deregistered
+	 * @param handle the new handle or {@link BaseElasticitySystem#NO_HANDLE}
+	 */
+	public void setHandle(int handle);
+
 	public boolean systemShouldAdvance();
 
 	public void advance(double d);
@@ -0,0 +1,16 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Update applied from one elasticity to another by the dependency graph of a system, see
+ * {@link BaseElasticitySystem#couple(Elasticity, Elasticity, ElasticityCoupling)}.
+ */
+public interface ElasticityCoupling {
+
+	/**
+	 * update the target from the source, called on the looper thread after the source was advanced
+	 * in the frame and before the target is
+	 * @param source the elasticity the target depends on
+	 * @param target the elasticity to update
+	 */
+	public void apply(Elasticity source, Elasticity target);
+}
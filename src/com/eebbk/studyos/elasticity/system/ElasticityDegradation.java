@@ -0,0 +1,33 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * The stages a {@link BaseElasticitySystem} with a frame budget goes through when its frames cost
+ * more than the budget, see {@link BaseElasticitySystem#setFrameBudgetNanos(long)}. Each stage
+ * includes the ones before it.
+ */
+public enum ElasticityDegradation {
+
+  /**
+   * Frames fit in the budget, nothing is degraded.
+   */
+  NONE,
+
+  /**
+   * Springs integrated with RK4 or the adaptive solver use the closed form solution instead, which
+   * costs one evaluation per frame whatever the frame length.
+   */
+  CHEAP_SOLVER,
+
+  /**
+   * onSpringUpdate is not called for elasticities marked as low priority with
+   * {@link BaseElasticitySystem#setLowPriority(Elasticity, boolean)}. Their listeners still hear
+   * about activation and rest, with the value of that frame.
+   */
+  SKIP_LOW_PRIORITY,
+
+  /**
+   * onSpringUpdate of every elasticity is deferred to its next frame and then called once with the
+   * value of that frame, so listeners are notified every other frame.
+   */
+  DEFER_NOTIFICATIONS
+}
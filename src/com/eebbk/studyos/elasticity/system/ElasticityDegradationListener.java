@@ -0,0 +1,18 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Hears about the degradation stages of a system with a frame budget, to tune the budget per
+ * device class. Called on the looper thread, from inside the frame when the budget ran out while
+ * it was processed.
+ */
+public interface ElasticityDegradationListener {
+
+  /**
+   * @param system the system whose stage changed
+   * @param previous the stage before the change
+   * @param current the stage after the change
+   * @param frameCostNanos the time spent in the frame when the change was decided
+   */
+  void onDegradationChange(BaseElasticitySystem system, ElasticityDegradation previous,
+      ElasticityDegradation current, long frameCostNanos);
+}
@@ -0,0 +1,134 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Compact view of one frame of a BaseElasticitySystem: the handles of the elasticities whose value
+ * was updated, and of those that started moving or came to rest during the frame. Handles are
+ * listed in the order the elasticities were advanced and resolve through
+ * {@link BaseElasticitySystem#getElasticity(int)}.
+ *
+ * The system reuses a single instance, its content is only valid during
+ * {@link ElasticityFrameListener#onFrame}. Frames are only recorded while an
+ * {@link ElasticityFrameListener} is registered with the system.
+ */
+public final class ElasticityFrame {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final BaseElasticitySystem mSystem;
+  private int[] mUpdated = new int[INITIAL_CAPACITY];
+  private int mUpdatedCount;
+  private int[] mActivated = new int[INITIAL_CAPACITY];
+  private int mActivatedCount;
+  private int[] mRested = new int[INITIAL_CAPACITY];
+  private int mRestedCount;
+
+  ElasticityFrame(BaseElasticitySystem system) {
+    mSystem = system;
+  }
+
+  /**
+   * @return the system this frame belongs to
+   */
+  public BaseElasticitySystem getSystem() {
+    return mSystem;
+  }
+
+  /**
+   * Record that an elasticity was updated in this frame. Called by elasticities while they are
+   * advanced, in place of or in addition to notifying their own listeners.
+   * @param handle the handle of the updated elasticity
+   * @param activated the elasticity started moving in this frame
+   * @param atRest the elasticity came to rest in this frame
+   */
+  public void record(int handle, boolean activated, boolean atRest) {
+    if (mUpdatedCount == mUpdated.length) {
+      mUpdated = grow(mUpdated);
+    }
+    mUpdated[mUpdatedCount++] = handle;
+    if (activated) {
+      if (mActivatedCount == mActivated.length) {
+        mActivated = grow(mActivated);
+      }
+      mActivated[mActivatedCount++] = handle;
+    }
+    if (atRest) {
+      if (mRestedCount == mRested.length) {
+        mRested = grow(mRested);
+      }
+      mRested[mRestedCount++] = handle;
+    }
+  }
+
+  /**
+   * @return the number of elasticities updated in this frame
+   */
+  public int getUpdatedCount() {
+    return mUpdatedCount;
+  }
+
+  /**
+   * @param i index between 0 and {@link #getUpdatedCount()}
+   * @return the handle of an updated elasticity
+   */
+  public int getUpdatedHandle(int i) {
+    checkIndex(i, mUpdatedCount);
+    return mUpdated[i];
+  }
+
+  /**
+   * @return the number of elasticities that started moving in this frame
+   */
+  public int getActivatedCount() {
+    return mActivatedCount;
+  }
+
+  /**
+   * @param i index between 0 and {@link #getActivatedCount()}
+   * @return the handle of an activated elasticity
+   */
+  public int getActivatedHandle(int i) {
+    checkIndex(i, mActivatedCount);
+    return mActivated[i];
+  }
+
+  /**
+   * @return the number of elasticities that came to rest in this frame
+   */
+  public int getRestedCount() {
+    return mRestedCount;
+  }
+
+  /**
+   * @param i index between 0 and {@link #getRestedCount()}
+   * @return the handle of an elasticity that came to rest
+   */
+  public int getRestedHandle(int i) {
+    checkIndex(i, mRestedCount);
+    return mRested[i];
+  }
+
+  /**
+   * @return true if nothing was updated in this frame
+   */
+  public boolean isEmpty() {
+    return mUpdatedCount == 0;
+  }
+
+  void clear() {
+    mUpdatedCount = 0;
+    mActivatedCount = 0;
+    mRestedCount = 0;
+  }
+
+  private static void checkIndex(int i, int count) {
+    if (i < 0 || i >= count) {
+      throw new IllegalArgumentException("index " + i + " out of range, count is " + count);
+    }
+  }
+
+  private static int[] grow(int[] array) {
+    int[] grown = new int[array.length * 2];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
@@ -0,0 +1,28 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * System listener receiving a single callback per frame with every elasticity that changed in it,
+ * so that many views can be updated in one pass and invalidated once instead of registering an
+ * {@link ElasticityListener} on each elasticity.
+ */
+public abstract class ElasticityFrameListener implements ElasticitySystemListener {
+
+  /**
+   * Called after each pass through the physics integration loop in which at least one elasticity
+   * was updated.
+   * @param frame the elasticities updated, activated and put to rest in the frame
+   */
+  public abstract void onFrame(ElasticityFrame frame);
+
+  @Override
+  public void onBeforeIntegrate(BaseElasticitySystem elasticitySystem) {
+  }
+
+  @Override
+  public void onAfterIntegrate(BaseElasticitySystem elasticitySystem) {
+    ElasticityFrame frame = elasticitySystem.getFrame();
+    if (frame != null && !frame.isEmpty()) {
+      onFrame(frame);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Per frame counters of a BaseElasticitySystem, kept in a preallocated ring buffer holding the
+ * most recent frames. Attach it with {@link BaseElasticitySystem#setFrameStats}; while no stats are
+ * attached the frame loop only pays a null check per instrumentation point.
+ *
+ * Counters are written on the looper thread and should be read from it as well.
+ */
+public class ElasticityFrameStats {
+
+  /** elasticities advanced in the frame, a SpringBatch also counts every spring it advanced */
+  public static final int ADVANCED = 0;
+  /** fixed or adaptive solver steps taken in the frame */
+  public static final int SOLVER_ITERATIONS = 1;
+  /** elasticities that came to rest in the frame, a SpringBatch also counts its springs */
+  public static final int PUT_TO_REST = 2;
+  /** calls made to elasticity and system listeners in the frame */
+  public static final int LISTENER_CALLBACKS = 3;
+  /** time spent in {@link ElasticitySystemListener#onBeforeIntegrate} */
+  public static final int BEFORE_INTEGRATE_NANOS = 4;
+  /** time spent advancing elasticities, including their listeners */
+  public static final int ADVANCE_NANOS = 5;
+  /** time spent in {@link ElasticitySystemListener#onAfterIntegrate} */
+  public static final int AFTER_INTEGRATE_NANOS = 6;
+  /** frame delta the system was looped with */
+  public static final int DELTA_NANOS = 7;
+
+  public static final int COUNTER_COUNT = 8;
+
+  private static final String[] COUNTER_NAMES = {
+      "advanced",
+      "solverIterations",
+      "putToRest",
+      "listenerCallbacks",
+      "beforeIntegrateNanos",
+      "advanceNanos",
+      "afterIntegrateNanos",
+      "deltaNanos"
+  };
+
+  private final int mCapacity;
+  private final long[] mFrames;
+  private final long[] mTotals = new long[COUNTER_COUNT];
+  // row of the frame currently being recorded
+  private int mCurrent = -1;
+  private long mFrameCount;
+
+  /**
+   * @param capacity number of most recent frames to keep
+   */
+  public ElasticityFrameStats(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    mCapacity = capacity;
+    mFrames = new long[capacity * COUNTER_COUNT];
+  }
+
+  /**
+   * Start recording a new frame, overwriting the oldest one once the buffer is full.
+   * @param deltaNanos the frame delta
+   */
+  public void beginFrame(long deltaNanos) {
+    mCurrent = (mCurrent + 1) % mCapacity;
+    int offset = mCurrent * COUNTER_COUNT;
+    for (int i = 0; i < COUNTER_COUNT; i++) {
+      mFrames[offset + i] = 0;
+    }
+    mFrameCount++;
+    add(DELTA_NANOS, deltaNanos);
+  }
+
+  /**
+   * Add to a counter of the frame being recorded.
+   * @param counter one of the counter constants
+   * @param value the amount to add
+   */
+  public void add(int counter, long value) {
+    if (mCurrent < 0) {
+      return;
+    }
+    mFrames[mCurrent * COUNTER_COUNT + counter] += value;
+    mTotals[counter] += value;
+  }
+
+  /**
+   * get the number of frames recorded since the stats were created or reset
+   * @return the frame count
+   */
+  public long getFrameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * get the number of frames that can be read back with {@link #get}
+   * @return the number of retained frames
+   */
+  public int getRetainedFrameCount() {
+    return (int) Math.min(mFrameCount, mCapacity);
+  }
+
+  /**
+   * Read a counter of a retained frame.
+   * @param framesAgo 0 for the most recent frame, up to getRetainedFrameCount() - 1
+   * @param counter one of the counter constants
+   * @return the counter value
+   */
+  public long get(int framesAgo, int counter) {
+    if (framesAgo < 0 || framesAgo >= getRetainedFrameCount()) {
+      throw new IllegalArgumentException("frame " + framesAgo + " is not retained");
+    }
+    int row = (mCurrent - framesAgo + mCapacity) % mCapacity;
+    return mFrames[row * COUNTER_COUNT + counter];
+  }
+
+  /**
+   * Read the sum of a counter over every frame recorded since the last reset.
+   * @param counter one of the counter constants
+   * @return the total
+   */
+  public long getTotal(int counter) {
+    return mTotals[counter];
+  }
+
+  /**
+   * get the name of a counter as used by {@link #dump}
+   * @param counter one of the counter constants
+   * @return the counter name
+   */
+  public static String getCounterName(int counter) {
+    return COUNTER_NAMES[counter];
+  }
+
+  /**
+   * Forget all recorded frames and totals.
+   */
+  public void reset() {
+    for (int i = 0; i < mFrames.length; i++) {
+      mFrames[i] = 0;
+    }
+    for (int i = 0; i < COUNTER_COUNT; i++) {
+      mTotals[i] = 0;
+    }
+    mCurrent = -1;
+    mFrameCount = 0;
+  }
+
+  /**
+   * Write the totals and the retained frames, oldest first, as one line per frame.
+   * @param out the builder to write to
+   * @return the builder for chaining
+   */
+  public StringBuilder dump(StringBuilder out) {
+    out.append("frames=").append(mFrameCount);
+    for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+      out.append(' ').append(COUNTER_NAMES[counter]).append('=').append(mTotals[counter]);
+    }
+    out.append('\n');
+    for (int framesAgo = getRetainedFrameCount() - 1; framesAgo >= 0; framesAgo--) {
+      out.append(-framesAgo).append(':');
+      for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+        out.append(' ').append(COUNTER_NAMES[counter]).append('=').append(get(framesAgo, counter));
+      }
+      out.append('\n');
+    }
+    return out;
+  }
+}
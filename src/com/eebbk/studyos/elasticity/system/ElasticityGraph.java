@@ -0,0 +1,575 @@
+package com.eebbk.studyos.elasticity.system;
+
+import java.util.Arrays;
+
+/**
+ * Dependency graph of the coupled elasticities of a {@link BaseElasticitySystem}, see
+ * {@link BaseElasticitySystem#couple(Elasticity, Elasticity, ElasticityCoupling)}. Nodes are
+ * system slots. Once per frame, after the active list pass, the graph visits its nodes in
+ * topological order: the couplings of a node are applied from the sources visited earlier in the
+ * same frame, then the node is advanced if it is active, so a whole chain settles on the same
+ * frame.
+ *
+ * Every node keeps a rank consistent with the topological order. An edge from a lower to a higher
+ * rank can't close a cycle and only marks the order for rebuilding on the next frame, other edges
+ * sort the graph again right away to look for a cycle.
+ *
+ * Every node also links its outgoing and incoming edges in two lists, so looking up, removing and
+ * searching the edges of a node costs its degree rather than the whole edge array.
+ */
+final class ElasticityGraph {
+
+  private static final int INITIAL_EDGE_CAPACITY = 16;
+  private static final int NO_EDGE = -1;
+
+  private final BaseElasticitySystem mSystem;
+
+  // per slot storage, sized with the slots of the system
+  private int[] mDegree;
+  private int[] mRank;
+  private boolean[] mNodeActive;
+  // frame in which the node was last visited while active, its dependents are then updated
+  private int[] mVisitedFrame;
+  // first edge of the outgoing and incoming lists of the node
+  private int[] mFirstOut;
+  private int[] mFirstIn;
+  // search in which the node was last reached, see reaches
+  private int[] mSearchMark;
+  private int mSearch;
+  // scratch storage of the sort
+  private int[] mInDegree;
+  private int[] mOutStart;
+  private int mNodeCount;
+  private int mActiveCount;
+
+  // edges, removed edges keep their index with a null coupling until the next sort
+  private int[] mEdgeSource = new int[INITIAL_EDGE_CAPACITY];
+  private int[] mEdgeTarget = new int[INITIAL_EDGE_CAPACITY];
+  private ElasticityCoupling[] mEdgeCoupling = new ElasticityCoupling[INITIAL_EDGE_CAPACITY];
+  // edges applied once before their source is next visited
+  private boolean[] mEdgePending = new boolean[INITIAL_EDGE_CAPACITY];
+  // links of the outgoing list of the source and the incoming list of the target, live edges only
+  private int[] mNextOut = new int[INITIAL_EDGE_CAPACITY];
+  private int[] mPrevOut = new int[INITIAL_EDGE_CAPACITY];
+  private int[] mNextIn = new int[INITIAL_EDGE_CAPACITY];
+  private int[] mPrevIn = new int[INITIAL_EDGE_CAPACITY];
+  private int[] mOutEdges = new int[INITIAL_EDGE_CAPACITY];
+  private int mEdgeCount;
+  private int mRemovedEdgeCount;
+
+  // nodes in topological order with their incoming edges, grouped by position in the order
+  private int[] mOrder;
+  private int mOrderCount;
+  private int[] mInStart;
+  private int[] mInEdges = new int[INITIAL_EDGE_CAPACITY];
+  private boolean mDirty;
+  private boolean mRanksValid = true;
+  private int mLowRank;
+  private int mHighRank = -1;
+
+  private boolean mEvaluating;
+  private int mFrame;
+  private int mAdvancedCount;
+  private int mPutToRestCount;
+
+  ElasticityGraph(BaseElasticitySystem system, int capacity) {
+    mSystem = system;
+    growSlots(capacity);
+  }
+
+  /**
+   * @param slot a slot of the system
+   * @return true if the slot has at least one coupling
+   */
+  boolean contains(int slot) {
+    return mDegree[slot] > 0;
+  }
+
+  int getNodeCount() {
+    return mNodeCount;
+  }
+
+  int getEdgeCount() {
+    return mEdgeCount - mRemovedEdgeCount;
+  }
+
+  int getActiveCount() {
+    return mActiveCount;
+  }
+
+  int getAdvancedCount() {
+    return mAdvancedCount;
+  }
+
+  int getPutToRestCount() {
+    return mPutToRestCount;
+  }
+
+  /**
+   * Add an edge or replace the coupling of an existing one. The graph is left unchanged if the edge
+   * would close a cycle.
+   * @param source slot of the source
+   * @param target slot of the target
+   * @param coupling the coupling to apply
+   * @return true if the edge is new
+   */
+  boolean couple(int source, int target, ElasticityCoupling coupling) {
+    if (source == target) {
+      throw new IllegalArgumentException("an elasticity cannot be coupled to itself");
+    }
+    int existing = findEdge(source, target);
+    if (existing >= 0) {
+      mEdgeCoupling[existing] = coupling;
+      mEdgePending[existing] = true;
+      return false;
+    }
+    if (mDegree[source] == 0 && mDegree[target] == 0) {
+      mRank[source] = ++mHighRank;
+      mRank[target] = ++mHighRank;
+    } else if (mDegree[source] == 0) {
+      mRank[source] = --mLowRank;
+    } else if (mDegree[target] == 0) {
+      mRank[target] = ++mHighRank;
+    }
+    addEdge(source, target, coupling);
+    if (!mRanksValid || mRank[source] >= mRank[target]) {
+      boolean acyclic;
+      if (mEvaluating) {
+        // the order is being walked, it is rebuilt on the next frame
+        acyclic = !reaches(target, source);
+        mRanksValid = false;
+      } else {
+        acyclic = sort();
+      }
+      if (!acyclic) {
+        // the sort may have compacted the edges
+        removeEdge(findEdge(source, target));
+        if (!mEvaluating) {
+          sort();
+        }
+        throw new IllegalArgumentException("coupling would create a cycle");
+      }
+    }
+    mDirty = true;
+    return true;
+  }
+
+  /**
+   * Remove an edge. Slots left without edges stay active until the caller deactivates them.
+   * @param source slot of the source
+   * @param target slot of the target
+   * @return true if the edge existed
+   */
+  boolean decouple(int source, int target) {
+    int edge = findEdge(source, target);
+    if (edge < 0) {
+      return false;
+    }
+    removeEdge(edge);
+    return true;
+  }
+
+  /**
+   * Remove every edge of a slot. Slots left without edges stay active until the caller deactivates
+   * them.
+   * @param slot the slot to remove
+   * @param others receives the other end of each removed edge, sized with the slots of the system
+   * @return the number of slots written to others
+   */
+  int removeNode(int slot, int[] others) {
+    int count = 0;
+    while (mFirstOut[slot] != NO_EDGE) {
+      int edge = mFirstOut[slot];
+      others[count++] = mEdgeTarget[edge];
+      removeEdge(edge);
+    }
+    while (mFirstIn[slot] != NO_EDGE) {
+      int edge = mFirstIn[slot];
+      others[count++] = mEdgeSource[edge];
+      removeEdge(edge);
+    }
+    return count;
+  }
+
+  /**
+   * Advance a node on the next evaluation.
+   * @param slot a slot of the graph
+   */
+  void activate(int slot) {
+    if (!mNodeActive[slot]) {
+      mNodeActive[slot] = true;
+      mActiveCount++;
+    }
+  }
+
+  /**
+   * @param slot a slot of the graph
+   * @return true if the node was active
+   */
+  boolean deactivate(int slot) {
+    if (!mNodeActive[slot]) {
+      return false;
+    }
+    mNodeActive[slot] = false;
+    mActiveCount--;
+    return true;
+  }
+
+  /**
+   * Visit every node in topological order, applying the couplings of the sources visited while
+   * active in this frame and advancing the active nodes.
+   * @param deltaTime clock drift in seconds
+   */
+  void evaluate(double deltaTime) {
+    if (mDirty) {
+      sort();
+    }
+    mEvaluating = true;
+    int frame = ++mFrame;
+    int advanced = 0;
+    int putToRest = 0;
+    for (int position = 0; position < mOrderCount; position++) {
+      int slot = mOrder[position];
+      Elasticity target = mSystem.getSlot(slot);
+      if (target == null || mDegree[slot] == 0) {
+        // deregistered or decoupled during this pass
+        continue;
+      }
+      for (int i = mInStart[position]; i < mInStart[position + 1]; i++) {
+        int edge = mInEdges[i];
+        ElasticityCoupling coupling = mEdgeCoupling[edge];
+        if (coupling == null) {
+          continue;
+        }
+        int source = mEdgeSource[edge];
+        if (mVisitedFrame[source] == frame || mEdgePending[edge]) {
+          Elasticity sourceElasticity = mSystem.getSlot(source);
+          if (sourceElasticity != null) {
+            mEdgePending[edge] = false;
+            coupling.apply(sourceElasticity, target);
+          }
+        }
+      }
+      // the couplings may have activated the node
+      if (mNodeActive[slot]) {
+        mVisitedFrame[slot] = frame;
+        if (target.systemShouldAdvance()) {
+          target.advance(deltaTime);
+          advanced++;
+        } else {
+          mNodeActive[slot] = false;
+          mActiveCount--;
+          putToRest++;
+        }
+      }
+    }
+    mEvaluating = false;
+    mAdvancedCount = advanced;
+    mPutToRestCount = putToRest;
+  }
+
+  /**
+   * Walk the shorter of the outgoing list of the source and the incoming list of the target.
+   */
+  private int findEdge(int source, int target) {
+    if (mDegree[source] == 0 || mDegree[target] == 0) {
+      return NO_EDGE;
+    }
+    if (mDegree[source] <= mDegree[target]) {
+      for (int edge = mFirstOut[source]; edge != NO_EDGE; edge = mNextOut[edge]) {
+        if (mEdgeTarget[edge] == target) {
+          return edge;
+        }
+      }
+    } else {
+      for (int edge = mFirstIn[target]; edge != NO_EDGE; edge = mNextIn[edge]) {
+        if (mEdgeSource[edge] == source) {
+          return edge;
+        }
+      }
+    }
+    return NO_EDGE;
+  }
+
+  private void addEdge(int source, int target, ElasticityCoupling coupling) {
+    if (mEdgeCount == mEdgeSource.length) {
+      growEdges(mEdgeCount * 2);
+    }
+    int edge = mEdgeCount++;
+    mEdgeSource[edge] = source;
+    mEdgeTarget[edge] = target;
+    mEdgeCoupling[edge] = coupling;
+    mEdgePending[edge] = true;
+    link(edge);
+    if (mDegree[source]++ == 0) {
+      mNodeCount++;
+    }
+    if (mDegree[target]++ == 0) {
+      mNodeCount++;
+    }
+  }
+
+  private void removeEdge(int edge) {
+    int source = mEdgeSource[edge];
+    int target = mEdgeTarget[edge];
+    unlink(edge);
+    mEdgeCoupling[edge] = null;
+    mEdgePending[edge] = false;
+    mRemovedEdgeCount++;
+    if (--mDegree[source] == 0) {
+      mNodeCount--;
+    }
+    if (--mDegree[target] == 0) {
+      mNodeCount--;
+    }
+    mDirty = true;
+  }
+
+  /**
+   * Insert an edge at the head of the lists of its source and target.
+   */
+  private void link(int edge) {
+    int source = mEdgeSource[edge];
+    int target = mEdgeTarget[edge];
+    int nextOut = mFirstOut[source];
+    mNextOut[edge] = nextOut;
+    mPrevOut[edge] = NO_EDGE;
+    if (nextOut != NO_EDGE) {
+      mPrevOut[nextOut] = edge;
+    }
+    mFirstOut[source] = edge;
+    int nextIn = mFirstIn[target];
+    mNextIn[edge] = nextIn;
+    mPrevIn[edge] = NO_EDGE;
+    if (nextIn != NO_EDGE) {
+      mPrevIn[nextIn] = edge;
+    }
+    mFirstIn[target] = edge;
+  }
+
+  private void unlink(int edge) {
+    int nextOut = mNextOut[edge];
+    int prevOut = mPrevOut[edge];
+    if (prevOut == NO_EDGE) {
+      mFirstOut[mEdgeSource[edge]] = nextOut;
+    } else {
+      mNextOut[prevOut] = nextOut;
+    }
+    if (nextOut != NO_EDGE) {
+      mPrevOut[nextOut] = prevOut;
+    }
+    int nextIn = mNextIn[edge];
+    int prevIn = mPrevIn[edge];
+    if (prevIn == NO_EDGE) {
+      mFirstIn[mEdgeTarget[edge]] = nextIn;
+    } else {
+      mNextIn[prevIn] = nextIn;
+    }
+    if (nextIn != NO_EDGE) {
+      mPrevIn[nextIn] = prevIn;
+    }
+  }
+
+  /**
+   * Compact the edges and sort the nodes in topological order with Kahn's algorithm, nodes without
+   * dependencies first in slot order.
+   * @return false if the graph has a cycle, the order is then incomplete
+   */
+  private boolean sort() {
+    compactEdges();
+    int capacity = mDegree.length;
+    int[] inDegree = mInDegree;
+    int[] outStart = mOutStart;
+    for (int slot = 0; slot <= capacity; slot++) {
+      outStart[slot] = 0;
+    }
+    for (int slot = 0; slot < capacity; slot++) {
+      inDegree[slot] = 0;
+    }
+    for (int edge = 0; edge < mEdgeCount; edge++) {
+      inDegree[mEdgeTarget[edge]]++;
+      outStart[mEdgeSource[edge] + 1]++;
+    }
+    for (int slot = 0; slot < capacity; slot++) {
+      outStart[slot + 1] += outStart[slot];
+    }
+    // outgoing edges by source, each fill moves the start of the range to its end
+    for (int edge = 0; edge < mEdgeCount; edge++) {
+      mOutEdges[outStart[mEdgeSource[edge]]++] = edge;
+    }
+    shiftRanges(outStart, capacity);
+
+    int count = 0;
+    for (int slot = 0; slot < capacity; slot++) {
+      if (mDegree[slot] > 0 && inDegree[slot] == 0) {
+        mOrder[count++] = slot;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      int slot = mOrder[i];
+      for (int j = outStart[slot]; j < outStart[slot + 1]; j++) {
+        int target = mEdgeTarget[mOutEdges[j]];
+        if (--inDegree[target] == 0) {
+          mOrder[count++] = target;
+        }
+      }
+    }
+    mOrderCount = count;
+    if (count < mNodeCount) {
+      return false;
+    }
+
+    // incoming edges grouped by the position of their target
+    for (int position = 0; position < count; position++) {
+      mRank[mOrder[position]] = position;
+    }
+    int[] inStart = mInStart;
+    for (int position = 0; position <= count; position++) {
+      inStart[position] = 0;
+    }
+    for (int edge = 0; edge < mEdgeCount; edge++) {
+      inStart[mRank[mEdgeTarget[edge]] + 1]++;
+    }
+    for (int position = 0; position < count; position++) {
+      inStart[position + 1] += inStart[position];
+    }
+    for (int edge = 0; edge < mEdgeCount; edge++) {
+      mInEdges[inStart[mRank[mEdgeTarget[edge]]]++] = edge;
+    }
+    shiftRanges(inStart, count);
+
+    mLowRank = 0;
+    mHighRank = count - 1;
+    mRanksValid = true;
+    mDirty = false;
+    return true;
+  }
+
+  /**
+   * Move back the range starts of a counting sort after the fill moved each of them to its end.
+   */
+  private static void shiftRanges(int[] starts, int count) {
+    for (int i = count; i > 0; i--) {
+      starts[i] = starts[i - 1];
+    }
+    starts[0] = 0;
+  }
+
+  /**
+   * Drop the removed edges, keeping the others in the order they were added, and link the moved
+   * edges again under their new index.
+   */
+  private void compactEdges() {
+    if (mRemovedEdgeCount == 0) {
+      return;
+    }
+    int kept = 0;
+    for (int edge = 0; edge < mEdgeCount; edge++) {
+      if (mEdgeCoupling[edge] != null) {
+        mEdgeSource[kept] = mEdgeSource[edge];
+        mEdgeTarget[kept] = mEdgeTarget[edge];
+        mEdgeCoupling[kept] = mEdgeCoupling[edge];
+        mEdgePending[kept] = mEdgePending[edge];
+        kept++;
+      }
+    }
+    for (int edge = kept; edge < mEdgeCount; edge++) {
+      mEdgeCoupling[edge] = null;
+    }
+    mEdgeCount = kept;
+    mRemovedEdgeCount = 0;
+    for (int edge = 0; edge < kept; edge++) {
+      mFirstOut[mEdgeSource[edge]] = NO_EDGE;
+      mFirstIn[mEdgeTarget[edge]] = NO_EDGE;
+    }
+    for (int edge = kept - 1; edge >= 0; edge--) {
+      link(edge);
+    }
+  }
+
+  /**
+   * Search the outgoing edges breadth first, without touching the order being walked. Reached
+   * nodes are marked with the number of the search, so nothing is cleared up front.
+   */
+  private boolean reaches(int from, int to) {
+    if (++mSearch == 0) {
+      Arrays.fill(mSearchMark, 0);
+      mSearch = 1;
+    }
+    int search = mSearch;
+    int[] queue = mInDegree;
+    int count = 0;
+    queue[count++] = from;
+    mSearchMark[from] = search;
+    for (int i = 0; i < count; i++) {
+      int slot = queue[i];
+      if (slot == to) {
+        return true;
+      }
+      for (int edge = mFirstOut[slot]; edge != NO_EDGE; edge = mNextOut[edge]) {
+        int target = mEdgeTarget[edge];
+        if (mSearchMark[target] != search) {
+          mSearchMark[target] = search;
+          queue[count++] = target;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Grow all per slot storage with the slots of the system.
+   */
+  void growSlots(int capacity) {
+    mDegree = grow(mDegree, capacity);
+    mRank = grow(mRank, capacity);
+    mVisitedFrame = grow(mVisitedFrame, capacity);
+    mFirstOut = growLinks(mFirstOut, capacity);
+    mFirstIn = growLinks(mFirstIn, capacity);
+    mSearchMark = grow(mSearchMark, capacity);
+    mInDegree = new int[capacity];
+    mOutStart = new int[capacity + 1];
+    mOrder = grow(mOrder, capacity);
+    mInStart = grow(mInStart, capacity + 1);
+    boolean[] nodeActive = new boolean[capacity];
+    if (mNodeActive != null) {
+      System.arraycopy(mNodeActive, 0, nodeActive, 0, mNodeActive.length);
+    }
+    mNodeActive = nodeActive;
+  }
+
+  private void growEdges(int capacity) {
+    mEdgeSource = grow(mEdgeSource, capacity);
+    mEdgeTarget = grow(mEdgeTarget, capacity);
+    mOutEdges = new int[capacity];
+    mInEdges = grow(mInEdges, capacity);
+    mNextOut = grow(mNextOut, capacity);
+    mPrevOut = grow(mPrevOut, capacity);
+    mNextIn = grow(mNextIn, capacity);
+    mPrevIn = grow(mPrevIn, capacity);
+    ElasticityCoupling[] couplings = new ElasticityCoupling[capacity];
+    System.arraycopy(mEdgeCoupling, 0, couplings, 0, mEdgeCount);
+    mEdgeCoupling = couplings;
+    boolean[] pending = new boolean[capacity];
+    System.arraycopy(mEdgePending, 0, pending, 0, mEdgeCount);
+    mEdgePending = pending;
+  }
+
+  private static int[] grow(int[] array, int capacity) {
+    int[] grown = new int[capacity];
+    if (array != null) {
+      System.arraycopy(array, 0, grown, 0, array.length);
+    }
+    return grown;
+  }
+
+  /**
+   * Grow an array of list heads, the new nodes start without edges.
+   */
+  private static int[] growLinks(int[] array, int capacity) {
+    int length = array != null ? array.length : 0;
+    int[] grown = grow(array, capacity);
+    Arrays.fill(grown, length, capacity, NO_EDGE);
+    return grown;
+  }
+}
@@ -0,0 +1,147 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Listeners of an elasticity kept in a reused array. Like a CopyOnWriteArraySet, listeners added
+ * or removed while the list is being notified only take effect for the next notification, but the
+ * array is only copied in that case, and notifying creates no iterator, so steady use does not
+ * allocate. Not thread safe, use it from the looper thread.
+ */
+public final class ElasticityListeners {
+
+  private static final ElasticityListener[] EMPTY = new ElasticityListener[0];
+
+  private ElasticityListener[] mListeners = EMPTY;
+  private int mCount;
+  // number of notifications iterating mListeners, which is then copied before being changed
+  private int mNotifying;
+
+  /**
+   * @param listener the listener to add
+   * @return false if it was already added
+   */
+  public boolean add(ElasticityListener listener) {
+    if (indexOf(listener) >= 0) {
+      return false;
+    }
+    if (mNotifying > 0 || mCount == mListeners.length) {
+      copy(Math.max(mListeners.length, Math.max(2, mCount * 2)));
+    }
+    mListeners[mCount++] = listener;
+    return true;
+  }
+
+  /**
+   * @param listener the listener to remove
+   * @return false if it wasn't added
+   */
+  public boolean remove(ElasticityListener listener) {
+    int index = indexOf(listener);
+    if (index < 0) {
+      return false;
+    }
+    if (mNotifying > 0) {
+      copy(mListeners.length);
+    }
+    System.arraycopy(mListeners, index + 1, mListeners, index, mCount - index - 1);
+    mListeners[--mCount] = null;
+    return true;
+  }
+
+  /**
+   * remove every listener, keeping the array for the next ones
+   */
+  public void clear() {
+    if (mNotifying > 0) {
+      mListeners = mListeners.length > 0 ? new ElasticityListener[mListeners.length] : EMPTY;
+    } else {
+      for (int i = 0; i < mCount; i++) {
+        mListeners[i] = null;
+      }
+    }
+    mCount = 0;
+  }
+
+  public int size() {
+    return mCount;
+  }
+
+  public boolean isEmpty() {
+    return mCount == 0;
+  }
+
+  /**
+   * notify the listeners of a frame, each listener hearing about the activation, the update and
+   * the rest in that order
+   * @param elasticity the elasticity that was advanced
+   * @param activated true if it started moving in this frame
+   * @param atRest true if it came to rest in this frame
+   * @return the number of callbacks made
+   */
+  public int notifyFrame(Elasticity elasticity, boolean activated, boolean atRest) {
+    ElasticityListener[] listeners = mListeners;
+    int count = mCount;
+    mNotifying++;
+    try {
+      for (int i = 0; i < count; i++) {
+        ElasticityListener listener = listeners[i];
+        if (activated) {
+          listener.onSpringActivate(elasticity);
+        }
+        listener.onSpringUpdate(elasticity);
+        if (atRest) {
+          listener.onSpringAtRest(elasticity);
+        }
+      }
+    } finally {
+      mNotifying--;
+    }
+    return count * (1 + (activated ? 1 : 0) + (atRest ? 1 : 0));
+  }
+
+  /**
+   * @param elasticity the elasticity whose value changed outside of a frame
+   */
+  public void notifyUpdate(Elasticity elasticity) {
+    ElasticityListener[] listeners = mListeners;
+    int count = mCount;
+    mNotifying++;
+    try {
+      for (int i = 0; i < count; i++) {
+        listeners[i].onSpringUpdate(elasticity);
+      }
+    } finally {
+      mNotifying--;
+    }
+  }
+
+  /**
+   * @param elasticity the elasticity whose end state changed
+   */
+  public void notifyEndStateChange(Elasticity elasticity) {
+    ElasticityListener[] listeners = mListeners;
+    int count = mCount;
+    mNotifying++;
+    try {
+      for (int i = 0; i < count; i++) {
+        listeners[i].onSpringEndStateChange(elasticity);
+      }
+    } finally {
+      mNotifying--;
+    }
+  }
+
+  private int indexOf(ElasticityListener listener) {
+    for (int i = 0; i < mCount; i++) {
+      if (mListeners[i] == listener) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void copy(int capacity) {
+    ElasticityListener[] listeners = new ElasticityListener[capacity];
+    System.arraycopy(mListeners, 0, listeners, 0, mCount);
+    mListeners = listeners;
+  }
+}
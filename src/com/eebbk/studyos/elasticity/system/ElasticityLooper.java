@@ -16,6 +16,19 @@ package com.eebbk.studyos.elasticity.system;
 public abstract class ElasticityLooper {
 
   protected BaseElasticitySystem mElasticitySystem;
+  // turns the frame timestamps of the looper into the deltas passed to loop
+  protected final FrameClock mFrameClock;
+
+  public ElasticityLooper() {
+    this(FrameClock.DEFAULT_FRAME_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param frameIntervalNanos refresh interval assumed by the frame clock until it measured one
+   */
+  protected ElasticityLooper(long frameIntervalNanos) {
+    mFrameClock = new FrameClock(frameIntervalNanos);
+  }
 
   /**
    * Set the BaseSpringSystem that the SpringLooper will call back to.
@@ -25,6 +38,14 @@ public abstract class ElasticityLooper {
     mElasticitySystem = springSystem;
   }
 
+  /**
+   * get the clock measuring the frames of this looper, for example to read its dropped frames
+   * @return the frame clock
+   */
+  public FrameClock getFrameClock() {
+    return mFrameClock;
+  }
+
   /**
    * The BaseSpringSystem has requested that the looper begins running this {@link Runnable}
    * on every frame. The {@link Runnable} will continue running on every frame until
@@ -0,0 +1,160 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Pool of recyclable elasticities of one kind, created with
+ * {@link BaseElasticitySystem#createPool(ElasticityPool.Factory)}. Released elasticities are
+ * recycled in place and stay registered with the system, so acquiring one again neither allocates
+ * nor takes a new slot. Meant for elasticities bound to list items, acquired when an item is bound
+ * and released when it is recycled. Use it from the looper thread.
+ *
+ * @param <T> the kind of elasticity
+ */
+public final class ElasticityPool<T extends RecyclableElasticity> {
+
+  /** default number of released elasticities kept for reuse */
+  public static final int DEFAULT_MAX_FREE = 64;
+
+  /**
+   * Creates the elasticities of a pool.
+   * @param <T> the kind of elasticity
+   */
+  public interface Factory<T extends RecyclableElasticity> {
+    /**
+     * @param system the system of the pool
+     * @return a new elasticity of that system
+     */
+    T create(BaseElasticitySystem system);
+  }
+
+  private final BaseElasticitySystem mSystem;
+  private final Factory<T> mFactory;
+  private RecyclableElasticity[] mFree = new RecyclableElasticity[16];
+  private int mFreeCount;
+  private int mMaxFree;
+  private int mCreatedCount;
+
+  ElasticityPool(BaseElasticitySystem system, Factory<T> factory, int maxFree) {
+    if (factory == null) {
+      throw new IllegalArgumentException("factory is required");
+    }
+    mSystem = system;
+    mFactory = factory;
+    setMaxFree(maxFree);
+  }
+
+  /**
+   * Take a released elasticity, or create and register a new one if none is left.
+   * @return an elasticity in the state of a new instance
+   */
+  @SuppressWarnings("unchecked")
+  public T acquire() {
+    if (mFreeCount > 0) {
+      T elasticity = (T) mFree[--mFreeCount];
+      mFree[mFreeCount] = null;
+      return elasticity;
+    }
+    return create();
+  }
+
+  /**
+   * Decouple, reset and recycle an elasticity and keep it for the next {@link #acquire()}. Past the
+   * maximum free count it is destroyed instead.
+   * @param elasticity an elasticity acquired from this pool
+   */
+  public void release(T elasticity) {
+    if (elasticity == null) {
+      throw new IllegalArgumentException("elasticity is required");
+    }
+    for (int i = 0; i < mFreeCount; i++) {
+      if (mFree[i] == elasticity) {
+        throw new IllegalArgumentException("elasticity " + elasticity.getId() + " was already released");
+      }
+    }
+    mSystem.decouple(elasticity);
+    mSystem.resetDegradation(elasticity);
+    elasticity.recycle();
+    if (mFreeCount >= mMaxFree) {
+      elasticity.destroy();
+      mCreatedCount--;
+      return;
+    }
+    if (mFreeCount == mFree.length) {
+      RecyclableElasticity[] free = new RecyclableElasticity[mFreeCount * 2];
+      System.arraycopy(mFree, 0, free, 0, mFreeCount);
+      mFree = free;
+    }
+    mFree[mFreeCount++] = elasticity;
+  }
+
+  /**
+   * Create elasticities ahead of time, for example before a list is first scrolled.
+   * @param count the number of free elasticities to reach, capped by the maximum free count
+   */
+  public void prefill(int count) {
+    int target = Math.min(count, mMaxFree);
+    while (mFreeCount < target) {
+      release(create());
+    }
+  }
+
+  /**
+   * Destroy every free elasticity.
+   */
+  public void clear() {
+    trimToSize(0);
+  }
+
+  /**
+   * Destroy free elasticities until at most count are left.
+   * @param count the number of free elasticities to keep
+   */
+  public void trimToSize(int count) {
+    while (mFreeCount > Math.max(0, count)) {
+      RecyclableElasticity elasticity = mFree[--mFreeCount];
+      mFree[mFreeCount] = null;
+      elasticity.destroy();
+      mCreatedCount--;
+    }
+  }
+
+  /**
+   * @param maxFree the number of released elasticities kept for reuse
+   */
+  public void setMaxFree(int maxFree) {
+    if (maxFree < 0) {
+      throw new IllegalArgumentException("maxFree must not be negative");
+    }
+    mMaxFree = maxFree;
+    trimToSize(maxFree);
+  }
+
+  public int getMaxFree() {
+    return mMaxFree;
+  }
+
+  /**
+   * @return the number of released elasticities ready to be acquired
+   */
+  public int getFreeCount() {
+    return mFreeCount;
+  }
+
+  /**
+   * @return the number of elasticities created by the pool and not destroyed, acquired or free
+   */
+  public int getCreatedCount() {
+    return mCreatedCount;
+  }
+
+  private T create() {
+    T elasticity = mFactory.create(mSystem);
+    if (elasticity == null) {
+      throw new IllegalStateException("factory returned null");
+    }
+    if (elasticity.getHandle() == BaseElasticitySystem.NO_HANDLE) {
+      mSystem.createElasticity(elasticity);
+    }
+    mCreatedCount++;
+    return elasticity;
+  }
+}
@@ -0,0 +1,142 @@
+package com.eebbk.studyos.elasticity.system;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the value and velocity of every elasticity of a system once per frame, for a system
+ * looped on its own thread. The looper thread fills a back buffer after integrating and exchanges
+ * it with a shared one, the drawing thread picks the shared one up with {@link #update()}. Neither
+ * side waits for the other, and the buffer being read is never written while it is held.
+ *
+ * Values are looked up by handle. Velocities are measured over the last frame, so they are also
+ * available for elasticities that don't integrate one. Use a single reading thread; commands
+ * going the other way are sent with {@link BaseElasticitySystem#post(Runnable)}.
+ */
+public class ElasticitySnapshot implements ElasticitySystemListener {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final class Buffer {
+    int[] handles = new int[INITIAL_CAPACITY];
+    double[] values = new double[INITIAL_CAPACITY];
+    double[] velocities = new double[INITIAL_CAPACITY];
+    int count;
+    long frame;
+
+    void ensureCapacity(int capacity) {
+      if (capacity <= handles.length) {
+        return;
+      }
+      int size = Math.max(capacity, handles.length * 2);
+      handles = new int[size];
+      values = new double[size];
+      velocities = new double[size];
+    }
+  }
+
+  // owned by the looper thread, mLast holds the values published last for the velocities
+  private Buffer mBack = new Buffer();
+  private Buffer mLast = new Buffer();
+  private final AtomicReference<Buffer> mShared = new AtomicReference<Buffer>(new Buffer());
+  // owned by the reading thread
+  private Buffer mFront = new Buffer();
+  private long mFrameCount;
+
+  public ElasticitySnapshot() {
+    mBack.frame = -1;
+    mLast.frame = -1;
+    mShared.get().frame = -1;
+    mFront.frame = -1;
+  }
+
+  @Override
+  public void onBeforeIntegrate(BaseElasticitySystem elasticitySystem) {
+  }
+
+  /**
+   * Fill the back buffer with the state of the system and publish it.
+   */
+  @Override
+  public void onAfterIntegrate(BaseElasticitySystem elasticitySystem) {
+    Buffer last = mLast;
+    Buffer back = mBack;
+    int count = elasticitySystem.getSlotCount();
+    back.ensureCapacity(count);
+    double deltaSeconds = elasticitySystem.getLastFrameNanos() / 1e9;
+    for (int i = 0; i < count; i++) {
+      Elasticity elasticity = elasticitySystem.getSlot(i);
+      if (elasticity == null) {
+        back.handles[i] = BaseElasticitySystem.NO_HANDLE;
+        continue;
+      }
+      int handle = elasticity.getHandle();
+      double value = elasticity.getValue();
+      double velocity = 0;
+      if (deltaSeconds > 0 && i < last.count && last.handles[i] == handle) {
+        velocity = (value - last.values[i]) / deltaSeconds;
+      }
+      back.handles[i] = handle;
+      back.values[i] = value;
+      back.velocities[i] = velocity;
+    }
+    back.count = count;
+    back.frame = mFrameCount++;
+    last.ensureCapacity(count);
+    System.arraycopy(back.handles, 0, last.handles, 0, count);
+    System.arraycopy(back.values, 0, last.values, 0, count);
+    last.count = count;
+    mBack = mShared.getAndSet(back);
+  }
+
+  /**
+   * Take the most recently published frame if it is newer than the one held. Call it from the
+   * reading thread before reading values, for example at the start of a draw pass.
+   * @return true if a newer frame was taken
+   */
+  public boolean update() {
+    if (mShared.get().frame <= mFront.frame) {
+      return false;
+    }
+    mFront = mShared.getAndSet(mFront);
+    return true;
+  }
+
+  /**
+   * @return the number of the frame held by the reading thread, -1 before the first one
+   */
+  public long getFrame() {
+    return mFront.frame;
+  }
+
+  /**
+   * @param handle the handle of an elasticity
+   * @return true if the frame held by the reading thread contains the elasticity
+   */
+  public boolean contains(int handle) {
+    int index = handle & BaseElasticitySystem.HANDLE_INDEX_MASK;
+    return handle >= 0 && index < mFront.count && mFront.handles[index] == handle;
+  }
+
+  /**
+   * @param handle the handle of an elasticity
+   * @return its value in the frame held by the reading thread
+   */
+  public double getValue(int handle) {
+    return mFront.values[indexOf(handle)];
+  }
+
+  /**
+   * @param handle the handle of an elasticity
+   * @return the change of its value per second over the frame held by the reading thread
+   */
+  public double getVelocity(int handle) {
+    return mFront.velocities[indexOf(handle)];
+  }
+
+  private int indexOf(int handle) {
+    if (!contains(handle)) {
+      throw new IllegalArgumentException("handle " + handle + " is not in the snapshot");
+    }
+    return handle & BaseElasticitySystem.HANDLE_INDEX_MASK;
+  }
+}
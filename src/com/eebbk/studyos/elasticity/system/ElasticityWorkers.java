@@ -0,0 +1,218 @@
+package com.eebbk.studyos.elasticity.system;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small pool of daemon threads splitting an index range into chunks that are integrated
+ * concurrently. The calling thread works on chunks as well and returns once every chunk is done.
+ * Tasks and chunk bookkeeping are reused, so running a range does not allocate.
+ *
+ * A range is run by a single thread at a time, normally the looper thread. Calls made while a
+ * range is already running, for example a SpringBatch integrating inside a parallel system pass,
+ * run inline on the calling thread.
+ */
+public final class ElasticityWorkers {
+
+  /**
+   * Work over a range of indices. Implementations must only touch state owned by the indices of
+   * the range.
+   */
+  public interface RangeTask {
+    /**
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     */
+    void run(int from, int to);
+  }
+
+  // a chunk should be large enough to amortize the claim, small enough to balance the threads
+  private static final int MIN_CHUNK_SIZE = 32;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final Thread[] mThreads;
+  private final Object mLock = new Object();
+  // generation in the high bits, next unclaimed chunk in the low bits
+  private final AtomicLong mCursor = new AtomicLong();
+  private final AtomicInteger mRemaining = new AtomicInteger();
+  private volatile boolean mRunning;
+  private volatile Throwable mFailure;
+
+  // guarded by mLock
+  private int mGeneration;
+  private boolean mShutdown;
+  private RangeTask mTask;
+  private int mCount;
+  private int mChunkSize;
+  private int mChunkCount;
+
+  /**
+   * create workers using all but one of the available processors, the calling thread being the
+   * remaining one.
+   * @return the workers
+   */
+  public static ElasticityWorkers create() {
+    return new ElasticityWorkers(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  /**
+   * @param threadCount number of worker threads, not counting the calling thread
+   */
+  public ElasticityWorkers(int threadCount) {
+    if (threadCount <= 0) {
+      throw new IllegalArgumentException("threadCount must be positive");
+    }
+    mThreads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          work();
+        }
+      }, "elasticity-worker-" + i);
+      thread.setDaemon(true);
+      mThreads[i] = thread;
+      thread.start();
+    }
+  }
+
+  /**
+   * @return the number of threads a range is split across, including the calling thread
+   */
+  public int getParallelism() {
+    return mThreads.length + 1;
+  }
+
+  /**
+   * Run task over [0, count) and wait for it to complete. Exceptions thrown by the task are
+   * rethrown on the calling thread once all chunks are done.
+   * @param task the work to run
+   * @param count the size of the range
+   */
+  public void run(RangeTask task, int count) {
+    if (task == null) {
+      throw new IllegalArgumentException("task is required");
+    }
+    int chunkSize = Math.max(MIN_CHUNK_SIZE, count / (getParallelism() * CHUNKS_PER_THREAD) + 1);
+    if (mRunning || count <= chunkSize) {
+      task.run(0, count);
+      return;
+    }
+    int chunkCount = (count + chunkSize - 1) / chunkSize;
+    int generation;
+    mRunning = true;
+    try {
+      synchronized (mLock) {
+        if (mShutdown) {
+          throw new IllegalStateException("workers have been shut down");
+        }
+        generation = ++mGeneration;
+        mTask = task;
+        mCount = count;
+        mChunkSize = chunkSize;
+        mChunkCount = chunkCount;
+        mRemaining.set(chunkCount);
+        mCursor.set((long) generation << 32);
+        mLock.notifyAll();
+      }
+      runChunks(generation, task, count, chunkSize, chunkCount);
+      synchronized (mLock) {
+        while (mRemaining.get() > 0) {
+          try {
+            mLock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        mTask = null;
+      }
+    } finally {
+      mRunning = false;
+    }
+    Throwable failure = mFailure;
+    if (failure != null) {
+      mFailure = null;
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new RuntimeException(failure);
+    }
+  }
+
+  /**
+   * Stop the worker threads once they are done with the current range. Ranges run after this
+   * throw an IllegalStateException.
+   */
+  public void shutdown() {
+    synchronized (mLock) {
+      mShutdown = true;
+      mLock.notifyAll();
+    }
+  }
+
+  private void work() {
+    int seen = 0;
+    while (true) {
+      int generation;
+      RangeTask task;
+      int count;
+      int chunkSize;
+      int chunkCount;
+      synchronized (mLock) {
+        while (mGeneration == seen && !mShutdown) {
+          try {
+            mLock.wait();
+          } catch (InterruptedException e) {
+            // only shutdown stops a worker
+          }
+        }
+        if (mShutdown) {
+          return;
+        }
+        generation = mGeneration;
+        task = mTask;
+        count = mCount;
+        chunkSize = mChunkSize;
+        chunkCount = mChunkCount;
+      }
+      seen = generation;
+      if (task != null) {
+        runChunks(generation, task, count, chunkSize, chunkCount);
+      }
+    }
+  }
+
+  /**
+   * claim and run chunks of a generation until none are left. The generation tag keeps a late
+   * thread from claiming chunks of a range started after the one it woke up for.
+   */
+  private void runChunks(int generation, RangeTask task, int count, int chunkSize, int chunkCount) {
+    while (true) {
+      long cursor = mCursor.get();
+      if ((int) (cursor >>> 32) != generation) {
+        return;
+      }
+      int chunk = (int) cursor;
+      if (chunk >= chunkCount) {
+        return;
+      }
+      if (!mCursor.compareAndSet(cursor, cursor + 1)) {
+        continue;
+      }
+      int from = chunk * chunkSize;
+      try {
+        task.run(from, Math.min(count, from + chunkSize));
+      } catch (Throwable t) {
+        mFailure = t;
+      }
+      if (mRemaining.decrementAndGet() == 0) {
+        synchronized (mLock) {
+          mLock.notifyAll();
+        }
+      }
+    }
+  }
+}
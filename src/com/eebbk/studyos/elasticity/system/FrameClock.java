@@ -0,0 +1,166 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * Turns the vsync timestamps of a looper into frame deltas for
+ * {@link BaseElasticitySystem#loop(long)}. The refresh interval of the display is estimated from
+ * the timestamps themselves, so 60, 90 and 120 Hz panels need no configuration.
+ *
+ * Each delta is snapped to a whole number of refresh intervals, which removes the timestamp
+ * jitter, plus a fraction of the difference between the snapped timeline and the real one, so the
+ * animation time never drifts away from the wall clock. Deltas spanning several intervals are
+ * reported as dropped frames. A delta too far off the snapped timeline, after the process was
+ * paused for example, resynchronizes the clock and is passed through as is.
+ */
+public class FrameClock {
+
+  /** refresh interval assumed until the first frames are measured, 60 frames per second */
+  public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+  // share of the timeline error corrected on every frame
+  private static final int CORRECTION_SHIFT = 3;
+  // share of a measured interval folded into the estimate
+  private static final int ESTIMATE_SHIFT = 4;
+  // frames beyond which a delta resynchronizes the clock instead of being snapped
+  private static final long MAX_SNAPPED_FRAMES = 32;
+
+  private final long mNominalIntervalNanos;
+  private long mFrameIntervalNanos;
+  private long mLastFrameTimeNanos;
+  // time of the last frame on the smoothed timeline
+  private long mTimeNanos;
+  private boolean mStarted;
+  private int mDroppedFrames;
+  private long mDroppedFrameCount;
+  private long mFrameCount;
+
+  public FrameClock() {
+    this(DEFAULT_FRAME_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param frameIntervalNanos refresh interval assumed until the first frames are measured
+   */
+  public FrameClock(long frameIntervalNanos) {
+    if (frameIntervalNanos <= 0) {
+      throw new IllegalArgumentException("frameIntervalNanos must be positive");
+    }
+    mNominalIntervalNanos = frameIntervalNanos;
+    mFrameIntervalNanos = frameIntervalNanos;
+  }
+
+  /**
+   * Start a new timeline, the next delta is measured from this time. The estimated refresh interval
+   * is kept.
+   * @param frameTimeNanos the current time, on the clock of the timestamps passed to tick
+   */
+  public void reset(long frameTimeNanos) {
+    mLastFrameTimeNanos = frameTimeNanos;
+    mTimeNanos = frameTimeNanos;
+    mStarted = true;
+    mDroppedFrames = 0;
+  }
+
+  /**
+   * Continue after the looper was stopped. The next tick is measured from one estimated refresh
+   * interval before it, the vsync preceding it, so the first frame of a restarted animation gets a
+   * full frame delta instead of the near zero time since the looper was started.
+   */
+  public void resume() {
+    mStarted = false;
+    mDroppedFrames = 0;
+  }
+
+  /**
+   * @return true once the clock was reset or ticked, and not resumed since
+   */
+  public boolean isStarted() {
+    return mStarted;
+  }
+
+  /**
+   * Measure the delta to a new frame.
+   * @param frameTimeNanos the vsync timestamp of the frame
+   * @return the smoothed delta in nanoseconds, never negative
+   */
+  public long tick(long frameTimeNanos) {
+    if (!mStarted) {
+      reset(frameTimeNanos - mFrameIntervalNanos);
+    }
+    long rawDelta = frameTimeNanos - mLastFrameTimeNanos;
+    mLastFrameTimeNanos = frameTimeNanos;
+    mFrameCount++;
+    if (rawDelta <= 0) {
+      mDroppedFrames = 0;
+      return 0;
+    }
+    long interval = mFrameIntervalNanos;
+    long frames = (rawDelta + interval / 2) / interval;
+    if (frames <= 1) {
+      // a delta under half the estimate comes from a faster display, or a duplicate callback
+      mFrameIntervalNanos = interval + ((rawDelta - interval) >> ESTIMATE_SHIFT);
+    }
+    long time;
+    if (frames == 0 || frames > MAX_SNAPPED_FRAMES) {
+      // duplicate callback or long pause, follow the real clock
+      time = frameTimeNanos;
+      frames = Math.max(1, frames);
+    } else {
+      long snapped = mTimeNanos + frames * interval;
+      long error = frameTimeNanos - snapped;
+      if (Math.abs(error) > interval) {
+        // the timeline fell behind or ran ahead, it is rebuilt from the real clock
+        time = frameTimeNanos;
+      } else {
+        time = snapped + (error >> CORRECTION_SHIFT);
+      }
+    }
+    // the smoothed timeline never goes back, so the deltas add up to the time it covered
+    long delta = Math.max(0, time - mTimeNanos);
+    mTimeNanos += delta;
+    mDroppedFrames = (int) (frames - 1);
+    mDroppedFrameCount += mDroppedFrames;
+    return delta;
+  }
+
+  /**
+   * @return the number of refresh intervals skipped before the last ticked frame
+   */
+  public int getDroppedFrames() {
+    return mDroppedFrames;
+  }
+
+  /**
+   * @return the number of refresh intervals skipped since the clock was created
+   */
+  public long getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  /**
+   * @return the number of ticked frames since the clock was created
+   */
+  public long getFrameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * @return the estimated refresh interval of the display in nanoseconds
+   */
+  public long getFrameIntervalNanos() {
+    return mFrameIntervalNanos;
+  }
+
+  /**
+   * @return the refresh interval assumed before any frame was measured
+   */
+  public long getNominalFrameIntervalNanos() {
+    return mNominalIntervalNanos;
+  }
+
+  /**
+   * @return the timestamp of the last ticked frame
+   */
+  public long getLastFrameTimeNanos() {
+    return mLastFrameTimeNanos;
+  }
+}
@@ -0,0 +1,106 @@
+package com.eebbk.studyos.elasticity.system;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looper for plain Java environments without a Choreographer or Handler. It runs the system at a
+ * fixed frame rate on a {@link ScheduledExecutorService}, which makes it possible to run the physics
+ * on a server JVM, in design tools or in CI.
+ *
+ * The system is looped on the executor thread, so the elasticities of the system should only be
+ * touched from that thread, for example by submitting work to the same executor.
+ */
+public class HeadlessElasticityLooper extends ElasticityLooper {
+
+  // 60 frames per second
+  public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+  private final ScheduledExecutorService mExecutor;
+  private final long mFrameIntervalNanos;
+  private final Runnable mLooperRunnable;
+  private ScheduledFuture<?> mFrameFuture;
+
+  /**
+   * @return a headless looper running at 60 frames per second on its own daemon thread
+   */
+  public static HeadlessElasticityLooper create() {
+    return create(DEFAULT_FRAME_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param frameIntervalNanos time between two frames in nanoseconds
+   * @return a headless looper running on its own daemon thread
+   */
+  public static HeadlessElasticityLooper create(long frameIntervalNanos) {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ElasticityLooper");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    return new HeadlessElasticityLooper(executor, frameIntervalNanos);
+  }
+
+  public HeadlessElasticityLooper(ScheduledExecutorService executor, long frameIntervalNanos) {
+    super(frameIntervalNanos);
+    if (executor == null) {
+      throw new IllegalArgumentException("executor is required");
+    }
+    if (frameIntervalNanos <= 0) {
+      throw new IllegalArgumentException("frameIntervalNanos must be positive");
+    }
+    mExecutor = executor;
+    mFrameIntervalNanos = frameIntervalNanos;
+    mLooperRunnable = new Runnable() {
+      @Override
+      public void run() {
+        if (mElasticitySystem == null) {
+          return;
+        }
+        mElasticitySystem.loop(mFrameClock.tick(System.nanoTime()));
+      }
+    };
+  }
+
+  /**
+   * get the executor the system is looped on
+   * @return the executor
+   */
+  public ScheduledExecutorService getExecutor() {
+    return mExecutor;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (mFrameFuture != null) {
+      return;
+    }
+    mFrameClock.resume();
+    mFrameFuture = mExecutor.scheduleAtFixedRate(
+        mLooperRunnable, mFrameIntervalNanos, mFrameIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (mFrameFuture == null) {
+      return;
+    }
+    mFrameFuture.cancel(false);
+    mFrameFuture = null;
+  }
+
+  /**
+   * Stop looping and shut down the executor. The looper can't be started again afterwards.
+   */
+  public void shutdown() {
+    stop();
+    mExecutor.shutdown();
+  }
+}
@@ -0,0 +1,21 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * An elasticity whose frame can be split into an integration step that only touches its own state,
+ * and a dispatch step notifying listeners. When the system advances in parallel, integrate is
+ * called from worker threads and dispatch afterwards on the looper thread, in active list order.
+ * advance(d) must be equivalent to integrate(d) followed by dispatch().
+ */
+public interface ParallelElasticity extends Elasticity {
+
+	/**
+	 * advance the physics without notifying listeners or touching shared state
+	 * @param d clock drift in seconds
+	 */
+	public void integrate(double d);
+
+	/**
+	 * notify listeners of the last integrate call, on the looper thread
+	 */
+	public void dispatch();
+}
@@ -0,0 +1,19 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * An elasticity that can be put back in the state of a new instance and used again, see
+ * {@link ElasticityPool}.
+ */
+public interface RecyclableElasticity extends Elasticity {
+
+	/**
+	 * Reset to the state of a new instance in place and stop being advanced, without notifying the
+	 * listeners. The listeners are removed, the handle and the storage of the elasticity are kept.
+	 */
+	void recycle();
+
+	/**
+	 * Deregister from the system and release the storage of the elasticity for good.
+	 */
+	void destroy();
+}
@@ -0,0 +1,191 @@
+package com.eebbk.studyos.elasticity.system;
+
+/**
+ * One frame callback shared by many {@link BaseElasticitySystem}s, for apps with a system per
+ * fragment or custom view. Every system gets its own {@link ElasticityLooper} from
+ * {@link #createLooper()}. On each frame the source samples the time once with its
+ * {@link FrameClock} and loops the running systems in the order their loopers were created. The
+ * platform callback is only registered while at least one system runs, so the per frame cost is
+ * one callback however many systems exist.
+ *
+ * Only running systems are referenced by the source, idle systems can be garbage collected. Use
+ * the source and its loopers from the looper thread.
+ */
+public abstract class SharedFrameSource {
+
+  private final FrameClock mFrameClock;
+  // running loopers sorted by creation order, and the copy iterated by the current frame
+  private AttachedLooper[] mRunning = new AttachedLooper[4];
+  private int mRunningCount;
+  private AttachedLooper[] mFrameLoopers = new AttachedLooper[4];
+  private int mNextOrder;
+  private boolean mStarted;
+  private boolean mInFrame;
+
+  protected SharedFrameSource() {
+    this(FrameClock.DEFAULT_FRAME_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param frameIntervalNanos refresh interval assumed by the frame clock until it measured one
+   */
+  protected SharedFrameSource(long frameIntervalNanos) {
+    mFrameClock = new FrameClock(frameIntervalNanos);
+  }
+
+  /**
+   * Create a looper driven by this source, to pass to the constructor of a system. Systems are
+   * looped in the order their loopers were created.
+   * @return a new looper
+   */
+  public ElasticityLooper createLooper() {
+    return new AttachedLooper(this, mNextOrder++);
+  }
+
+  /**
+   * @return the clock shared by every system of the source
+   */
+  public FrameClock getFrameClock() {
+    return mFrameClock;
+  }
+
+  /**
+   * @return the number of systems looped on the next frame
+   */
+  public int getRunningCount() {
+    return mRunningCount;
+  }
+
+  /**
+   * @return true while the platform frame callback is registered
+   */
+  public boolean isStarted() {
+    return mStarted;
+  }
+
+  /**
+   * Register the platform frame callback, which calls {@link #doFrame(long)} on every frame until
+   * {@link #onStop()}.
+   */
+  protected abstract void onStart();
+
+  /**
+   * Remove the platform frame callback.
+   */
+  protected abstract void onStop();
+
+  /**
+   * Loop every running system with the delta to this frame. Systems started during the frame are
+   * looped from the next one. The source stops once no system runs anymore.
+   * @param frameTimeNanos the vsync timestamp of the frame
+   */
+  protected void doFrame(long frameTimeNanos) {
+    if (!mStarted) {
+      return;
+    }
+    long delta = mFrameClock.tick(frameTimeNanos);
+    int count = mRunningCount;
+    if (mFrameLoopers.length < count) {
+      mFrameLoopers = new AttachedLooper[mRunning.length];
+    }
+    System.arraycopy(mRunning, 0, mFrameLoopers, 0, count);
+    mInFrame = true;
+    try {
+      for (int i = 0; i < count; i++) {
+        AttachedLooper looper = mFrameLoopers[i];
+        mFrameLoopers[i] = null;
+        if (looper.mRunning && looper.getSystem() != null) {
+          looper.getSystem().loop(delta);
+        }
+      }
+    } finally {
+      mInFrame = false;
+    }
+    if (mRunningCount == 0) {
+      stopSource();
+    }
+  }
+
+  private void startLooper(AttachedLooper looper) {
+    if (looper.mRunning) {
+      return;
+    }
+    looper.mRunning = true;
+    if (mRunningCount == mRunning.length) {
+      AttachedLooper[] running = new AttachedLooper[mRunningCount * 2];
+      System.arraycopy(mRunning, 0, running, 0, mRunningCount);
+      mRunning = running;
+    }
+    int position = mRunningCount;
+    while (position > 0 && mRunning[position - 1].mOrder > looper.mOrder) {
+      mRunning[position] = mRunning[position - 1];
+      position--;
+    }
+    mRunning[position] = looper;
+    mRunningCount++;
+    if (!mStarted) {
+      mStarted = true;
+      mFrameClock.resume();
+      onStart();
+    }
+  }
+
+  private void stopLooper(AttachedLooper looper) {
+    if (!looper.mRunning) {
+      return;
+    }
+    looper.mRunning = false;
+    for (int i = 0; i < mRunningCount; i++) {
+      if (mRunning[i] == looper) {
+        System.arraycopy(mRunning, i + 1, mRunning, i, mRunningCount - i - 1);
+        mRunning[--mRunningCount] = null;
+        break;
+      }
+    }
+    // a frame in progress stops the source once it is done
+    if (mRunningCount == 0 && !mInFrame) {
+      stopSource();
+    }
+  }
+
+  private void stopSource() {
+    if (mStarted) {
+      mStarted = false;
+      onStop();
+    }
+  }
+
+  /**
+   * Looper of one system, starting and stopping it only marks the system as running in the source.
+   */
+  private static final class AttachedLooper extends ElasticityLooper {
+
+    private final SharedFrameSource mSource;
+    private final int mOrder;
+    private boolean mRunning;
+
+    AttachedLooper(SharedFrameSource source, int order) {
+      mSource = source;
+      mOrder = order;
+    }
+
+    BaseElasticitySystem getSystem() {
+      return mElasticitySystem;
+    }
+
+    @Override
+    public FrameClock getFrameClock() {
+      return mSource.getFrameClock();
+    }
+
+    @Override
+    public void start() {
+      mSource.startLooper(this);
+    }
+
+    @Override
+    public void stop() {
+      mSource.stopLooper(this);
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package com.eebbk.studyos.elasticity.system;
+
+import java.util.Random;
+
+/**
+ * Looper on a virtual vsync timeline, for tests and benchmarks on a workstation or CI. Nothing runs
+ * on its own: every call to {@link #runFrame()} moves the virtual time to the next vsync and loops
+ * the system if it is started, through the same {@link FrameClock} as the real loopers.
+ *
+ * Frame pacing problems are injected from a random source seeded at construction: timestamp
+ * jitter, dropped frames that arrive one or more refresh intervals late, and long stalls such as
+ * a garbage collection. Two loopers with the same seed and settings driven by the same calls
+ * produce the same timestamps, so a janky run can be replayed exactly.
+ */
+public class SimulatedVsyncLooper extends ElasticityLooper {
+
+  // consecutive drops injected at most before a frame is delivered
+  private static final int MAX_CONSECUTIVE_DROPS = 8;
+
+  private final long mFrameIntervalNanos;
+  private final long mSeed;
+  private final Random mRandom;
+  private long mJitterNanos;
+  private double mDropProbability;
+  private double mStallProbability;
+  private long mStallNanos;
+
+  private boolean mStarted;
+  // time of the last vsync on the virtual timeline
+  private long mVsyncNanos;
+  private long mLastFrameTimeNanos;
+  private int mFrameCount;
+  private int mDroppedFrameCount;
+  private int mStallCount;
+
+  /**
+   * @param frameIntervalNanos refresh interval of the simulated display
+   * @param seed seed of the jitter, drops and stalls
+   */
+  public SimulatedVsyncLooper(long frameIntervalNanos, long seed) {
+    super(frameIntervalNanos);
+    mFrameIntervalNanos = frameIntervalNanos;
+    mSeed = seed;
+    mRandom = new Random(seed);
+  }
+
+  /**
+   * @param refreshRate refresh rate of the simulated display in Hz
+   * @param seed seed of the jitter, drops and stalls
+   * @return a looper for that refresh rate
+   */
+  public static SimulatedVsyncLooper forRefreshRate(double refreshRate, long seed) {
+    if (!(refreshRate > 0)) {
+      throw new IllegalArgumentException("refreshRate must be positive");
+    }
+    return new SimulatedVsyncLooper(Math.round(1e9 / refreshRate), seed);
+  }
+
+  /**
+   * @param jitterNanos the largest distance between a frame timestamp and its vsync, either way
+   * @return this object
+   */
+  public SimulatedVsyncLooper setJitterNanos(long jitterNanos) {
+    if (jitterNanos < 0 || jitterNanos >= mFrameIntervalNanos / 2) {
+      throw new IllegalArgumentException("jitterNanos must be between 0 and half a frame");
+    }
+    mJitterNanos = jitterNanos;
+    return this;
+  }
+
+  /**
+   * @param dropProbability the probability of each vsync to be missed, the frame then comes one
+   *          interval later and may be dropped again
+   * @return this object
+   */
+  public SimulatedVsyncLooper setDropProbability(double dropProbability) {
+    if (!(dropProbability >= 0 && dropProbability < 1)) {
+      throw new IllegalArgumentException("dropProbability must be in [0, 1)");
+    }
+    mDropProbability = dropProbability;
+    return this;
+  }
+
+  /**
+   * @param stallProbability the probability of each frame to be held back by a stall
+   * @param stallNanos how long a stall holds the frame back, rounded up to whole intervals
+   * @return this object
+   */
+  public SimulatedVsyncLooper setStalls(double stallProbability, long stallNanos) {
+    if (!(stallProbability >= 0 && stallProbability < 1)) {
+      throw new IllegalArgumentException("stallProbability must be in [0, 1)");
+    }
+    if (stallNanos < 0) {
+      throw new IllegalArgumentException("stallNanos must not be negative");
+    }
+    mStallProbability = stallProbability;
+    mStallNanos = stallNanos;
+    return this;
+  }
+
+  @Override
+  public void start() {
+    if (mStarted) {
+      return;
+    }
+    mStarted = true;
+    mFrameClock.resume();
+  }
+
+  @Override
+  public void stop() {
+    mStarted = false;
+  }
+
+  public boolean isStarted() {
+    return mStarted;
+  }
+
+  /**
+   * Move to the next vsync, skipping the dropped and stalled ones, and loop the system on it if
+   * the looper is started. The random source is drawn from the same way either way, so the
+   * timeline only depends on the seed and the number of calls.
+   * @return true if the system was looped
+   */
+  public boolean runFrame() {
+    long intervals = 1;
+    if (mStallProbability > 0 && mRandom.nextDouble() < mStallProbability) {
+      intervals += (mStallNanos + mFrameIntervalNanos - 1) / mFrameIntervalNanos;
+      mStallCount++;
+    }
+    int drops = 0;
+    while (mDropProbability > 0 && drops < MAX_CONSECUTIVE_DROPS
+        && mRandom.nextDouble() < mDropProbability) {
+      drops++;
+    }
+    intervals += drops;
+    mDroppedFrameCount += intervals - 1;
+    mVsyncNanos += intervals * mFrameIntervalNanos;
+    long frameTime = mVsyncNanos;
+    if (mJitterNanos > 0) {
+      frameTime += (long) ((mRandom.nextDouble() * 2 - 1) * mJitterNanos);
+    }
+    mLastFrameTimeNanos = frameTime;
+    if (!mStarted || mElasticitySystem == null) {
+      return false;
+    }
+    mFrameCount++;
+    mElasticitySystem.loop(mFrameClock.tick(frameTime));
+    return true;
+  }
+
+  /**
+   * Run frames until the looper is stopped, by the system once it is idle.
+   * @param maxFrames the number of frames run at most
+   * @return the number of frames run
+   */
+  public int runUntilIdle(int maxFrames) {
+    int frames = 0;
+    while (mStarted && frames < maxFrames) {
+      runFrame();
+      frames++;
+    }
+    return frames;
+  }
+
+  /**
+   * Run frames until the virtual time moved by at least a duration, looping the system on the
+   * frames where the looper is started.
+   * @param durationNanos the virtual time to run for
+   * @return the number of frames the system was looped on
+   */
+  public int runFor(long durationNanos) {
+    long end = mVsyncNanos + durationNanos;
+    int frames = 0;
+    while (mVsyncNanos < end) {
+      if (runFrame()) {
+        frames++;
+      }
+    }
+    return frames;
+  }
+
+  /**
+   * @return the time of the last vsync on the virtual timeline, starting at 0
+   */
+  public long getTimeNanos() {
+    return mVsyncNanos;
+  }
+
+  /**
+   * @return the timestamp of the last frame, with its jitter
+   */
+  public long getLastFrameTimeNanos() {
+    return mLastFrameTimeNanos;
+  }
+
+  public long getFrameIntervalNanos() {
+    return mFrameIntervalNanos;
+  }
+
+  public long getSeed() {
+    return mSeed;
+  }
+
+  /**
+   * @return the number of frames the system was looped on
+   */
+  public int getFrameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * @return the number of vsyncs skipped by drops and stalls
+   */
+  public int getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  public int getStallCount() {
+    return mStallCount;
+  }
+}